@@ -16,8 +16,51 @@
 
 package com.io7m.jaion.api;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
 public non-sealed interface KTX1FileReadableType extends KTXFileReadableType
 {
   @Override
   KTX1Header header();
+
+  List<KTX1SubImage> subImages();
+
+  Optional<KTX1SubImage> subImage(
+    int mipMapLevel,
+    int arrayElement,
+    int faceIndex,
+    int zSlice);
+
+  ByteBuffer subImageData(
+    KTX1SubImage subImage)
+    throws IOException;
+
+  void subImageDataNativeOrder(
+    KTX1SubImage subImage,
+    ByteBuffer target)
+    throws IOException;
+
+  void subImageDataBatch(
+    List<KTX1SubImage> subImages,
+    List<ByteBuffer> targets)
+    throws IOException;
+
+  long subImageTransferTo(
+    KTX1SubImage subImage,
+    WritableByteChannel target)
+    throws IOException;
+
+  long subImagesTransferTo(
+    List<KTX1SubImage> subImages,
+    WritableByteChannel target)
+    throws IOException;
+
+  CompletableFuture<ByteBuffer> subImageDataAsync(
+    KTX1SubImage subImage,
+    ByteBuffer target);
 }
@@ -14,7 +14,7 @@
  * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
  */
 
-package com.io7m.jaion.vanilla.internal;
+package com.io7m.jaion.api;
 
 public record KTX1SubImage(
   long absoluteByteOffset,
@@ -0,0 +1,54 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jaion.api;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public interface KTX1SubImageSourceType
+{
+  long subImageSizeBytes(
+    int mipMapLevel);
+
+  /**
+   * Retrieve the data for the given sub-image. Writers queue the returned
+   * buffer and write it together with later sub-images, so its contents
+   * must not change until the write has finished, unless
+   * {@link #reusesBuffers()} returns {@code true}.
+   *
+   * @param subImage The sub-image
+   *
+   * @return The sub-image data
+   *
+   * @throws IOException On errors
+   */
+
+  ByteBuffer subImageData(
+    KTX1SubImage subImage)
+    throws IOException;
+
+  /**
+   * @return {@code true} if the buffers returned by
+   * {@link #subImageData(KTX1SubImage)} may be overwritten by later calls,
+   * in which case writers copy each buffer before asking for the next
+   */
+
+  default boolean reusesBuffers()
+  {
+    return false;
+  }
+}
@@ -14,10 +14,44 @@
  * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
  */
 
+
 package com.io7m.jaion.api;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 public non-sealed interface KTX2FileReadableType extends KTXFileReadableType
 {
   @Override
   KTX2Header header();
+
+  KTX2Index index();
+
+  List<KTX2Level> levels();
+
+  ByteBuffer levelData(
+    KTX2Level level)
+    throws IOException;
+
+  SeekableByteChannel levelDataChannel(
+    KTX2Level level)
+    throws IOException;
+
+  long levelTransferTo(
+    KTX2Level level,
+    WritableByteChannel target)
+    throws IOException;
+
+  long levelsTransferTo(
+    List<KTX2Level> levels,
+    WritableByteChannel target)
+    throws IOException;
+
+  CompletableFuture<ByteBuffer> levelDataAsync(
+    KTX2Level level,
+    ByteBuffer target);
 }
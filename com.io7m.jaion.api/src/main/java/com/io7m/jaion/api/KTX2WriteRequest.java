@@ -0,0 +1,43 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jaion.api;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Map;
+import java.util.Objects;
+
+public record KTX2WriteRequest(
+  WritableByteChannel channel,
+  URI target,
+  KTX2Header header,
+  ByteBuffer dataFormatDescriptor,
+  Map<String, ByteBuffer> keyValues,
+  KTX2LevelSourceType levels,
+  int zstdLevel)
+{
+  public KTX2WriteRequest
+  {
+    Objects.requireNonNull(channel, "channel");
+    Objects.requireNonNull(target, "target");
+    Objects.requireNonNull(header, "header");
+    Objects.requireNonNull(dataFormatDescriptor, "dataFormatDescriptor");
+    Objects.requireNonNull(keyValues, "keyValues");
+    Objects.requireNonNull(levels, "levels");
+  }
+}
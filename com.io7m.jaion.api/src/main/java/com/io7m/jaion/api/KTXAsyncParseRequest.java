@@ -0,0 +1,47 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.api;
+
+import java.net.URI;
+import java.nio.channels.AsynchronousFileChannel;
+import java.util.Objects;
+
+public record KTXAsyncParseRequest(
+  AsynchronousFileChannel channel,
+  URI source,
+  long keyValueRegionLimit,
+  long keyValueDatumLimit)
+{
+  public KTXAsyncParseRequest
+  {
+    Objects.requireNonNull(channel, "channel");
+    Objects.requireNonNull(source, "source");
+  }
+
+  public static KTXAsyncParseRequest of(
+    final AsynchronousFileChannel channel,
+    final URI source)
+  {
+    return new KTXAsyncParseRequest(
+      channel,
+      source,
+      KTXParseRequest.KEY_VALUE_REGION_LIMIT_DEFAULT,
+      KTXParseRequest.KEY_VALUE_DATUM_LIMIT_DEFAULT
+    );
+  }
+}
@@ -25,5 +25,7 @@ public sealed interface KTXFileReadableType extends Closeable
 {
   KTXHeaderType header();
 
+  KTXKeyValueDataType keyValues();
+
   Map<String, String> keyValueData();
 }
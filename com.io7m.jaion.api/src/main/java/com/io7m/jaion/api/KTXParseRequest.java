@@ -24,12 +24,17 @@ public final record KTXParseRequest(
   SeekableByteChannel channel,
   URI source,
   long keyValueRegionLimit,
-  long keyValueDatumLimit)
+  long keyValueDatumLimit,
+  KTXByteSourceProviderType byteSources)
 {
+  public static final long KEY_VALUE_REGION_LIMIT_DEFAULT = 10_000_000L;
+  public static final long KEY_VALUE_DATUM_LIMIT_DEFAULT = 1_000_000L;
+
   public KTXParseRequest
   {
     Objects.requireNonNull(channel, "channel");
     Objects.requireNonNull(source, "source");
+    Objects.requireNonNull(byteSources, "byteSources");
   }
 
   public static KTXParseRequestBuilderType builder(
@@ -44,8 +49,10 @@ public final record KTXParseRequest(
   {
     private SeekableByteChannel channel;
     private URI source;
-    private long keyValueRegionLimit = 10_000_000L;
-    private long keyValueDatumLimit = 1_000_000L;
+    private long keyValueRegionLimit = KEY_VALUE_REGION_LIMIT_DEFAULT;
+    private long keyValueDatumLimit = KEY_VALUE_DATUM_LIMIT_DEFAULT;
+    private KTXByteSourceProviderType byteSources =
+      KTXByteSourceProviderType.direct();
 
     private Builder(
       final SeekableByteChannel inChannel,
@@ -111,6 +118,20 @@ public final record KTXParseRequest(
       this.keyValueDatumLimit = limit;
     }
 
+    @Override
+    public KTXByteSourceProviderType byteSources()
+    {
+      return this.byteSources;
+    }
+
+    @Override
+    public void setByteSources(
+      final KTXByteSourceProviderType inByteSources)
+    {
+      this.byteSources =
+        Objects.requireNonNull(inByteSources, "byteSources");
+    }
+
     @Override
     public KTXParseRequest build()
     {
@@ -118,7 +139,8 @@ public final record KTXParseRequest(
         this.channel,
         this.source,
         this.keyValueRegionLimit,
-        this.keyValueDatumLimit
+        this.keyValueDatumLimit,
+        this.byteSources
       );
     }
   }
@@ -41,5 +41,10 @@ public interface KTXParseRequestBuilderType
   void setKeyValueDatumLimit(
     long keyValueRegionLimit);
 
+  KTXByteSourceProviderType byteSources();
+
+  void setByteSources(
+    KTXByteSourceProviderType inByteSources);
+
   KTXParseRequest build();
 }
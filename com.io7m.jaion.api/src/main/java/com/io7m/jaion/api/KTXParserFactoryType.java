@@ -17,10 +17,35 @@
 package com.io7m.jaion.api;
 
 import java.io.IOException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
 
 public interface KTXParserFactoryType
 {
   KTXParserType create(
     KTXParseRequest request)
     throws IOException;
+
+  KTXParserType createMapped(
+    KTXParseRequest request)
+    throws IOException;
+
+  KTXParserType createMapped(
+    Path file)
+    throws IOException;
+
+  KTXParserType createIndexed(
+    Path file,
+    KTXIndexStoreType index)
+    throws IOException;
+
+  KTXReusableParserType createReusable();
+
+  CompletableFuture<KTXFileReadableType> parseAsync(
+    KTXAsyncParseRequest request);
+
+  KTXHeaderType probe(
+    SeekableByteChannel channel)
+    throws IOException;
 }
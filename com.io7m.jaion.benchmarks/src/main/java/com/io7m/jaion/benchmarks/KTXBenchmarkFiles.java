@@ -0,0 +1,196 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Comparator;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+public final class KTXBenchmarkFiles
+{
+  private static final byte[] KTX1_IDENTIFIER = {
+    (byte) 0xAB,
+    (byte) 0x4B,
+    (byte) 0x54,
+    (byte) 0x58,
+    (byte) 0x20,
+    (byte) 0x31,
+    (byte) 0x31,
+    (byte) 0xBB,
+    (byte) 0x0D,
+    (byte) 0x0A,
+    (byte) 0x1A,
+    (byte) 0x0A
+  };
+
+  private KTXBenchmarkFiles()
+  {
+
+  }
+
+  public static Path createTempDirectory()
+    throws IOException
+  {
+    return Files.createTempDirectory("jaion-benchmarks");
+  }
+
+  public static void deleteDirectory(
+    final Path directory)
+    throws IOException
+  {
+    try (var walk = Files.walk(directory)) {
+      walk.sorted(Comparator.reverseOrder())
+        .forEach(path -> {
+          try {
+            Files.deleteIfExists(path);
+          } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+    }
+  }
+
+  public static Path resourceOf(
+    final Path output,
+    final String name)
+    throws IOException
+  {
+    final var internal = String.format("/com/io7m/jaion/tests/%s", name);
+    final var url = KTXBenchmarkFiles.class.getResource(internal);
+    if (url == null) {
+      throw new NoSuchFileException(internal);
+    }
+
+    final var target = output.resolve(name);
+    try (var stream = url.openStream()) {
+      Files.copy(stream, target, REPLACE_EXISTING);
+    }
+    return target;
+  }
+
+  private static ByteBuffer ktx1Header(
+    final int size,
+    final int pixelWidth,
+    final int pixelHeight,
+    final int arrayElements,
+    final int mipMapLevels,
+    final int keyValueBytes)
+  {
+    final var buffer =
+      ByteBuffer.allocate(size)
+        .order(ByteOrder.LITTLE_ENDIAN);
+
+    buffer.put(KTX1_IDENTIFIER);
+    buffer.putInt(0x04030201);
+    buffer.putInt(0x1401);
+    buffer.putInt(1);
+    buffer.putInt(0x1908);
+    buffer.putInt(0x8058);
+    buffer.putInt(0x1908);
+    buffer.putInt(pixelWidth);
+    buffer.putInt(pixelHeight);
+    buffer.putInt(0);
+    buffer.putInt(arrayElements);
+    buffer.putInt(1);
+    buffer.putInt(mipMapLevels);
+    buffer.putInt(keyValueBytes);
+    return buffer;
+  }
+
+  public static Path keyValueHeavy(
+    final Path output,
+    final int entries,
+    final int valueSize)
+    throws IOException
+  {
+    final var entrySize = 4 + align4(16 + valueSize);
+    final var keyValueBytes = entries * entrySize;
+    final var buffer =
+      ktx1Header(64 + keyValueBytes + 8, 1, 1, 0, 1, keyValueBytes);
+
+    for (int index = 0; index < entries; ++index) {
+      final var key = "key%010d".formatted(index).getBytes(UTF_8);
+      buffer.putInt(key.length + 1 + valueSize);
+      buffer.put(key);
+      buffer.put((byte) 0);
+      for (int v = 0; v < valueSize; ++v) {
+        buffer.put((byte) (index + v));
+      }
+      while (buffer.position() % 4 != 0) {
+        buffer.put((byte) 0);
+      }
+    }
+
+    buffer.putInt(4);
+    buffer.putInt(0xff0000ff);
+    return write(output.resolve("keyvalues-%d.ktx".formatted(entries)), buffer);
+  }
+
+  public static Path mipmapArray(
+    final Path output,
+    final int size,
+    final int arrayElements)
+    throws IOException
+  {
+    final var levels = 32 - Integer.numberOfLeadingZeros(size);
+
+    long total = 64L;
+    for (int level = 0; level < levels; ++level) {
+      final var extent = Math.max(size >>> level, 1);
+      total += 4L + (long) extent * extent * 4L * arrayElements;
+    }
+
+    final var buffer =
+      ktx1Header(Math.toIntExact(total), size, size, arrayElements, levels, 0);
+
+    for (int level = 0; level < levels; ++level) {
+      final var extent = Math.max(size >>> level, 1);
+      final var imageSize = extent * extent * 4 * arrayElements;
+      buffer.putInt(imageSize);
+      buffer.position(buffer.position() + imageSize);
+    }
+
+    return write(
+      output.resolve("mipmap-array-%d-%d.ktx".formatted(size, arrayElements)),
+      buffer
+    );
+  }
+
+  private static int align4(
+    final int x)
+  {
+    return (x + 3) & ~3;
+  }
+
+  private static Path write(
+    final Path file,
+    final ByteBuffer buffer)
+    throws IOException
+  {
+    Files.write(file, buffer.array());
+    return file;
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.benchmarks;
+
+import com.io7m.jaion.vanilla.KTXParserFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KTXKeyValueBenchmark
+{
+  @Param({"16", "1024", "16384"})
+  public int entries;
+
+  @Param({"16", "256"})
+  public int valueSize;
+
+  private KTXParserFactory parsers;
+  private Path directory;
+  private Path path;
+
+  @Setup(Level.Trial)
+  public void setup()
+    throws IOException
+  {
+    this.parsers = new KTXParserFactory();
+    this.directory = KTXBenchmarkFiles.createTempDirectory();
+    this.path =
+      KTXBenchmarkFiles.keyValueHeavy(
+        this.directory,
+        this.entries,
+        this.valueSize
+      );
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown()
+    throws IOException
+  {
+    KTXBenchmarkFiles.deleteDirectory(this.directory);
+  }
+
+  @Benchmark
+  public void parseOnly(
+    final Blackhole blackhole)
+    throws IOException
+  {
+    try (var parser = this.parsers.createMapped(this.path)) {
+      try (var readable = parser.execute()) {
+        blackhole.consume(readable.keyValues().size());
+      }
+    }
+  }
+
+  @Benchmark
+  public void parseAndLookup(
+    final Blackhole blackhole)
+    throws IOException
+  {
+    try (var parser = this.parsers.createMapped(this.path)) {
+      try (var readable = parser.execute()) {
+        blackhole.consume(
+          readable.keyValues().value("key%010d".formatted(this.entries - 1))
+        );
+      }
+    }
+  }
+
+  @Benchmark
+  public void parseAndDecodeAll(
+    final Blackhole blackhole)
+    throws IOException
+  {
+    try (var parser = this.parsers.createMapped(this.path)) {
+      try (var readable = parser.execute()) {
+        blackhole.consume(readable.keyValueData());
+      }
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.benchmarks;
+
+import com.io7m.jaion.api.KTX1FileReadableType;
+import com.io7m.jaion.api.KTXParseRequest;
+import com.io7m.jaion.vanilla.KTXParserFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KTXMipmapArrayBenchmark
+{
+  @Param({"256", "2048"})
+  public int size;
+
+  @Param({"1", "64"})
+  public int arrayElements;
+
+  private KTXParserFactory parsers;
+  private Path directory;
+  private Path path;
+
+  @Setup(Level.Trial)
+  public void setup()
+    throws IOException
+  {
+    this.parsers = new KTXParserFactory();
+    this.directory = KTXBenchmarkFiles.createTempDirectory();
+    this.path =
+      KTXBenchmarkFiles.mipmapArray(
+        this.directory,
+        this.size,
+        this.arrayElements
+      );
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown()
+    throws IOException
+  {
+    KTXBenchmarkFiles.deleteDirectory(this.directory);
+  }
+
+  @Benchmark
+  public void parseChannel(
+    final Blackhole blackhole)
+    throws IOException
+  {
+    try (var channel = FileChannel.open(this.path)) {
+      final var request =
+        KTXParseRequest.builder(channel, this.path.toUri())
+          .build();
+
+      try (var parser = this.parsers.create(request)) {
+        try (var readable = (KTX1FileReadableType) parser.execute()) {
+          blackhole.consume(readable.subImages().size());
+        }
+      }
+    }
+  }
+
+  @Benchmark
+  public void parseMappedAndWalk(
+    final Blackhole blackhole)
+    throws IOException
+  {
+    try (var parser = this.parsers.createMapped(this.path)) {
+      try (var readable = (KTX1FileReadableType) parser.execute()) {
+        for (final var image : readable.subImages()) {
+          blackhole.consume(image.absoluteByteOffset());
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.benchmarks;
+
+import com.io7m.jaion.vanilla.internal.KTXSubrangeByteChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KTXSubrangeByteChannelBenchmark
+{
+  private static final int FILE_SIZE = 16 * 1024 * 1024;
+
+  @Param({"4096", "65536", "1048576"})
+  public int rangeSize;
+
+  @Param({"512", "8192"})
+  public int bufferSize;
+
+  @Param({"false", "true"})
+  public boolean direct;
+
+  private Path directory;
+  private FileChannel channel;
+  private ByteBuffer buffer;
+
+  @Setup(Level.Trial)
+  public void setup()
+    throws IOException
+  {
+    this.directory = KTXBenchmarkFiles.createTempDirectory();
+
+    final var file = this.directory.resolve("data.bin");
+    Files.write(file, new byte[FILE_SIZE]);
+    this.channel = FileChannel.open(file);
+    this.buffer =
+      this.direct
+        ? ByteBuffer.allocateDirect(this.bufferSize)
+        : ByteBuffer.allocate(this.bufferSize);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown()
+    throws IOException
+  {
+    this.channel.close();
+    KTXBenchmarkFiles.deleteDirectory(this.directory);
+  }
+
+  @Benchmark
+  public void readRange(
+    final Blackhole blackhole)
+    throws IOException
+  {
+    final var subrange =
+      new KTXSubrangeByteChannel(
+        this.channel,
+        FILE_SIZE / 2L,
+        this.rangeSize
+      );
+
+    subrange.position(0L);
+
+    long total = 0L;
+    while (true) {
+      this.buffer.clear();
+      final var r = subrange.read(this.buffer);
+      if (r <= 0) {
+        break;
+      }
+      total += r;
+    }
+    blackhole.consume(total);
+  }
+}
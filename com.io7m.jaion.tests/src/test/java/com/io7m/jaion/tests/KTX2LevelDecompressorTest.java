@@ -0,0 +1,251 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.tests;
+
+import com.io7m.jaion.api.KTX2FileReadableType;
+import com.io7m.jaion.api.KTXParseRequest;
+import com.io7m.jaion.api.KTXParserType;
+import com.io7m.jaion.vanilla.KTX2LevelDecompressor;
+import com.io7m.jaion.vanilla.KTXParserFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class KTX2LevelDecompressorTest
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(KTX2LevelDecompressorTest.class);
+
+  private KTXParserFactory readers;
+  private Path directory;
+
+  @BeforeEach
+  public void setup()
+    throws IOException
+  {
+    this.readers =
+      new KTXParserFactory();
+    this.directory =
+      KTXTestDirectories.createTempDirectory();
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws IOException
+  {
+    KTXTestDirectories.deleteDirectory(this.directory);
+  }
+
+  private static void checkLevels(
+    final KTX2FileReadableType file,
+    final KTX2LevelDecompressor decompressor,
+    final boolean direct)
+    throws IOException
+  {
+    final var levels = file.levels();
+    assertEquals(5, levels.size());
+
+    for (final var level : levels) {
+      final var size = (int) level.uncompressedByteLength();
+      final var target =
+        direct ? ByteBuffer.allocateDirect(size + 8) : ByteBuffer.allocate(size + 8);
+
+      target.position(4);
+      decompressor.decompress(file, level, target);
+      assertEquals(4 + size, target.position());
+
+      for (int index = 0; index < size; ++index) {
+        assertEquals(
+          ((level.mipMapLevel() * 0x40) + (index / 4)) & 0xff,
+          target.get(4 + index) & 0xff,
+          "Level %d byte %d".formatted(level.mipMapLevel(), index)
+        );
+      }
+    }
+  }
+
+  @Test
+  public void testZstdDirect()
+    throws Exception
+  {
+    try (var decompressor = new KTX2LevelDecompressor(16)) {
+      try (var parser = this.parserFor("rgba-mipmap-zstd.ktx2")) {
+        try (var file = (KTX2FileReadableType) parser.execute()) {
+          assertEquals(2L, file.header().supercompressionScheme());
+          checkLevels(file, decompressor, true);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testZstdHeap()
+    throws Exception
+  {
+    try (var decompressor = new KTX2LevelDecompressor(16)) {
+      try (var parser = this.parserFor("rgba-mipmap-zstd.ktx2")) {
+        try (var file = (KTX2FileReadableType) parser.execute()) {
+          checkLevels(file, decompressor, false);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testZlibDirect()
+    throws Exception
+  {
+    try (var decompressor = new KTX2LevelDecompressor(16)) {
+      try (var parser = this.parserFor("rgba-mipmap-zlib.ktx2")) {
+        try (var file = (KTX2FileReadableType) parser.execute()) {
+          assertEquals(3L, file.header().supercompressionScheme());
+          checkLevels(file, decompressor, true);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testReusedAcrossFiles()
+    throws Exception
+  {
+    try (var decompressor = new KTX2LevelDecompressor()) {
+      for (final var name : new String[]{
+        "rgba-mipmap-zstd.ktx2",
+        "rgba-mipmap-zlib.ktx2",
+        "rgba-mipmap-little.ktx2",
+      }) {
+        try (var parser = this.parserFor(name)) {
+          try (var file = (KTX2FileReadableType) parser.execute()) {
+            for (final var level : file.levels()) {
+              final var target =
+                ByteBuffer.allocateDirect((int) level.uncompressedByteLength());
+              decompressor.decompress(file, level, target);
+              assertEquals(0, target.remaining());
+            }
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testUncompressed()
+    throws Exception
+  {
+    try (var decompressor = new KTX2LevelDecompressor(3)) {
+      try (var parser = this.parserFor("rgba-mipmap-little.ktx2")) {
+        try (var file = (KTX2FileReadableType) parser.execute()) {
+          for (final var level : file.levels()) {
+            final var target =
+              ByteBuffer.allocateDirect((int) level.uncompressedByteLength());
+            decompressor.decompress(file, level, target);
+            assertEquals(0, target.remaining());
+            assertEquals(file.levelData(level), target.flip());
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testZstdTruncated()
+    throws Exception
+  {
+    try (var decompressor = new KTX2LevelDecompressor(16)) {
+      try (var parser = this.parserFor("broken-rgba-mipmap-zstd-truncated.ktx2")) {
+        try (var file = (KTX2FileReadableType) parser.execute()) {
+          final var level = file.levels().get(0);
+          final var target =
+            ByteBuffer.allocateDirect((int) level.uncompressedByteLength());
+
+          final var ex = assertThrows(IOException.class, () -> {
+            decompressor.decompress(file, level, target);
+          });
+          LOG.debug("exception: ", ex);
+          assertTrue(ex.getMessage().contains("Corrupt supercompressed data."));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testTargetTooSmall()
+    throws Exception
+  {
+    try (var decompressor = new KTX2LevelDecompressor()) {
+      try (var parser = this.parserFor("rgba-mipmap-zstd.ktx2")) {
+        try (var file = (KTX2FileReadableType) parser.execute()) {
+          final var level = file.levels().get(0);
+          assertThrows(IllegalArgumentException.class, () -> {
+            decompressor.decompress(file, level, ByteBuffer.allocateDirect(8));
+          });
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testClosed()
+    throws Exception
+  {
+    final var decompressor = new KTX2LevelDecompressor();
+    decompressor.close();
+
+    try (var parser = this.parserFor("rgba-mipmap-zstd.ktx2")) {
+      try (var file = (KTX2FileReadableType) parser.execute()) {
+        final var level = file.levels().get(0);
+        assertThrows(IllegalStateException.class, () -> {
+          decompressor.decompress(file, level, ByteBuffer.allocateDirect(1024));
+        });
+      }
+    }
+  }
+
+  private KTXParserType parserFor(
+    final String name)
+    throws IOException
+  {
+    final var file =
+      KTXTestDirectories.resourceOf(
+        KTX2LevelDecompressorTest.class,
+        this.directory,
+        name
+      );
+
+    final var channel =
+      FileChannel.open(file, StandardOpenOption.READ);
+
+    return this.readers.create(
+      KTXParseRequest.builder(channel, file.toUri())
+        .build()
+    );
+  }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.tests;
+
+import com.io7m.jaion.api.KTX1FileReadableType;
+import com.io7m.jaion.api.KTX2FileReadableType;
+import com.io7m.jaion.api.KTXAsyncParseRequest;
+import com.io7m.jaion.api.KTXFileReadableType;
+import com.io7m.jaion.vanilla.KTXParserFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class KTXAsyncParserTest
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(KTXAsyncParserTest.class);
+
+  private KTXParserFactory parsers;
+  private Path directory;
+
+  @BeforeEach
+  public void setup()
+    throws IOException
+  {
+    this.parsers =
+      new KTXParserFactory();
+    this.directory =
+      KTXTestDirectories.createTempDirectory();
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws IOException
+  {
+    KTXTestDirectories.deleteDirectory(this.directory);
+  }
+
+  private Path file(
+    final String name)
+    throws IOException
+  {
+    return KTXTestDirectories.resourceOf(
+      KTXAsyncParserTest.class,
+      this.directory,
+      name
+    );
+  }
+
+  private KTXFileReadableType parseSync(
+    final Path file)
+    throws IOException
+  {
+    try (var parser = this.parsers.createMapped(file)) {
+      return parser.execute();
+    }
+  }
+
+  private void checkMatchesSync(
+    final String name)
+    throws Exception
+  {
+    final var file = this.file(name);
+    try (var expected = (KTX1FileReadableType) this.parseSync(file)) {
+      try (var channel = AsynchronousFileChannel.open(file)) {
+        final var request = KTXAsyncParseRequest.of(channel, file.toUri());
+        try (var readable =
+               (KTX1FileReadableType) this.parsers.parseAsync(request).get()) {
+          assertEquals(expected.header(), readable.header());
+          assertEquals(expected.subImages(), readable.subImages());
+          assertEquals(expected.keyValueData(), readable.keyValueData());
+
+          for (final var image : readable.subImages()) {
+            final var target =
+              ByteBuffer.allocateDirect((int) image.imageSizeBytes() + 3);
+            target.position(3);
+
+            final var result =
+              readable.subImageDataAsync(image, target).get();
+            assertEquals(target, result);
+            assertEquals(target.capacity(), target.position());
+            assertEquals(
+              expected.subImageData(image),
+              target.flip().position(3));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testOrangeKTX1()
+    throws Exception
+  {
+    this.checkMatchesSync("orange.ktx");
+  }
+
+  @Test
+  public void testRGBMipmapsKTX1()
+    throws Exception
+  {
+    this.checkMatchesSync("rgb-mipmap-reference.ktx");
+  }
+
+  @Test
+  public void testTextureArrayKTX1()
+    throws Exception
+  {
+    this.checkMatchesSync("texturearray_astc_8x8_unorm.ktx");
+  }
+
+  @Test
+  public void testCubeMipmapsKTX1()
+    throws Exception
+  {
+    this.checkMatchesSync("cube-rgba-mipmap.ktx");
+  }
+
+  @Test
+  public void testVolumeMipmapsKTX1()
+    throws Exception
+  {
+    this.checkMatchesSync("volume-r8-mipmap.ktx");
+  }
+
+  @Test
+  public void testKeyValuesBinaryKTX1()
+    throws Exception
+  {
+    this.checkMatchesSync("keyvalues-binary.ktx");
+  }
+
+  @Test
+  public void testRGBAMipmapsKTX2()
+    throws Exception
+  {
+    final var file = this.file("rgba-mipmap-little.ktx2");
+    try (var expected = (KTX2FileReadableType) this.parseSync(file)) {
+      try (var channel = AsynchronousFileChannel.open(file)) {
+        final var request = KTXAsyncParseRequest.of(channel, file.toUri());
+        try (var readable =
+               (KTX2FileReadableType) this.parsers.parseAsync(request).get()) {
+          assertEquals(expected.header(), readable.header());
+          assertEquals(expected.index(), readable.index());
+          assertEquals(expected.levels(), readable.levels());
+          assertEquals(expected.keyValueData(), readable.keyValueData());
+
+          for (final var level : readable.levels()) {
+            final var target =
+              ByteBuffer.allocate((int) level.byteLength());
+            readable.levelDataAsync(level, target).get();
+            assertEquals(expected.levelData(level), target.flip());
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testTargetTooSmall()
+    throws Exception
+  {
+    final var file = this.file("orange.ktx");
+    try (var channel = AsynchronousFileChannel.open(file)) {
+      final var request = KTXAsyncParseRequest.of(channel, file.toUri());
+      try (var readable =
+             (KTX1FileReadableType) this.parsers.parseAsync(request).get()) {
+        final var image = readable.subImages().get(0);
+        final var future =
+          readable.subImageDataAsync(image, ByteBuffer.allocate(1));
+        final var ex =
+          assertThrows(ExecutionException.class, future::get);
+        assertInstanceOf(IllegalArgumentException.class, ex.getCause());
+      }
+    }
+  }
+
+  private IOException failureOf(
+    final String name)
+    throws Exception
+  {
+    final var file = this.file(name);
+    try (var channel =
+           AsynchronousFileChannel.open(file, StandardOpenOption.READ)) {
+      final var request = KTXAsyncParseRequest.of(channel, file.toUri());
+      final var ex =
+        assertThrows(
+          ExecutionException.class,
+          () -> this.parsers.parseAsync(request).get());
+      LOG.debug("exception: ", ex);
+      return assertInstanceOf(IOException.class, ex.getCause());
+    }
+  }
+
+  @Test
+  public void testBroken1()
+    throws Exception
+  {
+    assertTrue(
+      this.failureOf("broken1.ktx")
+        .getMessage()
+        .contains("Unrecognized file identifier."));
+  }
+
+  @Test
+  public void testBrokenOrangeTruncated0()
+    throws Exception
+  {
+    assertTrue(
+      this.failureOf("broken-orange-truncated-0.ktx")
+        .getMessage()
+        .contains("Out of bounds."));
+  }
+
+  @Test
+  public void testBrokenOrangeTruncated1()
+    throws Exception
+  {
+    assertTrue(
+      this.failureOf("broken-orange-truncated-1.ktx")
+        .getMessage()
+        .contains("Out of bounds."));
+  }
+
+  @Test
+  public void testBrokenOrangeTruncatedLastLevel()
+    throws Exception
+  {
+    final var message =
+      this.failureOf("broken-orange-truncated-2.ktx").getMessage();
+    assertTrue(message.contains("Out of bounds."));
+    assertTrue(message.contains("The image data at file offset"));
+  }
+
+  @Test
+  public void testBrokenTruncatedKTX2()
+    throws Exception
+  {
+    assertTrue(
+      this.failureOf("broken-rgba-mipmap-truncated.ktx2")
+        .getMessage()
+        .contains("Out of bounds."));
+  }
+
+  @Test
+  public void testBrokenArrayCountHuge()
+    throws Exception
+  {
+    assertTrue(
+      this.failureOf("broken-array-count-huge.ktx")
+        .getMessage()
+        .contains("Out of bounds."));
+  }
+
+  @Test
+  public void testBrokenMipmapCountHuge()
+    throws Exception
+  {
+    assertTrue(
+      this.failureOf("broken-mipmap-count-huge.ktx")
+        .getMessage()
+        .contains("Limit exceeded."));
+  }
+
+  @Test
+  public void testBrokenLevelCountHugeKTX2()
+    throws Exception
+  {
+    final var message =
+      this.failureOf("broken-level-count-huge.ktx2").getMessage();
+    assertTrue(message.contains("Limit exceeded."));
+    assertTrue(message.contains("mipmap level count limit"));
+  }
+
+  @Test
+  public void testBrokenKeyDataTooLarge()
+    throws Exception
+  {
+    assertTrue(
+      this.failureOf("broken-keydata-too-large.ktx")
+        .getMessage()
+        .contains("Limit exceeded."));
+  }
+}
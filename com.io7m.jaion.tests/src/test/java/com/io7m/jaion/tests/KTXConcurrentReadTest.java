@@ -0,0 +1,169 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.tests;
+
+import com.io7m.jaion.api.KTX1FileReadableType;
+import com.io7m.jaion.api.KTX2FileReadableType;
+import com.io7m.jaion.api.KTXParseRequest;
+import com.io7m.jaion.vanilla.KTXParserFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public final class KTXConcurrentReadTest
+{
+  private static final int THREADS = 8;
+  private static final int ITERATIONS = 200;
+
+  private KTXParserFactory readers;
+  private Path directory;
+  private ExecutorService executor;
+
+  @BeforeEach
+  public void setup()
+    throws IOException
+  {
+    this.readers = new KTXParserFactory();
+    this.directory = KTXTestDirectories.createTempDirectory();
+    this.executor = Executors.newFixedThreadPool(THREADS);
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws IOException
+  {
+    this.executor.shutdown();
+    KTXTestDirectories.deleteDirectory(this.directory);
+  }
+
+  private Path resource(
+    final String name)
+    throws IOException
+  {
+    return KTXTestDirectories.resourceOf(
+      KTXConcurrentReadTest.class,
+      this.directory,
+      name
+    );
+  }
+
+  private void runAll(
+    final Callable<Void> task)
+    throws Exception
+  {
+    final var tasks = new ArrayList<Callable<Void>>();
+    for (int index = 0; index < THREADS; ++index) {
+      tasks.add(task);
+    }
+    for (final var future : this.executor.invokeAll(tasks)) {
+      future.get();
+    }
+  }
+
+  @Test
+  public void testKTX1ConcurrentBatchReads()
+    throws Exception
+  {
+    final var file = this.resource("rgb-mipmap-reference.ktx");
+
+    try (var channel = FileChannel.open(file)) {
+      final var request =
+        KTXParseRequest.builder(channel, file.toUri())
+          .build();
+
+      try (var parser = this.readers.create(request)) {
+        final var readable = (KTX1FileReadableType) parser.execute();
+        final var subImages = readable.subImages();
+        final var expected = new ArrayList<ByteBuffer>();
+        for (final var subImage : subImages) {
+          expected.add(readable.subImageData(subImage));
+        }
+
+        final var positionBefore = channel.position();
+
+        this.runAll(() -> {
+          for (int iteration = 0; iteration < ITERATIONS; ++iteration) {
+            final var index = iteration % subImages.size();
+            final var subImage = subImages.get(index);
+            final var target =
+              ByteBuffer.allocate((int) subImage.imageSizeBytes());
+            readable.subImageDataBatch(List.of(subImage), List.of(target));
+            assertEquals(expected.get(index), target.flip());
+          }
+          return null;
+        });
+
+        assertEquals(positionBefore, channel.position());
+      }
+    }
+  }
+
+  @Test
+  public void testKTX2ConcurrentLevelChannels()
+    throws Exception
+  {
+    final var file = this.resource("rgba-mipmap-little.ktx2");
+
+    try (var channel = FileChannel.open(file)) {
+      final var request =
+        KTXParseRequest.builder(channel, file.toUri())
+          .build();
+
+      try (var parser = this.readers.create(request)) {
+        final var readable = (KTX2FileReadableType) parser.execute();
+        final var levels = readable.levels();
+        final var expected = new ArrayList<ByteBuffer>();
+        for (final var level : levels) {
+          expected.add(readable.levelData(level));
+        }
+
+        final var positionBefore = channel.position();
+
+        this.runAll(() -> {
+          for (int iteration = 0; iteration < ITERATIONS; ++iteration) {
+            final var index = iteration % levels.size();
+            final var level = levels.get(index);
+            final var target =
+              ByteBuffer.allocate((int) level.byteLength());
+            try (var levelChannel = readable.levelDataChannel(level)) {
+              while (target.hasRemaining()) {
+                levelChannel.read(target);
+              }
+            }
+            assertEquals(expected.get(index), target.flip());
+          }
+          return null;
+        });
+
+        assertEquals(positionBefore, channel.position());
+      }
+    }
+  }
+}
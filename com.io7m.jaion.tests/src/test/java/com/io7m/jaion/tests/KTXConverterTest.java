@@ -0,0 +1,261 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jaion.tests;
+
+import com.io7m.jaion.api.KTX1FileReadableType;
+import com.io7m.jaion.api.KTX2FileReadableType;
+import com.io7m.jaion.vanilla.KTXConverter;
+import com.io7m.jaion.vanilla.KTXParserFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class KTXConverterTest
+{
+  private KTXParserFactory readers;
+  private KTXConverter converter;
+  private Path directory;
+
+  @BeforeEach
+  public void setup()
+    throws IOException
+  {
+    this.readers = new KTXParserFactory();
+    this.converter = new KTXConverter(this.readers);
+    this.directory = KTXTestDirectories.createTempDirectory();
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws IOException
+  {
+    KTXTestDirectories.deleteDirectory(this.directory);
+  }
+
+  private static ByteBuffer unpaddedLevel(
+    final KTX1FileReadableType ktx1,
+    final int level,
+    final int bytesPerPixel)
+    throws IOException
+  {
+    final var header = ktx1.header();
+    final var rowBytes =
+      (int) Math.max(header.pixelWidth() >>> level, 1L) * bytesPerPixel;
+    final var rows =
+      (int) Math.max(header.pixelHeight() >>> level, 1L);
+
+    final var bytes = new ByteArrayOutputStream();
+    for (final var subImage : ktx1.subImages()) {
+      if (subImage.mipMapLevel() != level) {
+        continue;
+      }
+      final var data = ktx1.subImageData(subImage);
+      final var rowStride = data.remaining() / rows;
+      for (int row = 0; row < rows; ++row) {
+        final var rowData = new byte[rowBytes];
+        data.get(row * rowStride, rowData);
+        bytes.write(rowData);
+      }
+    }
+    return ByteBuffer.wrap(bytes.toByteArray());
+  }
+
+  private void checkConversion(
+    final String name,
+    final long vkFormat,
+    final int bytesPerPixel)
+    throws Exception
+  {
+    final var input =
+      KTXTestDirectories.resourceOf(
+        KTXConverterTest.class,
+        this.directory,
+        name
+      );
+    final var output =
+      this.directory.resolve("output.ktx2");
+
+    this.converter.convertKTX1ToKTX2(input, output);
+
+    try (var parser1 = this.readers.createMapped(input);
+         var parser2 = this.readers.createMapped(output)) {
+      try (var ktx1 = (KTX1FileReadableType) parser1.execute();
+           var ktx2 = (KTX2FileReadableType) parser2.execute()) {
+        final var h1 = ktx1.header();
+        final var h2 = ktx2.header();
+
+        assertEquals(vkFormat, h2.format());
+        assertEquals(h1.glTypeSize(), h2.typeSize());
+        assertEquals(h1.pixelWidth(), h2.pixelWidth());
+        assertEquals(h1.pixelHeight(), h2.pixelHeight());
+        assertEquals(h1.pixelDepth(), h2.pixelDepth());
+        assertEquals(h1.numberOfArrayElements(), h2.layerCount());
+        assertEquals(h1.numberOfFaces(), h2.faceCount());
+        assertEquals(h1.numberOfMipmapLevels(), h2.levelCount());
+        assertEquals(0L, h2.supercompressionScheme());
+
+        final var alignment = bytesPerPixel % 4 == 0 ? bytesPerPixel : 4;
+        final var levels = ktx2.levels();
+        for (final var level : levels) {
+          assertEquals(0L, level.byteOffset() % alignment);
+          if (level.mipMapLevel() > 0) {
+            assertTrue(
+              level.byteOffset()
+                < levels.get(level.mipMapLevel() - 1).byteOffset());
+          }
+
+          assertEquals(
+            unpaddedLevel(ktx1, level.mipMapLevel(), bytesPerPixel),
+            ktx2.levelData(level)
+          );
+        }
+
+        final var index = ktx2.index();
+        final var dfd = ByteBuffer.allocate((int) index.dfdByteLength());
+        try (var channel = FileChannel.open(output)) {
+          channel.read(dfd, index.dfdByteOffset());
+        }
+        assertEquals(bytesPerPixel, dfd.get(20));
+        assertTrue(ktx2.keyValueData().containsKey("KTXwriter"));
+      }
+    }
+  }
+
+  @Test
+  public void testConvertRGBMipmaps()
+    throws Exception
+  {
+    this.checkConversion("rgb-mipmap-reference.ktx", 29L, 3);
+  }
+
+  @Test
+  public void testConvertCubePadded()
+    throws Exception
+  {
+    this.checkConversion("cube-r8-padded.ktx", 9L, 1);
+  }
+
+  @Test
+  public void testConvertCubeArray()
+    throws Exception
+  {
+    this.checkConversion("cube-array-rgba.ktx", 37L, 4);
+  }
+
+  @Test
+  public void testConvertCubeMipmaps()
+    throws Exception
+  {
+    this.checkConversion("cube-rgba-mipmap.ktx", 37L, 4);
+  }
+
+  @Test
+  public void testConvertVolume()
+    throws Exception
+  {
+    this.checkConversion("volume-r8-mipmap.ktx", 9L, 1);
+  }
+
+  @Test
+  public void testConvertBigEndianBytes()
+    throws Exception
+  {
+    this.checkConversion("rgba-reference-big.ktx", 43L, 4);
+  }
+
+  @Test
+  public void testConvertOrientation()
+    throws Exception
+  {
+    this.checkConversion("orange.ktx", 43L, 4);
+
+    try (var parser =
+           this.readers.createMapped(this.directory.resolve("output.ktx2"))) {
+      try (var ktx2 = parser.execute()) {
+        assertEquals("rd", ktx2.keyValueData().get("KTXorientation"));
+        assertEquals("jaion", ktx2.keyValueData().get("KTXwriter"));
+      }
+    }
+  }
+
+  @Test
+  public void testConvertCompressedUnsupported()
+    throws Exception
+  {
+    final var input =
+      KTXTestDirectories.resourceOf(
+        KTXConverterTest.class,
+        this.directory,
+        "texturearray_astc_8x8_unorm.ktx"
+      );
+
+    final var ex =
+      assertThrows(IOException.class, () -> {
+        this.converter.convertKTX1ToKTX2(
+          input, this.directory.resolve("output.ktx2"));
+      });
+    assertTrue(ex.getMessage().contains("Unsupported format"));
+  }
+
+  @Test
+  public void testConvertBigEndianWordsUnsupported()
+    throws Exception
+  {
+    final var input =
+      KTXTestDirectories.resourceOf(
+        KTXConverterTest.class,
+        this.directory,
+        "r32ui-big.ktx"
+      );
+
+    final var ex =
+      assertThrows(IOException.class, () -> {
+        this.converter.convertKTX1ToKTX2(
+          input, this.directory.resolve("output.ktx2"));
+      });
+    assertTrue(ex.getMessage().contains("Unsupported byte order"));
+  }
+
+  @Test
+  public void testConvertKTX2Rejected()
+    throws Exception
+  {
+    final var input =
+      KTXTestDirectories.resourceOf(
+        KTXConverterTest.class,
+        this.directory,
+        "rgba-mipmap-little.ktx2"
+      );
+
+    final var ex =
+      assertThrows(IOException.class, () -> {
+        this.converter.convertKTX1ToKTX2(
+          input, this.directory.resolve("output.ktx2"));
+      });
+    assertTrue(ex.getMessage().contains("not a KTX1 file"));
+  }
+}
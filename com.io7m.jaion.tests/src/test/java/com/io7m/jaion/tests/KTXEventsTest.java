@@ -0,0 +1,234 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.tests;
+
+import com.io7m.jaion.api.KTX1FileReadableType;
+import com.io7m.jaion.api.KTX2FileReadableType;
+import com.io7m.jaion.api.KTXParseRequest;
+import com.io7m.jaion.vanilla.KTXParserFactory;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class KTXEventsTest
+{
+  private static final String PARSE =
+    "com.io7m.jaion.Parse";
+  private static final String SUB_IMAGE_READ =
+    "com.io7m.jaion.SubImageRead";
+  private static final String LEVEL_READ =
+    "com.io7m.jaion.LevelRead";
+
+  private KTXParserFactory readers;
+  private Path directory;
+
+  @BeforeEach
+  public void setup()
+    throws IOException
+  {
+    this.readers = new KTXParserFactory();
+    this.directory = KTXTestDirectories.createTempDirectory();
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws IOException
+  {
+    KTXTestDirectories.deleteDirectory(this.directory);
+  }
+
+  private Path resource(
+    final String name)
+    throws IOException
+  {
+    return KTXTestDirectories.resourceOf(
+      KTXEventsTest.class,
+      this.directory,
+      name
+    );
+  }
+
+  private static Recording startRecording()
+  {
+    final var recording = new Recording();
+    recording.enable(PARSE).withThreshold(Duration.ZERO);
+    recording.enable(SUB_IMAGE_READ).withThreshold(Duration.ZERO);
+    recording.enable(LEVEL_READ).withThreshold(Duration.ZERO);
+    recording.start();
+    return recording;
+  }
+
+  private List<RecordedEvent> stopRecording(
+    final Recording recording)
+    throws IOException
+  {
+    recording.stop();
+    final var file = this.directory.resolve("events.jfr");
+    recording.dump(file);
+    return RecordingFile.readAllEvents(file);
+  }
+
+  private static List<RecordedEvent> named(
+    final List<RecordedEvent> events,
+    final String name)
+  {
+    return events.stream()
+      .filter(e -> e.getEventType().getName().equals(name))
+      .toList();
+  }
+
+  private KTXParseRequest requestFor(
+    final Path file)
+    throws IOException
+  {
+    return KTXParseRequest.builder(FileChannel.open(file), file.toUri())
+      .build();
+  }
+
+  @Test
+  public void testKTX1Events()
+    throws Exception
+  {
+    final var file = this.resource("keyvalues-binary.ktx");
+
+    final List<RecordedEvent> events;
+    final long keyValueBytes;
+    final int subImageCount;
+    try (var recording = startRecording()) {
+      try (var parser = this.readers.create(this.requestFor(file))) {
+        final var readable = (KTX1FileReadableType) parser.execute();
+        keyValueBytes = readable.header().bytesOfKeyValueData();
+
+        final var subImages = readable.subImages();
+        subImageCount = subImages.size();
+        for (final var subImage : subImages) {
+          readable.subImageData(subImage);
+        }
+
+        var total = 0L;
+        for (final var subImage : subImages) {
+          total += subImage.imageSizeBytes();
+        }
+        final var target = ByteBuffer.allocate((int) total);
+        readable.subImageDataBatch(
+          subImages,
+          subImages.stream().map(s -> target).toList()
+        );
+      }
+      events = this.stopRecording(recording);
+    }
+
+    final var parses = named(events, PARSE);
+    assertEquals(1, parses.size());
+
+    final var parse = parses.get(0);
+    assertEquals(file.toUri().toString(), parse.getString("source"));
+    assertEquals(1, parse.getInt("formatVersion"));
+    assertTrue(parse.getBoolean("succeeded"));
+    assertEquals(keyValueBytes, parse.getLong("keyValueBytes"));
+    assertTrue(parse.getLong("parserReads") > 0L);
+    assertTrue(parse.getLong("parserSeeks") > 0L);
+    assertTrue(parse.getLong("bytesRead") >= 64L + keyValueBytes);
+
+    final var reads = named(events, SUB_IMAGE_READ);
+    assertEquals(subImageCount + 1, reads.size());
+
+    final var data =
+      reads.stream()
+        .filter(e -> "data".equals(e.getString("operation")))
+        .toList();
+    assertEquals(subImageCount, data.size());
+    for (final var read : data) {
+      assertEquals(1, read.getInt("subImageCount"));
+      assertTrue(read.getLong("byteCount") > 0L);
+    }
+
+    final var batch =
+      reads.stream()
+        .filter(e -> "batch".equals(e.getString("operation")))
+        .toList();
+    assertEquals(1, batch.size());
+    assertEquals(subImageCount, batch.get(0).getInt("subImageCount"));
+  }
+
+  @Test
+  public void testKTX2Events()
+    throws Exception
+  {
+    final var file = this.resource("rgba-mipmap-little.ktx2");
+
+    final List<RecordedEvent> events;
+    final int levelCount;
+    try (var recording = startRecording()) {
+      try (var parser = this.readers.create(this.requestFor(file))) {
+        final var readable = (KTX2FileReadableType) parser.execute();
+        levelCount = readable.levels().size();
+        for (final var level : readable.levels()) {
+          readable.levelData(level);
+        }
+      }
+      events = this.stopRecording(recording);
+    }
+
+    final var parses = named(events, PARSE);
+    assertEquals(1, parses.size());
+    assertEquals(2, parses.get(0).getInt("formatVersion"));
+    assertTrue(parses.get(0).getBoolean("succeeded"));
+
+    final var reads = named(events, LEVEL_READ);
+    assertEquals(levelCount, reads.size());
+    for (final var read : reads) {
+      assertEquals("data", read.getString("operation"));
+      assertEquals(1, read.getInt("levelCount"));
+    }
+  }
+
+  @Test
+  public void testFailedParseEvent()
+    throws Exception
+  {
+    final var file = this.resource("broken1.ktx");
+
+    final List<RecordedEvent> events;
+    try (var recording = startRecording()) {
+      try (var parser = this.readers.create(this.requestFor(file))) {
+        assertThrows(IOException.class, parser::execute);
+      }
+      events = this.stopRecording(recording);
+    }
+
+    final var parses = named(events, PARSE);
+    assertEquals(1, parses.size());
+    assertFalse(parses.get(0).getBoolean("succeeded"));
+  }
+}
@@ -0,0 +1,375 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.tests;
+
+import com.io7m.jaion.api.KTX1FileReadableType;
+import com.io7m.jaion.api.KTX2FileReadableType;
+import com.io7m.jaion.api.KTXIndexStoreType;
+import com.io7m.jaion.vanilla.KTXIndexStore;
+import com.io7m.jaion.vanilla.KTXParserFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class KTXIndexedParserTest
+{
+  private KTXParserFactory parsers;
+  private Path directory;
+
+  @BeforeEach
+  public void setup()
+    throws IOException
+  {
+    this.parsers =
+      new KTXParserFactory();
+    this.directory =
+      KTXTestDirectories.createTempDirectory();
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws IOException
+  {
+    KTXTestDirectories.deleteDirectory(this.directory);
+  }
+
+  @Test
+  public void testIndexedKTX1()
+    throws Exception
+  {
+    final var file =
+      KTXTestDirectories.resourceOf(
+        KTXIndexedParserTest.class,
+        this.directory,
+        "rgb-mipmap-reference.ktx"
+      );
+
+    final var store =
+      new CountingStore(KTXIndexStore.directory(this.directory.resolve("index")));
+
+    final KTX1FileReadableType parsed;
+    try (var parser = this.parsers.createIndexed(file, store)) {
+      parsed = (KTX1FileReadableType) parser.execute();
+    }
+    assertEquals(1, store.writes);
+
+    try (var parser = this.parsers.createIndexed(file, store)) {
+      try (var indexed = (KTX1FileReadableType) parser.execute()) {
+        assertEquals(1, store.writes);
+        assertEquals(parsed.header(), indexed.header());
+        assertEquals(parsed.subImages(), indexed.subImages());
+        assertEquals(parsed.keyValueData(), indexed.keyValueData());
+        assertEquals(
+          parsed.subImageData(parsed.subImages().get(3)),
+          indexed.subImageData(indexed.subImages().get(3)));
+      }
+    }
+    parsed.close();
+  }
+
+  @Test
+  public void testIndexedKTX1KeyValues()
+    throws Exception
+  {
+    final var file =
+      KTXTestDirectories.resourceOf(
+        KTXIndexedParserTest.class,
+        this.directory,
+        "keyvalues-binary.ktx"
+      );
+
+    final var store = new CountingStore(KTXIndexStore.sidecar());
+    try (var parser = this.parsers.createIndexed(file, store)) {
+      parser.execute().close();
+    }
+
+    assertTrue(Files.isRegularFile(
+      this.directory.resolve("keyvalues-binary.ktx.jaionidx")));
+
+    try (var parser = this.parsers.createIndexed(file, store)) {
+      try (var indexed = parser.execute()) {
+        assertEquals(1, store.writes);
+        assertEquals(3, indexed.keyValues().size());
+        assertEquals("io7m.blob", indexed.keyValues().key(1));
+        assertEquals(5, indexed.keyValues().value(1).remaining());
+        assertEquals(
+          "S=r,T=d",
+          indexed.keyValueData().get("KTXorientation"));
+      }
+    }
+  }
+
+  @Test
+  public void testIndexedKTX2()
+    throws Exception
+  {
+    final var file =
+      KTXTestDirectories.resourceOf(
+        KTXIndexedParserTest.class,
+        this.directory,
+        "rgba-mipmap-little.ktx2"
+      );
+
+    final var store = new CountingStore(KTXIndexStore.sidecar());
+
+    final KTX2FileReadableType parsed;
+    try (var parser = this.parsers.createIndexed(file, store)) {
+      parsed = (KTX2FileReadableType) parser.execute();
+    }
+
+    try (var parser = this.parsers.createIndexed(file, store)) {
+      try (var indexed = (KTX2FileReadableType) parser.execute()) {
+        assertEquals(1, store.writes);
+        assertEquals(parsed.header(), indexed.header());
+        assertEquals(parsed.index(), indexed.index());
+        assertEquals(parsed.levels(), indexed.levels());
+        assertEquals(parsed.keyValueData(), indexed.keyValueData());
+      }
+    }
+    parsed.close();
+  }
+
+  @Test
+  public void testIndexedModified()
+    throws Exception
+  {
+    final var file =
+      KTXTestDirectories.resourceOf(
+        KTXIndexedParserTest.class,
+        this.directory,
+        "orange.ktx"
+      );
+
+    final var store = new CountingStore(KTXIndexStore.sidecar());
+    try (var parser = this.parsers.createIndexed(file, store)) {
+      parser.execute().close();
+    }
+
+    Files.setLastModifiedTime(
+      file, FileTime.from(Instant.parse("2000-01-01T00:00:00Z")));
+
+    try (var parser = this.parsers.createIndexed(file, store)) {
+      parser.execute().close();
+    }
+    assertEquals(2, store.writes);
+  }
+
+  @Test
+  public void testIndexedCorrupt()
+    throws Exception
+  {
+    final var file =
+      KTXTestDirectories.resourceOf(
+        KTXIndexedParserTest.class,
+        this.directory,
+        "orange.ktx"
+      );
+
+    final var store = new CountingStore(KTXIndexStore.sidecar());
+    store.write(file, ByteBuffer.wrap(new byte[]{0x4a, 0x4b, 0x58, 0x49, 1}));
+
+    try (var parser = this.parsers.createIndexed(file, store)) {
+      try (var readable = parser.execute()) {
+        assertEquals(
+          "S=r,T=d",
+          readable.keyValueData().get("KTXorientation"));
+      }
+    }
+    assertEquals(2, store.writes);
+  }
+
+  @Test
+  public void testIndexedCorruptCounts()
+    throws Exception
+  {
+    final var file =
+      KTXTestDirectories.resourceOf(
+        KTXIndexedParserTest.class,
+        this.directory,
+        "orange.ktx"
+      );
+
+    final var store = new CountingStore(KTXIndexStore.sidecar());
+    try (var parser = this.parsers.createIndexed(file, store)) {
+      parser.execute().close();
+    }
+
+    final var valid = store.read(file).orElseThrow();
+
+    /*
+     * Corrupt the key/value entry count, and then the array element count
+     * in the stored header. Neither may cause an allocation sized from
+     * the corrupt value; both must fall back to parsing the file.
+     */
+
+    final var entries =
+      ByteBuffer.allocate(valid.capacity())
+        .order(ByteOrder.LITTLE_ENDIAN)
+        .put(valid.duplicate());
+    entries.putInt(125, 0x7fff_ffff);
+    store.write(file, entries.flip());
+
+    try (var parser = this.parsers.createIndexed(file, store)) {
+      try (var readable = parser.execute()) {
+        assertEquals(
+          "S=r,T=d",
+          readable.keyValueData().get("KTXorientation"));
+      }
+    }
+    assertEquals(3, store.writes);
+
+    final var arrays =
+      ByteBuffer.allocate(valid.capacity())
+        .order(ByteOrder.LITTLE_ENDIAN)
+        .put(valid.duplicate());
+    arrays.putLong(93, 0x2000_0000L);
+    store.write(file, arrays.flip());
+
+    try (var parser = this.parsers.createIndexed(file, store)) {
+      try (var readable = (KTX1FileReadableType) parser.execute()) {
+        assertEquals(1, readable.subImages().size());
+      }
+    }
+    assertEquals(5, store.writes);
+  }
+
+  @Test
+  public void testIndexedWriteFails()
+    throws Exception
+  {
+    final var file =
+      KTXTestDirectories.resourceOf(
+        KTXIndexedParserTest.class,
+        this.directory,
+        "orange.ktx"
+      );
+
+    final var store = new FailingStore();
+    try (var parser = this.parsers.createIndexed(file, store)) {
+      try (var readable = parser.execute()) {
+        assertEquals(1, store.writes);
+        assertEquals(
+          "S=r,T=d",
+          readable.keyValueData().get("KTXorientation"));
+      }
+    }
+  }
+
+  @Test
+  public void testIndexedReadFails()
+    throws Exception
+  {
+    final var file =
+      KTXTestDirectories.resourceOf(
+        KTXIndexedParserTest.class,
+        this.directory,
+        "orange.ktx"
+      );
+
+    /*
+     * A non-empty directory in place of the sidecar can be neither read
+     * nor replaced, so the file is parsed and the index is not written.
+     */
+
+    final var sidecar =
+      this.directory.resolve("orange.ktx.jaionidx");
+    Files.createDirectory(sidecar);
+    Files.writeString(sidecar.resolve("other.txt"), "other");
+
+    final var store = new CountingStore(KTXIndexStore.sidecar());
+    try (var parser = this.parsers.createIndexed(file, store)) {
+      try (var readable = parser.execute()) {
+        assertEquals(1, store.writes);
+        assertEquals(
+          "S=r,T=d",
+          readable.keyValueData().get("KTXorientation"));
+      }
+    }
+    assertTrue(Files.isDirectory(sidecar));
+  }
+
+  private static final class CountingStore implements KTXIndexStoreType
+  {
+    private final KTXIndexStoreType delegate;
+    private int writes;
+
+    CountingStore(
+      final KTXIndexStoreType inDelegate)
+    {
+      this.delegate = inDelegate;
+    }
+
+    @Override
+    public Optional<ByteBuffer> read(
+      final Path file)
+      throws IOException
+    {
+      return this.delegate.read(file);
+    }
+
+    @Override
+    public void write(
+      final Path file,
+      final ByteBuffer data)
+      throws IOException
+    {
+      ++this.writes;
+      this.delegate.write(file, data);
+    }
+  }
+
+  private static final class FailingStore implements KTXIndexStoreType
+  {
+    private int writes;
+
+    FailingStore()
+    {
+
+    }
+
+    @Override
+    public Optional<ByteBuffer> read(
+      final Path file)
+    {
+      return Optional.empty();
+    }
+
+    @Override
+    public void write(
+      final Path file,
+      final ByteBuffer data)
+      throws IOException
+    {
+      ++this.writes;
+      throw new AccessDeniedException(file.toString());
+    }
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.tests;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class KTXLatencyChannel implements SeekableByteChannel
+{
+  private final SeekableByteChannel channel;
+  private final Duration latency;
+  private final AtomicInteger reads;
+
+  public KTXLatencyChannel(
+    final SeekableByteChannel inChannel,
+    final Duration inLatency)
+  {
+    this.channel =
+      Objects.requireNonNull(inChannel, "channel");
+    this.latency =
+      Objects.requireNonNull(inLatency, "latency");
+    this.reads =
+      new AtomicInteger(0);
+  }
+
+  public int reads()
+  {
+    return this.reads.get();
+  }
+
+  @Override
+  public int read(
+    final ByteBuffer dst)
+    throws IOException
+  {
+    this.reads.incrementAndGet();
+    try {
+      Thread.sleep(this.latency.toMillis());
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+    return this.channel.read(dst);
+  }
+
+  @Override
+  public int write(
+    final ByteBuffer src)
+    throws IOException
+  {
+    return this.channel.write(src);
+  }
+
+  @Override
+  public long position()
+    throws IOException
+  {
+    return this.channel.position();
+  }
+
+  @Override
+  public SeekableByteChannel position(
+    final long newPosition)
+    throws IOException
+  {
+    this.channel.position(newPosition);
+    return this;
+  }
+
+  @Override
+  public long size()
+    throws IOException
+  {
+    return this.channel.size();
+  }
+
+  @Override
+  public SeekableByteChannel truncate(
+    final long size)
+    throws IOException
+  {
+    this.channel.truncate(size);
+    return this;
+  }
+
+  @Override
+  public boolean isOpen()
+  {
+    return this.channel.isOpen();
+  }
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    this.channel.close();
+  }
+}
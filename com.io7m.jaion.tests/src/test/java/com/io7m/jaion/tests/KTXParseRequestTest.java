@@ -16,12 +16,15 @@
 
 package com.io7m.jaion.tests;
 
+import com.io7m.jaion.api.KTXAsyncParseRequest;
 import com.io7m.jaion.api.KTXParseRequest;
+import com.io7m.jaion.vanilla.KTXReadaheadByteSources;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.nio.channels.AsynchronousFileChannel;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -71,15 +74,50 @@ public final class KTXParseRequestTest
     builder.setKeyValueRegionLimit(24L);
     builder.setSource(file1.toUri());
 
+    final var byteSources = new KTXReadaheadByteSources();
+    builder.setByteSources(byteSources);
+
     assertEquals(file1.toUri(), builder.source());
     assertEquals(channel1, builder.channel());
     assertEquals(23L, builder.keyValueDatumLimit());
     assertEquals(24L, builder.keyValueRegionLimit());
+    assertEquals(byteSources, builder.byteSources());
 
     final var request = builder.build();
     assertEquals(file1.toUri(), request.source());
+    assertEquals(byteSources, request.byteSources());
     assertEquals(channel1, request.channel());
     assertEquals(23L, request.keyValueDatumLimit());
     assertEquals(24L, request.keyValueRegionLimit());
   }
+
+  @Test
+  public void testDefaultLimits()
+    throws IOException
+  {
+    final var file = this.directory.resolve("hello.txt");
+    Files.writeString(file, "hello");
+
+    try (var channel = FileChannel.open(file, READ);
+         var async = AsynchronousFileChannel.open(file, READ)) {
+      final var request =
+        KTXParseRequest.builder(channel, file.toUri())
+          .build();
+      final var asyncRequest =
+        KTXAsyncParseRequest.of(async, file.toUri());
+
+      assertEquals(
+        KTXParseRequest.KEY_VALUE_REGION_LIMIT_DEFAULT,
+        request.keyValueRegionLimit());
+      assertEquals(
+        KTXParseRequest.KEY_VALUE_DATUM_LIMIT_DEFAULT,
+        request.keyValueDatumLimit());
+      assertEquals(
+        request.keyValueRegionLimit(),
+        asyncRequest.keyValueRegionLimit());
+      assertEquals(
+        request.keyValueDatumLimit(),
+        asyncRequest.keyValueDatumLimit());
+    }
+  }
 }
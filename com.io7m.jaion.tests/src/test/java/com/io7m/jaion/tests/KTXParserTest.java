@@ -16,10 +16,16 @@
 
 package com.io7m.jaion.tests;
 
+import com.io7m.jaion.api.KTX1FileReadableType;
 import com.io7m.jaion.api.KTX1Header;
+import com.io7m.jaion.api.KTX2FileReadableType;
+import com.io7m.jaion.api.KTX2Header;
+import com.io7m.jaion.api.KTXHeaderType;
 import com.io7m.jaion.api.KTXParseRequest;
 import com.io7m.jaion.api.KTXParserType;
 import com.io7m.jaion.vanilla.KTXParserFactory;
+import com.io7m.jaion.vanilla.internal.KTXByteBufferChannel;
+import com.io7m.jaion.vanilla.internal.KTXSubrangeByteChannel;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -27,9 +33,21 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -111,6 +129,87 @@ public final class KTXParserTest
     }
   }
 
+  @Test
+  public void testR16MipmapBigNativeOrderKTX1()
+    throws Exception
+  {
+    try (var parser = this.parserFor("r16-mipmap-big.ktx")) {
+      try (var file = (KTX1FileReadableType) parser.execute()) {
+        final var header = file.header();
+        assertTrue(header.isBigEndian());
+        assertEquals(2, header.glTypeSize());
+
+        final var level0 = file.subImage(0, 0, 0, 0).orElseThrow();
+        final var target =
+          ByteBuffer.allocate(20).order(ByteOrder.nativeOrder());
+        target.position(2);
+
+        file.subImageDataNativeOrder(level0, target);
+        assertEquals(18, target.position());
+        for (int index = 0; index < 8; ++index) {
+          assertEquals(
+            (short) (0x0102 + 0x1010 * index),
+            target.getShort(2 + index * 2));
+        }
+
+        final var level1 = file.subImage(1, 0, 0, 0).orElseThrow();
+        assertThrows(IllegalArgumentException.class, () -> {
+          file.subImageDataNativeOrder(level1, ByteBuffer.allocate(3));
+        });
+
+        final var small =
+          ByteBuffer.allocateDirect(4).order(ByteOrder.nativeOrder());
+        file.subImageDataNativeOrder(level1, small);
+        assertEquals((short) 0xA1B2, small.getShort(0));
+        assertEquals((short) 0xC3D4, small.getShort(2));
+      }
+    }
+  }
+
+  @Test
+  public void testR32BigNativeOrderMappedKTX1()
+    throws Exception
+  {
+    final var file =
+      KTXTestDirectories.resourceOf(
+        KTXParserTest.class,
+        this.directory,
+        "r32ui-big.ktx"
+      );
+
+    try (var parser = this.readers.createMapped(file)) {
+      try (var readable = (KTX1FileReadableType) parser.execute()) {
+        final var subImage = readable.subImages().get(0);
+        final var raw = readable.subImageData(subImage);
+        final var target =
+          ByteBuffer.allocate(16).order(ByteOrder.nativeOrder());
+
+        readable.subImageDataNativeOrder(subImage, target);
+        for (int index = 0; index < 4; ++index) {
+          assertEquals(raw.getInt(index * 4), target.getInt(index * 4));
+        }
+        assertEquals(0x01020304, target.getInt(0));
+        assertEquals(0x31323334, target.getInt(12));
+      }
+    }
+  }
+
+  @Test
+  public void testRGBMipmapsNativeOrderUnchangedKTX1()
+    throws Exception
+  {
+    try (var parser = this.parserFor("rgb-mipmap-reference.ktx")) {
+      try (var file = (KTX1FileReadableType) parser.execute()) {
+        for (final var subImage : file.subImages()) {
+          final var target =
+            ByteBuffer.allocate((int) subImage.imageSizeBytes());
+          file.subImageDataNativeOrder(subImage, target);
+          assertEquals(file.subImageData(subImage), target.flip());
+        }
+      }
+    }
+  }
+
   @Test
   public void testOrangeKTX1()
     throws Exception
@@ -137,6 +236,23 @@ public final class KTXParserTest
     }
   }
 
+  @Test
+  public void testOrangeKeyValuesNotMappedKTX1()
+    throws Exception
+  {
+    try (var parser = this.parserFor("orange.ktx")) {
+      try (var file = parser.execute()) {
+        final var value =
+          file.keyValues().value("KTXorientation").orElseThrow();
+        assertFalse(value instanceof MappedByteBuffer);
+        assertFalse(value.isDirect());
+        assertEquals(
+          "S=r,T=d",
+          file.keyValues().asStrings().get("KTXorientation"));
+      }
+    }
+  }
+
   @Test
   public void testRGBMipmapsKTX1()
     throws Exception
@@ -188,6 +304,497 @@ public final class KTXParserTest
     }
   }
 
+  @Test
+  public void testRGBMipmapsSubImagesKTX1()
+    throws Exception
+  {
+    try (var parser = this.parserFor("rgb-mipmap-reference.ktx")) {
+      try (var file = (KTX1FileReadableType) parser.execute()) {
+        final var subImages = file.subImages();
+        assertEquals(7, subImages.size());
+
+        final var level0 = file.subImage(0, 0, 0, 0).orElseThrow();
+        assertEquals(68L, level0.absoluteByteOffset());
+        assertEquals(12288L, level0.imageSizeBytes());
+        assertEquals(level0, subImages.get(0));
+
+        final var level6 = file.subImage(6, 0, 0, 0).orElseThrow();
+        assertEquals(16476L, level6.absoluteByteOffset());
+        assertEquals(4L, level6.imageSizeBytes());
+        assertEquals(6, level6.mipMapLevel());
+
+        assertTrue(file.subImage(7, 0, 0, 0).isEmpty());
+        assertTrue(file.subImage(0, 1, 0, 0).isEmpty());
+        assertTrue(file.subImage(0, 0, 1, 0).isEmpty());
+        assertTrue(file.subImage(0, 0, 0, 1).isEmpty());
+
+        final var data0 = file.subImageData(level0);
+        assertTrue(data0.isReadOnly());
+        assertEquals(12288, data0.remaining());
+        assertEquals(ByteOrder.LITTLE_ENDIAN, data0.order());
+        assertEquals(0xff, data0.get(0) & 0xff);
+        assertEquals(0x00, data0.get(1) & 0xff);
+        assertEquals(0x00, data0.get(2) & 0xff);
+
+        final var data6 = file.subImageData(level6);
+        assertEquals(4, data6.remaining());
+        assertEquals(0xff, data6.get(0) & 0xff);
+        assertEquals(0x00, data6.get(1) & 0xff);
+        assertEquals(0xff, data6.get(2) & 0xff);
+      }
+    }
+  }
+
+  @Test
+  public void testRGBMipmapsSubImageBatchKTX1()
+    throws Exception
+  {
+    final var file =
+      KTXTestDirectories.resourceOf(
+        KTXParserTest.class,
+        this.directory,
+        "rgb-mipmap-reference.ktx"
+      );
+
+    try (var channel = new CountingChannel(FileChannel.open(file))) {
+      final var request =
+        KTXParseRequest.builder(channel, file.toUri())
+          .build();
+
+      try (var parser = this.readers.create(request)) {
+        try (var readable = (KTX1FileReadableType) parser.execute()) {
+          final var subImages =
+            new ArrayList<>(readable.subImages());
+          Collections.reverse(subImages);
+
+          final var total =
+            subImages.stream()
+              .mapToInt(i -> (int) i.imageSizeBytes())
+              .sum();
+
+          final var shared = ByteBuffer.allocate(total);
+          final var targets =
+            subImages.stream()
+              .map(i -> shared)
+              .toList();
+
+          channel.scatteringReads = 0;
+          readable.subImageDataBatch(subImages, targets);
+          assertEquals(1, channel.scatteringReads);
+          assertEquals(total, shared.position());
+
+          var position = 0;
+          for (final var subImage : subImages) {
+            final var size = (int) subImage.imageSizeBytes();
+            assertEquals(
+              readable.subImageData(subImage),
+              shared.slice(position, size));
+            position += size;
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testRGBMipmapsSubImageBatchPositionalKTX1()
+    throws Exception
+  {
+    final var file =
+      KTXTestDirectories.resourceOf(
+        KTXParserTest.class,
+        this.directory,
+        "rgb-mipmap-reference.ktx"
+      );
+
+    try (var channel = new CountingFileChannel(FileChannel.open(file))) {
+      final var request =
+        KTXParseRequest.builder(channel, file.toUri())
+          .build();
+
+      try (var parser = this.readers.create(request)) {
+        try (var readable = (KTX1FileReadableType) parser.execute()) {
+          final var subImages = readable.subImages();
+          final var targets =
+            subImages.stream()
+              .map(i -> ByteBuffer.allocate((int) i.imageSizeBytes()))
+              .toList();
+
+          /*
+           * The sub-images are separated by imageSize fields. The gaps
+           * are absorbed into one positional read rather than costing a
+           * read each.
+           */
+
+          channel.positionalReads = 0;
+          readable.subImageDataBatch(subImages, targets);
+          assertEquals(1, channel.positionalReads);
+
+          for (int index = 0; index < subImages.size(); ++index) {
+            final var target = targets.get(index);
+            assertFalse(target.hasRemaining());
+            assertEquals(
+              readable.subImageData(subImages.get(index)),
+              target.flip());
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testCubeSubImageBatchMappedKTX1()
+    throws Exception
+  {
+    final var file =
+      KTXTestDirectories.resourceOf(
+        KTXParserTest.class,
+        this.directory,
+        "cube-r8-padded.ktx"
+      );
+
+    try (var parser = this.readers.createMapped(file)) {
+      try (var readable = (KTX1FileReadableType) parser.execute()) {
+        final var subImages = readable.subImages();
+        final var targets =
+          subImages.stream()
+            .map(i -> ByteBuffer.allocateDirect(2))
+            .toList();
+
+        readable.subImageDataBatch(subImages, targets);
+        for (int face = 0; face < 6; ++face) {
+          assertEquals(1, targets.get(face).position());
+          assertEquals(0x10 + face, targets.get(face).get(0));
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> {
+          readable.subImageDataBatch(subImages, List.of());
+        });
+        assertThrows(IllegalArgumentException.class, () -> {
+          readable.subImageDataBatch(
+            subImages.subList(0, 2),
+            List.of(ByteBuffer.allocate(1), ByteBuffer.allocate(0)));
+        });
+      }
+    }
+  }
+
+  @Test
+  public void testTextureArraySubImagesKTX1()
+    throws Exception
+  {
+    try (var parser = this.parserFor("texturearray_astc_8x8_unorm.ktx")) {
+      try (var file = (KTX1FileReadableType) parser.execute()) {
+        final var subImages = file.subImages();
+        assertEquals(7, subImages.size());
+
+        for (int element = 0; element < 7; ++element) {
+          final var subImage =
+            file.subImage(0, element, 0, 0).orElseThrow();
+          assertEquals(element, subImage.arrayElement());
+          assertEquals(100L + (element * 16384L), subImage.absoluteByteOffset());
+          assertEquals(16384L, subImage.imageSizeBytes());
+          assertEquals(16384, file.subImageData(subImage).remaining());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testCubeMipmapsKTX1()
+    throws Exception
+  {
+    try (var parser = this.parserFor("cube-rgba-mipmap.ktx")) {
+      try (var file = (KTX1FileReadableType) parser.execute()) {
+        assertEquals(6, file.header().numberOfFaces());
+        assertEquals(12, file.subImages().size());
+
+        for (int face = 0; face < 6; ++face) {
+          final var level0 = file.subImage(0, 0, face, 0).orElseThrow();
+          assertEquals(68L + (face * 16L), level0.absoluteByteOffset());
+          assertEquals(16L, level0.imageSizeBytes());
+          assertEquals(face, level0.faceIndex());
+
+          final var level1 = file.subImage(1, 0, face, 0).orElseThrow();
+          assertEquals(168L + (face * 4L), level1.absoluteByteOffset());
+          assertEquals(4L, level1.imageSizeBytes());
+
+          final var data = file.subImageData(level1);
+          assertEquals(0x40 + (face * 8), data.get(0) & 0xff);
+          assertEquals(0x40 + (face * 8) + 3, data.get(3) & 0xff);
+        }
+
+        assertTrue(file.subImage(0, 0, 6, 0).isEmpty());
+        assertTrue(file.subImage(2, 0, 0, 0).isEmpty());
+      }
+    }
+  }
+
+  @Test
+  public void testCubePaddingKTX1()
+    throws Exception
+  {
+    try (var parser = this.parserFor("cube-r8-padded.ktx")) {
+      try (var file = (KTX1FileReadableType) parser.execute()) {
+        assertEquals(6, file.subImages().size());
+
+        for (int face = 0; face < 6; ++face) {
+          final var subImage = file.subImage(0, 0, face, 0).orElseThrow();
+          assertEquals(68L + (face * 4L), subImage.absoluteByteOffset());
+          assertEquals(1L, subImage.imageSizeBytes());
+          assertEquals(0x10 + face, file.subImageData(subImage).get(0));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testCubeArrayKTX1()
+    throws Exception
+  {
+    try (var parser = this.parserFor("cube-array-rgba.ktx")) {
+      try (var file = (KTX1FileReadableType) parser.execute()) {
+        assertEquals(12, file.subImages().size());
+
+        for (int element = 0; element < 2; ++element) {
+          for (int face = 0; face < 6; ++face) {
+            final var subImage =
+              file.subImage(0, element, face, 0).orElseThrow();
+            final var layerFace = (element * 6) + face;
+            assertEquals(68L + (layerFace * 4L), subImage.absoluteByteOffset());
+            assertEquals(4L, subImage.imageSizeBytes());
+            assertEquals(element, subImage.arrayElement());
+            assertEquals(face, subImage.faceIndex());
+            assertEquals(layerFace * 8, file.subImageData(subImage).get(0));
+          }
+        }
+        assertTrue(file.subImage(0, 2, 0, 0).isEmpty());
+      }
+    }
+  }
+
+  @Test
+  public void testVolumeMipmapsKTX1()
+    throws Exception
+  {
+    try (var parser = this.parserFor("volume-r8-mipmap.ktx")) {
+      try (var file = (KTX1FileReadableType) parser.execute()) {
+        final var subImages = file.subImages();
+        assertEquals(4 + 2 + 1, subImages.size());
+
+        for (int slice = 0; slice < 4; ++slice) {
+          final var subImage = file.subImage(0, 0, 0, slice).orElseThrow();
+          assertEquals(68L + (slice * 16L), subImage.absoluteByteOffset());
+          assertEquals(16L, subImage.imageSizeBytes());
+          assertEquals(slice * 16, file.subImageData(subImage).get(0));
+        }
+
+        final var level1slice1 = file.subImage(1, 0, 0, 1).orElseThrow();
+        assertEquals(140L, level1slice1.absoluteByteOffset());
+        assertEquals(4L, level1slice1.imageSizeBytes());
+        assertTrue(file.subImage(1, 0, 0, 2).isEmpty());
+
+        final var level2 = file.subImage(2, 0, 0, 0).orElseThrow();
+        assertEquals(148L, level2.absoluteByteOffset());
+        assertEquals(1L, level2.imageSizeBytes());
+
+        for (final var subImage : subImages) {
+          assertEquals(
+            subImage,
+            file.subImage(
+              subImage.mipMapLevel(),
+              subImage.arrayElement(),
+              subImage.faceIndex(),
+              subImage.zSlice()
+            ).orElseThrow()
+          );
+        }
+        assertEquals(level2, subImages.get(6));
+        assertEquals(level1slice1, subImages.get(5));
+      }
+    }
+  }
+
+  @Test
+  public void testRGBMipmapsMappedKTX1()
+    throws Exception
+  {
+    final var path =
+      KTXTestDirectories.resourceOf(
+        KTXParserTest.class,
+        this.directory,
+        "rgb-mipmap-reference.ktx"
+      );
+
+    try (var parser = this.readers.createMapped(path)) {
+      try (var file = (KTX1FileReadableType) parser.execute()) {
+        final KTX1Header header = file.header();
+        assertEquals(64, header.pixelWidth());
+        assertEquals(64, header.pixelHeight());
+        assertEquals(7, header.numberOfMipmapLevels());
+        assertEquals(7, file.subImages().size());
+
+        final var level6 = file.subImage(6, 0, 0, 0).orElseThrow();
+        assertEquals(16476L, level6.absoluteByteOffset());
+
+        final var data6 = file.subImageData(level6);
+        assertTrue(data6.isReadOnly());
+        assertEquals(4, data6.remaining());
+        assertEquals(0xff, data6.get(0) & 0xff);
+        assertEquals(0x00, data6.get(1) & 0xff);
+        assertEquals(0xff, data6.get(2) & 0xff);
+      }
+    }
+  }
+
+  @Test
+  public void testOrangeMappedChannelKTX1()
+    throws Exception
+  {
+    final var path =
+      KTXTestDirectories.resourceOf(
+        KTXParserTest.class,
+        this.directory,
+        "orange.ktx"
+      );
+
+    try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      final var request =
+        KTXParseRequest.builder(channel, path.toUri())
+          .build();
+
+      try (var parser = this.readers.createMapped(request)) {
+        try (var file = parser.execute()) {
+          assertEquals("S=r,T=d", file.keyValueData().get("KTXorientation"));
+          assertEquals(18, ((KTX1Header) file.header()).pixelWidth());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testMappedNotFileChannel()
+    throws Exception
+  {
+    final var path =
+      KTXTestDirectories.resourceOf(
+        KTXParserTest.class,
+        this.directory,
+        "orange.ktx"
+      );
+
+    try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      final var request =
+        KTXParseRequest.builder(
+          new KTXSubrangeByteChannel(channel, 0L, channel.size()),
+          path.toUri()
+        ).build();
+
+      assertThrows(IllegalArgumentException.class, () -> {
+        this.readers.createMapped(request);
+      });
+    }
+  }
+
+  @Test
+  public void testRGBAMipmapsKTX2()
+    throws Exception
+  {
+    try (var parser = this.parserFor("rgba-mipmap-little.ktx2")) {
+      try (var file = (KTX2FileReadableType) parser.execute()) {
+        checkRGBAMipmapsKTX2(file);
+      }
+    }
+  }
+
+  @Test
+  public void testRGBAMipmapsMappedKTX2()
+    throws Exception
+  {
+    final var path =
+      KTXTestDirectories.resourceOf(
+        KTXParserTest.class,
+        this.directory,
+        "rgba-mipmap-little.ktx2"
+      );
+
+    try (var parser = this.readers.createMapped(path)) {
+      try (var file = (KTX2FileReadableType) parser.execute()) {
+        checkRGBAMipmapsKTX2(file);
+      }
+    }
+  }
+
+  private static void checkRGBAMipmapsKTX2(
+    final KTX2FileReadableType file)
+    throws IOException
+  {
+    final KTX2Header header = file.header();
+    assertEquals(37, header.format());
+    assertEquals(1, header.typeSize());
+    assertEquals(4, header.pixelWidth());
+    assertEquals(4, header.pixelHeight());
+    assertEquals(0, header.pixelDepth());
+    assertEquals(0, header.layerCount());
+    assertEquals(1, header.faceCount());
+    assertEquals(3, header.levelCount());
+    assertEquals(0, header.supercompressionScheme());
+
+    final var index = file.index();
+    assertEquals(152L, index.dfdByteOffset());
+    assertEquals(92L, index.dfdByteLength());
+    assertEquals(244L, index.kvdByteOffset());
+    assertEquals(44L, index.kvdByteLength());
+    assertEquals(0L, index.sgdByteOffset());
+    assertEquals(0L, index.sgdByteLength());
+
+    assertEquals(2, file.keyValueData().size());
+    assertEquals("rd", file.keyValueData().get("KTXorientation"));
+    assertEquals("jaion", file.keyValueData().get("KTXwriter"));
+
+    final var levels = file.levels();
+    assertEquals(3, levels.size());
+    assertEquals(308L, levels.get(0).byteOffset());
+    assertEquals(64L, levels.get(0).byteLength());
+    assertEquals(64L, levels.get(0).uncompressedByteLength());
+    assertEquals(292L, levels.get(1).byteOffset());
+    assertEquals(16L, levels.get(1).byteLength());
+    assertEquals(288L, levels.get(2).byteOffset());
+    assertEquals(4L, levels.get(2).byteLength());
+
+    for (final var level : levels) {
+      final var data = file.levelData(level);
+      assertTrue(data.isReadOnly());
+      assertEquals(level.byteLength(), data.remaining());
+      assertEquals(ByteOrder.LITTLE_ENDIAN, data.order());
+      for (int index0 = 0; index0 < data.remaining(); ++index0) {
+        assertEquals(
+          (0x40 * level.mipMapLevel()) + index0,
+          data.get(index0) & 0xff
+        );
+      }
+
+      final var streamed = ByteBuffer.allocate(128);
+      try (var channel = file.levelDataChannel(level)) {
+        for (int reads = 0; channel.read(streamed) != -1; ++reads) {
+          assertTrue(reads < 128, "Channel must report the end of stream.");
+        }
+      }
+      assertEquals(data, streamed.flip());
+    }
+  }
+
+  @Test
+  public void testBrokenTruncatedKTX2()
+    throws Exception
+  {
+    try (var parser = this.parserFor("broken-rgba-mipmap-truncated.ktx2")) {
+      final var ex = assertThrows(IOException.class, parser::execute);
+      LOG.debug("exception: ", ex);
+      assertTrue(ex.getMessage().contains("Out of bounds."));
+    }
+  }
+
   @Test
   public void testOrangeClosed0()
     throws Exception
@@ -241,6 +848,120 @@ public final class KTXParserTest
     }
   }
 
+  @Test
+  public void testBrokenOrangeTruncatedLastLevel()
+    throws Exception
+  {
+    try (var parser = this.parserFor("broken-orange-truncated-2.ktx")) {
+      final var ex = assertThrows(IOException.class, parser::execute);
+      LOG.debug("exception: ", ex);
+      assertTrue(ex.getMessage().contains("Out of bounds."));
+      assertTrue(ex.getMessage().contains("The image data at file offset"));
+    }
+  }
+
+  @Test
+  public void testBrokenOrangeTruncatedHeaderSection()
+    throws Exception
+  {
+    try (var parser = this.parserFor("broken-orange-truncated-1.ktx")) {
+      final var ex = assertThrows(IOException.class, parser::execute);
+      LOG.debug("exception: ", ex);
+      assertTrue(ex.getMessage().contains("The header at file offset 0xc"));
+      assertTrue(ex.getMessage().contains("size of 42 bytes"));
+    }
+  }
+
+  @Test
+  public void testBrokenArrayCountHuge()
+    throws Exception
+  {
+    try (var parser = this.parserFor("broken-array-count-huge.ktx")) {
+      final var ex = assertThrows(IOException.class, parser::execute);
+      LOG.debug("exception: ", ex);
+      assertTrue(ex.getMessage().contains("Out of bounds."));
+      assertTrue(ex.getMessage().contains("sub-image data"));
+    }
+  }
+
+  @Test
+  public void testBrokenArrayCountHugeMapped()
+    throws Exception
+  {
+    final var file =
+      KTXTestDirectories.resourceOf(
+        KTXParserTest.class,
+        this.directory,
+        "broken-array-count-huge.ktx"
+      );
+
+    try (var parser = this.readers.createMapped(file)) {
+      final var ex = assertThrows(IOException.class, parser::execute);
+      LOG.debug("exception: ", ex);
+      assertTrue(ex.getMessage().contains("Out of bounds."));
+    }
+  }
+
+  @Test
+  public void testBrokenMipmapCountHuge()
+    throws Exception
+  {
+    try (var parser = this.parserFor("broken-mipmap-count-huge.ktx")) {
+      final var ex = assertThrows(IOException.class, parser::execute);
+      LOG.debug("exception: ", ex);
+      assertTrue(ex.getMessage().contains("Limit exceeded."));
+      assertTrue(ex.getMessage().contains("mipmap level count limit"));
+    }
+  }
+
+  @Test
+  public void testBrokenMipmapCountHugeMapped()
+    throws Exception
+  {
+    final var file =
+      KTXTestDirectories.resourceOf(
+        KTXParserTest.class,
+        this.directory,
+        "broken-mipmap-count-huge.ktx"
+      );
+
+    try (var parser = this.readers.createMapped(file)) {
+      final var ex = assertThrows(IOException.class, parser::execute);
+      LOG.debug("exception: ", ex);
+      assertTrue(ex.getMessage().contains("mipmap level count limit"));
+    }
+  }
+
+  @Test
+  public void testBrokenLevelCountHugeKTX2()
+    throws Exception
+  {
+    try (var parser = this.parserFor("broken-level-count-huge.ktx2")) {
+      final var ex = assertThrows(IOException.class, parser::execute);
+      LOG.debug("exception: ", ex);
+      assertTrue(ex.getMessage().contains("Limit exceeded."));
+      assertTrue(ex.getMessage().contains("mipmap level count limit"));
+    }
+  }
+
+  @Test
+  public void testBrokenLevelCountHugeMappedKTX2()
+    throws Exception
+  {
+    final var file =
+      KTXTestDirectories.resourceOf(
+        KTXParserTest.class,
+        this.directory,
+        "broken-level-count-huge.ktx2"
+      );
+
+    try (var parser = this.readers.createMapped(file)) {
+      final var ex = assertThrows(IOException.class, parser::execute);
+      LOG.debug("exception: ", ex);
+      assertTrue(ex.getMessage().contains("mipmap level count limit"));
+    }
+  }
+
   @Test
   public void testBrokenKeyDataTooLarge()
     throws Exception
@@ -276,6 +997,471 @@ public final class KTXParserTest
     }
   }
 
+  @Test
+  public void testKeyValuesBinaryKTX1()
+    throws Exception
+  {
+    try (var parser = this.parserFor("keyvalues-binary.ktx")) {
+      try (var file = parser.execute()) {
+        final var keyValues = file.keyValues();
+        assertEquals(3, keyValues.size());
+        assertEquals("KTXorientation", keyValues.key(0));
+        assertEquals("io7m.blob", keyValues.key(1));
+        assertEquals("io7m.empty", keyValues.key(2));
+
+        final var orientation = keyValues.value(0);
+        assertTrue(orientation.isReadOnly());
+        assertEquals(8, orientation.remaining());
+        assertEquals((byte) 0, orientation.get(7));
+
+        final var blob =
+          keyValues.value("io7m.blob").orElseThrow();
+        assertEquals(5, blob.remaining());
+        assertEquals((byte) 0x00, blob.get(0));
+        assertEquals((byte) 0x01, blob.get(1));
+        assertEquals((byte) 0xff, blob.get(2));
+        assertEquals((byte) 0x00, blob.get(3));
+        assertEquals((byte) 0x02, blob.get(4));
+
+        assertEquals(0, keyValues.value(2).remaining());
+        assertFalse(keyValues.value("io7m.missing").isPresent());
+        assertThrows(
+          IndexOutOfBoundsException.class, () -> keyValues.key(3));
+
+        assertEquals("S=r,T=d", file.keyValueData().get("KTXorientation"));
+        assertEquals("", file.keyValueData().get("io7m.blob"));
+        assertEquals("", file.keyValueData().get("io7m.empty"));
+
+        final var image =
+          ((KTX1FileReadableType) file).subImages().get(0);
+        assertEquals(132L, image.absoluteByteOffset());
+        assertEquals(1L, image.imageSizeBytes());
+      }
+    }
+  }
+
+  @Test
+  public void testKeyValuesMappedKTX2()
+    throws Exception
+  {
+    final var file =
+      KTXTestDirectories.resourceOf(
+        KTXParserTest.class,
+        this.directory,
+        "rgba-mipmap-little.ktx2"
+      );
+
+    try (var parser = this.readers.createMapped(file)) {
+      try (var readable = parser.execute()) {
+        final var keyValues = readable.keyValues();
+        assertEquals(2, keyValues.size());
+        assertEquals(
+          "rd",
+          readable.keyValueData().get("KTXorientation"));
+        assertTrue(keyValues.value("KTXwriter").isPresent());
+      }
+    }
+  }
+
+  @Test
+  public void testProbeRGBAReferenceBigKTX1()
+    throws Exception
+  {
+    final KTX1Header header =
+      (KTX1Header) this.probeFor("rgba-reference-big.ktx");
+
+    assertTrue(header.isBigEndian());
+    assertEquals(0x1401, header.glType());
+    assertEquals(1, header.glTypeSize());
+    assertEquals(0x1908, header.glFormat());
+    assertEquals(0x8c43, header.glInternalFormat());
+    assertEquals(0x1908, header.glBaseInternalFormat());
+    assertEquals(128, header.pixelWidth());
+    assertEquals(128, header.pixelHeight());
+    assertEquals(0, header.pixelDepth());
+    assertEquals(0, header.numberOfArrayElements());
+    assertEquals(1, header.numberOfFaces());
+    assertEquals(1, header.numberOfMipmapLevels());
+    assertEquals(0, header.bytesOfKeyValueData());
+  }
+
+  @Test
+  public void testProbeOrangeKTX1()
+    throws Exception
+  {
+    this.checkProbeMatchesParse("orange.ktx");
+  }
+
+  @Test
+  public void testProbeRGBAMipmapsKTX2()
+    throws Exception
+  {
+    final KTX2Header header =
+      (KTX2Header) this.checkProbeMatchesParse("rgba-mipmap-little.ktx2");
+
+    assertEquals(4, header.pixelWidth());
+    assertEquals(4, header.pixelHeight());
+    assertEquals(3, header.levelCount());
+  }
+
+  @Test
+  public void testProbeBroken1()
+    throws Exception
+  {
+    final var ex =
+      assertThrows(IOException.class, () -> this.probeFor("broken1.ktx"));
+    LOG.debug("exception: ", ex);
+    assertTrue(ex.getMessage().contains("Unrecognized file identifier."));
+  }
+
+  @Test
+  public void testProbeBrokenUnrecognizedEndianness()
+    throws Exception
+  {
+    final var ex =
+      assertThrows(
+        IOException.class,
+        () -> this.probeFor("broken-rgba-reference-endianness.ktx"));
+    LOG.debug("exception: ", ex);
+    assertTrue(ex.getMessage().contains("Unrecognized endianness value."));
+  }
+
+  @Test
+  public void testProbeBrokenOrangeTruncated1()
+    throws Exception
+  {
+    final var ex =
+      assertThrows(
+        IOException.class,
+        () -> this.probeFor("broken-orange-truncated-1.ktx"));
+    LOG.debug("exception: ", ex);
+    assertTrue(ex.getMessage().contains("Out of bounds."));
+  }
+
+  @Test
+  public void testProbeRestoresPosition()
+    throws Exception
+  {
+    final var file =
+      KTXTestDirectories.resourceOf(
+        KTXParserTest.class,
+        this.directory,
+        "orange.ktx"
+      );
+
+    final var bytes = ByteBuffer.wrap(Files.readAllBytes(file));
+    try (var channel = new KTXByteBufferChannel(bytes)) {
+      channel.position(17L);
+      final var header = (KTX1Header) this.readers.probe(channel);
+      assertEquals(18, header.pixelWidth());
+      assertEquals(17L, channel.position());
+    }
+
+    try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      channel.position(17L);
+      this.readers.probe(channel);
+      assertEquals(17L, channel.position());
+    }
+  }
+
+  private KTXHeaderType probeFor(
+    final String name)
+    throws IOException
+  {
+    final var file =
+      KTXTestDirectories.resourceOf(
+        KTXParserTest.class,
+        this.directory,
+        name
+      );
+
+    try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      return this.readers.probe(channel);
+    }
+  }
+
+  private KTXHeaderType checkProbeMatchesParse(
+    final String name)
+    throws IOException
+  {
+    final var file =
+      KTXTestDirectories.resourceOf(
+        KTXParserTest.class,
+        this.directory,
+        name
+      );
+
+    try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      final var header = this.readers.probe(channel);
+      final var request =
+        KTXParseRequest.builder(channel, file.toUri())
+          .build();
+      try (var parser = this.readers.create(request)) {
+        try (var parsed = parser.execute()) {
+          assertEquals(parsed.header(), header);
+        }
+      }
+      return header;
+    }
+  }
+
+  private static final class CountingChannel
+    implements SeekableByteChannel, ScatteringByteChannel
+  {
+    private final FileChannel delegate;
+    private int scatteringReads;
+
+    CountingChannel(
+      final FileChannel inDelegate)
+    {
+      this.delegate = inDelegate;
+    }
+
+    @Override
+    public long read(
+      final ByteBuffer[] dsts,
+      final int offset,
+      final int length)
+      throws IOException
+    {
+      ++this.scatteringReads;
+      return this.delegate.read(dsts, offset, length);
+    }
+
+    @Override
+    public long read(
+      final ByteBuffer[] dsts)
+      throws IOException
+    {
+      return this.read(dsts, 0, dsts.length);
+    }
+
+    @Override
+    public int read(
+      final ByteBuffer dst)
+      throws IOException
+    {
+      return this.delegate.read(dst);
+    }
+
+    @Override
+    public int write(
+      final ByteBuffer src)
+      throws IOException
+    {
+      return this.delegate.write(src);
+    }
+
+    @Override
+    public long position()
+      throws IOException
+    {
+      return this.delegate.position();
+    }
+
+    @Override
+    public SeekableByteChannel position(
+      final long newPosition)
+      throws IOException
+    {
+      this.delegate.position(newPosition);
+      return this;
+    }
+
+    @Override
+    public long size()
+      throws IOException
+    {
+      return this.delegate.size();
+    }
+
+    @Override
+    public SeekableByteChannel truncate(
+      final long size)
+      throws IOException
+    {
+      this.delegate.truncate(size);
+      return this;
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+      return this.delegate.isOpen();
+    }
+
+    @Override
+    public void close()
+      throws IOException
+    {
+      this.delegate.close();
+    }
+  }
+
+  private static final class CountingFileChannel extends FileChannel
+  {
+    private final FileChannel delegate;
+    private int positionalReads;
+
+    CountingFileChannel(
+      final FileChannel inDelegate)
+    {
+      this.delegate = inDelegate;
+    }
+
+    @Override
+    public int read(
+      final ByteBuffer dst,
+      final long position)
+      throws IOException
+    {
+      ++this.positionalReads;
+      return this.delegate.read(dst, position);
+    }
+
+    @Override
+    public int read(
+      final ByteBuffer dst)
+      throws IOException
+    {
+      return this.delegate.read(dst);
+    }
+
+    @Override
+    public long read(
+      final ByteBuffer[] dsts,
+      final int offset,
+      final int length)
+      throws IOException
+    {
+      return this.delegate.read(dsts, offset, length);
+    }
+
+    @Override
+    public int write(
+      final ByteBuffer src)
+      throws IOException
+    {
+      return this.delegate.write(src);
+    }
+
+    @Override
+    public long write(
+      final ByteBuffer[] srcs,
+      final int offset,
+      final int length)
+      throws IOException
+    {
+      return this.delegate.write(srcs, offset, length);
+    }
+
+    @Override
+    public int write(
+      final ByteBuffer src,
+      final long position)
+      throws IOException
+    {
+      return this.delegate.write(src, position);
+    }
+
+    @Override
+    public long position()
+      throws IOException
+    {
+      return this.delegate.position();
+    }
+
+    @Override
+    public FileChannel position(
+      final long newPosition)
+      throws IOException
+    {
+      this.delegate.position(newPosition);
+      return this;
+    }
+
+    @Override
+    public long size()
+      throws IOException
+    {
+      return this.delegate.size();
+    }
+
+    @Override
+    public FileChannel truncate(
+      final long size)
+      throws IOException
+    {
+      this.delegate.truncate(size);
+      return this;
+    }
+
+    @Override
+    public void force(
+      final boolean metaData)
+      throws IOException
+    {
+      this.delegate.force(metaData);
+    }
+
+    @Override
+    public long transferTo(
+      final long position,
+      final long count,
+      final WritableByteChannel target)
+      throws IOException
+    {
+      return this.delegate.transferTo(position, count, target);
+    }
+
+    @Override
+    public long transferFrom(
+      final ReadableByteChannel src,
+      final long position,
+      final long count)
+      throws IOException
+    {
+      return this.delegate.transferFrom(src, position, count);
+    }
+
+    @Override
+    public MappedByteBuffer map(
+      final MapMode mode,
+      final long position,
+      final long size)
+      throws IOException
+    {
+      return this.delegate.map(mode, position, size);
+    }
+
+    @Override
+    public FileLock lock(
+      final long position,
+      final long size,
+      final boolean shared)
+      throws IOException
+    {
+      return this.delegate.lock(position, size, shared);
+    }
+
+    @Override
+    public FileLock tryLock(
+      final long position,
+      final long size,
+      final boolean shared)
+      throws IOException
+    {
+      return this.delegate.tryLock(position, size, shared);
+    }
+
+    @Override
+    protected void implCloseChannel()
+      throws IOException
+    {
+      this.delegate.close();
+    }
+  }
+
   private KTXParserType parserFor(
     final String name)
     throws IOException
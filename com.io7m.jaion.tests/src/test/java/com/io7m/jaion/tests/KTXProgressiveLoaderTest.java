@@ -0,0 +1,247 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jaion.tests;
+
+import com.io7m.jaion.api.KTX1FileReadableType;
+import com.io7m.jaion.api.KTX2FileReadableType;
+import com.io7m.jaion.api.KTXLevelData;
+import com.io7m.jaion.vanilla.KTXParserFactory;
+import com.io7m.jaion.vanilla.KTXProgressiveLoader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class KTXProgressiveLoaderTest
+{
+  private KTXParserFactory readers;
+  private ExecutorService executor;
+  private Path directory;
+
+  @BeforeEach
+  public void setup()
+    throws IOException
+  {
+    this.readers = new KTXParserFactory();
+    this.executor = Executors.newFixedThreadPool(4);
+    this.directory = KTXTestDirectories.createTempDirectory();
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws IOException
+  {
+    this.executor.shutdown();
+    KTXTestDirectories.deleteDirectory(this.directory);
+  }
+
+  private Path resource(
+    final String name)
+    throws IOException
+  {
+    return KTXTestDirectories.resourceOf(
+      KTXProgressiveLoaderTest.class,
+      this.directory,
+      name
+    );
+  }
+
+  @Test
+  public void testSmallestLevelsKTX1()
+    throws Exception
+  {
+    try (var parser = this.readers.createMapped(
+      this.resource("rgb-mipmap-reference.ktx"))) {
+      try (var file = (KTX1FileReadableType) parser.execute()) {
+        final var loader = new KTXProgressiveLoader(file, this.executor);
+        assertEquals(7, loader.levelCount());
+
+        final var received = new ArrayList<KTXLevelData>();
+        loader.smallestLevels(3, received::add)
+          .get(5L, TimeUnit.SECONDS);
+
+        assertEquals(
+          List.of(6, 5, 4),
+          received.stream().map(KTXLevelData::mipMapLevel).toList()
+        );
+
+        for (final var level : received) {
+          final var subImage =
+            file.subImage(level.mipMapLevel(), 0, 0, 0).orElseThrow();
+          assertEquals(1, level.data().size());
+          assertEquals(file.subImageData(subImage), level.data().get(0));
+        }
+
+        assertSame(loader.level(6), loader.level(6));
+
+        final var level0 = loader.level(0).get(5L, TimeUnit.SECONDS);
+        assertEquals(
+          file.subImageData(file.subImage(0, 0, 0, 0).orElseThrow()),
+          level0.data().get(0)
+        );
+      }
+    }
+  }
+
+  @Test
+  public void testCubeLevelsKTX1()
+    throws Exception
+  {
+    try (var parser = this.readers.createMapped(
+      this.resource("cube-rgba-mipmap.ktx"))) {
+      try (var file = (KTX1FileReadableType) parser.execute()) {
+        final var loader = new KTXProgressiveLoader(file, this.executor);
+        assertEquals(2, loader.levelCount());
+
+        final var received = new ArrayList<KTXLevelData>();
+        loader.smallestLevels(10, received::add)
+          .get(5L, TimeUnit.SECONDS);
+
+        assertEquals(2, received.size());
+        for (final var level : received) {
+          assertEquals(6, level.data().size());
+          for (int face = 0; face < 6; ++face) {
+            final var subImage =
+              file.subImage(level.mipMapLevel(), 0, face, 0).orElseThrow();
+            assertEquals(
+              file.subImageData(subImage),
+              level.data().get(face)
+            );
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testSmallestLevelsKTX2()
+    throws Exception
+  {
+    try (var parser = this.readers.createMapped(
+      this.resource("rgba-mipmap-little.ktx2"))) {
+      try (var file = (KTX2FileReadableType) parser.execute()) {
+        final var loader = new KTXProgressiveLoader(file, this.executor);
+        assertEquals(3, loader.levelCount());
+
+        final var received = new ArrayList<KTXLevelData>();
+        loader.smallestLevels(2, received::add)
+          .get(5L, TimeUnit.SECONDS);
+
+        assertEquals(
+          List.of(2, 1),
+          received.stream().map(KTXLevelData::mipMapLevel).toList()
+        );
+        for (final var level : received) {
+          assertEquals(
+            file.levelData(file.levels().get(level.mipMapLevel())),
+            level.data().get(0)
+          );
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testSupercompressedLevelsKTX2()
+    throws Exception
+  {
+    for (final var name : List.of(
+      "rgba-mipmap-zstd.ktx2",
+      "rgba-mipmap-zlib.ktx2")) {
+      try (var parser = this.readers.createMapped(this.resource(name))) {
+        try (var file = (KTX2FileReadableType) parser.execute()) {
+          final var loader = new KTXProgressiveLoader(file, this.executor);
+          assertEquals(5, loader.levelCount());
+
+          final var received = new ArrayList<KTXLevelData>();
+          loader.smallestLevels(5, received::add)
+            .get(5L, TimeUnit.SECONDS);
+          assertEquals(5, received.size());
+
+          for (final var level : received) {
+            final var mipMapLevel = level.mipMapLevel();
+            final var data = level.data().get(0);
+            assertEquals(
+              file.levels().get(mipMapLevel).uncompressedByteLength(),
+              data.remaining());
+
+            for (int index = 0; index < data.remaining(); ++index) {
+              assertEquals(
+                ((mipMapLevel * 0x40) + (index / 4)) & 0xff,
+                data.get(index) & 0xff,
+                "%s level %d byte %d".formatted(name, mipMapLevel, index)
+              );
+            }
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testExecutorRejects()
+    throws Exception
+  {
+    try (var parser = this.readers.createMapped(
+      this.resource("rgba-mipmap-little.ktx2"))) {
+      try (var file = parser.execute()) {
+        this.executor.shutdown();
+
+        final var loader = new KTXProgressiveLoader(file, this.executor);
+        final var future = loader.level(0);
+        assertTrue(future.isDone());
+
+        final var ex =
+          assertThrows(ExecutionException.class, future::get);
+        assertInstanceOf(RejectedExecutionException.class, ex.getCause());
+        assertSame(future, loader.level(0));
+      }
+    }
+  }
+
+  @Test
+  public void testLevelOutOfRange()
+    throws Exception
+  {
+    try (var parser = this.readers.createMapped(
+      this.resource("orange.ktx"))) {
+      try (var file = parser.execute()) {
+        final var loader = new KTXProgressiveLoader(file, this.executor);
+        assertThrows(IllegalArgumentException.class, () -> loader.level(1));
+        assertThrows(IllegalArgumentException.class, () -> loader.level(-1));
+        assertThrows(
+          IllegalArgumentException.class,
+          () -> loader.smallestLevels(-1, x -> { }));
+      }
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.tests;
+
+import com.io7m.jaion.vanilla.internal.KTXReadPlan;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class KTXReadPlanTest
+{
+  @Test
+  public void testContiguous()
+  {
+    final var a = ByteBuffer.allocate(16);
+    final var b = ByteBuffer.allocate(8);
+    final var c = ByteBuffer.allocate(4);
+
+    final var runs =
+      KTXReadPlan.plan(
+        new long[]{124L, 100L, 116L},
+        new ByteBuffer[]{c, a, b},
+        0L
+      );
+
+    assertEquals(1, runs.size());
+    assertEquals(100L, runs.get(0).offset());
+    assertEquals(3, runs.get(0).buffers().length);
+    assertSame(a, runs.get(0).buffers()[0]);
+    assertSame(b, runs.get(0).buffers()[1]);
+    assertSame(c, runs.get(0).buffers()[2]);
+  }
+
+  @Test
+  public void testNearContiguous()
+  {
+    final var a = ByteBuffer.allocate(16);
+    final var b = ByteBuffer.allocate(8);
+
+    final var runs =
+      KTXReadPlan.plan(
+        new long[]{100L, 120L},
+        new ByteBuffer[]{a, b},
+        4L
+      );
+
+    assertEquals(1, runs.size());
+    assertEquals(3, runs.get(0).buffers().length);
+    assertSame(a, runs.get(0).buffers()[0]);
+    assertEquals(4, runs.get(0).buffers()[1].remaining());
+    assertSame(b, runs.get(0).buffers()[2]);
+  }
+
+  @Test
+  public void testDistant()
+  {
+    final var a = ByteBuffer.allocate(16);
+    final var b = ByteBuffer.allocate(8);
+
+    final var runs =
+      KTXReadPlan.plan(
+        new long[]{100L, 121L},
+        new ByteBuffer[]{a, b},
+        4L
+      );
+
+    assertEquals(2, runs.size());
+    assertEquals(100L, runs.get(0).offset());
+    assertEquals(121L, runs.get(1).offset());
+  }
+
+  @Test
+  public void testOverlapping()
+  {
+    final var a = ByteBuffer.allocate(16);
+    final var b = ByteBuffer.allocate(16);
+
+    final var runs =
+      KTXReadPlan.plan(
+        new long[]{100L, 100L},
+        new ByteBuffer[]{a, b},
+        KTXReadPlan.GAP_MAXIMUM
+      );
+
+    assertEquals(2, runs.size());
+  }
+
+  @Test
+  public void testMismatched()
+  {
+    assertThrows(IllegalArgumentException.class, () -> {
+      KTXReadPlan.plan(new long[1], new ByteBuffer[0], 0L);
+    });
+  }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.tests;
+
+import com.io7m.jaion.api.KTX1FileReadableType;
+import com.io7m.jaion.api.KTXParseRequest;
+import com.io7m.jaion.vanilla.KTXParserFactory;
+import com.io7m.jaion.vanilla.KTXReadaheadByteSources;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class KTXReadaheadByteSourcesTest
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(KTXReadaheadByteSourcesTest.class);
+
+  private static final Duration LATENCY =
+    Duration.ofMillis(1L);
+
+  private KTXParserFactory readers;
+  private Path directory;
+
+  @BeforeEach
+  public void setup()
+    throws IOException
+  {
+    this.readers = new KTXParserFactory();
+    this.directory = KTXTestDirectories.createTempDirectory();
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws IOException
+  {
+    KTXTestDirectories.deleteDirectory(this.directory);
+  }
+
+  private Path resource(
+    final String name)
+    throws IOException
+  {
+    return KTXTestDirectories.resourceOf(
+      KTXReadaheadByteSourcesTest.class,
+      this.directory,
+      name
+    );
+  }
+
+  @Test
+  public void testParseFewerRoundTrips()
+    throws Exception
+  {
+    final var file = this.resource("rgb-mipmap-reference.ktx");
+
+    final var directChannel =
+      new KTXLatencyChannel(FileChannel.open(file), LATENCY);
+    final var directRequest =
+      KTXParseRequest.builder(directChannel, file.toUri())
+        .build();
+
+    final var readaheadChannel =
+      new KTXLatencyChannel(FileChannel.open(file), LATENCY);
+    final var readaheadBuilder =
+      KTXParseRequest.builder(readaheadChannel, file.toUri());
+    readaheadBuilder.setByteSources(new KTXReadaheadByteSources());
+    final var readaheadRequest =
+      readaheadBuilder.build();
+
+    try (var direct = this.readers.create(directRequest);
+         var readahead = this.readers.create(readaheadRequest)) {
+      final var directFile =
+        (KTX1FileReadableType) direct.execute();
+      final var readaheadFile =
+        (KTX1FileReadableType) readahead.execute();
+
+      final var directReads = directChannel.reads();
+      final var readaheadReads = readaheadChannel.reads();
+      LOG.debug("direct reads: {}", directReads);
+      LOG.debug("readahead reads: {}", readaheadReads);
+
+      assertEquals(1, readaheadReads);
+      assertTrue(readaheadReads < directReads);
+
+      assertEquals(directFile.header(), readaheadFile.header());
+      assertEquals(directFile.subImages(), readaheadFile.subImages());
+      for (final var subImage : directFile.subImages()) {
+        assertEquals(
+          directFile.subImageData(subImage),
+          readaheadFile.subImageData(subImage)
+        );
+      }
+
+      /*
+       * The whole file fits in the first readahead block, so the sub-image
+       * data is served without any further round trips.
+       */
+
+      assertEquals(1, readaheadChannel.reads());
+    }
+  }
+
+  @Test
+  public void testSequentialReadaheadGrows()
+    throws Exception
+  {
+    final var file = this.resource("rgb-mipmap-reference.ktx");
+    final var channel =
+      new KTXLatencyChannel(FileChannel.open(file), LATENCY);
+
+    try (var source =
+           new KTXReadaheadByteSources(16, 4, 8)
+             .createByteSource(file.toUri(), channel)) {
+      final var buffer = ByteBuffer.allocate(8);
+      for (int index = 0; index < 20; ++index) {
+        buffer.clear();
+        assertEquals(8, source.read(buffer));
+      }
+
+      /*
+       * 160 bytes is ten blocks: fetched as windows of 2, 4, and 4 blocks.
+       */
+
+      assertEquals(3, channel.reads());
+    }
+  }
+
+  @Test
+  public void testRandomReadsMatchFile()
+    throws Exception
+  {
+    final var file = this.resource("rgb-mipmap-reference.ktx");
+    final var expected = Files.readAllBytes(file);
+
+    try (var source =
+           new KTXReadaheadByteSources(16, 4, 8)
+             .createByteSource(file.toUri(), FileChannel.open(file))) {
+      assertEquals(expected.length, source.size());
+
+      final long[] offsets = {
+        0L, 1000L, 3L, 17L, 15L, 64L, (long) expected.length - 5L, 500L,
+      };
+      final int[] sizes = {
+        64, 13, 40, 1, 2, 100, 5, 33,
+      };
+
+      for (int index = 0; index < offsets.length; ++index) {
+        final var buffer = ByteBuffer.allocate(sizes[index]);
+        source.position(offsets[index]);
+        while (buffer.hasRemaining()) {
+          assertTrue(source.read(buffer) > 0);
+        }
+
+        final var want = new byte[sizes[index]];
+        System.arraycopy(
+          expected, (int) offsets[index], want, 0, sizes[index]);
+        assertArrayEquals(want, buffer.array());
+        assertEquals(offsets[index] + sizes[index], source.position());
+      }
+
+      source.position(expected.length);
+      assertEquals(-1, source.read(ByteBuffer.allocate(1)));
+    }
+  }
+
+  @Test
+  public void testLargeReadsBypassCache()
+    throws Exception
+  {
+    final var file = this.resource("rgb-mipmap-reference.ktx");
+    final var channel =
+      new KTXLatencyChannel(FileChannel.open(file), LATENCY);
+
+    try (var source =
+           new KTXReadaheadByteSources(16, 4, 8)
+             .createByteSource(file.toUri(), channel)) {
+      final var buffer = ByteBuffer.allocate(1024);
+      assertEquals(1024, source.read(buffer));
+      assertEquals(1, channel.reads());
+
+      final var expected = new byte[1024];
+      System.arraycopy(Files.readAllBytes(file), 0, expected, 0, 1024);
+      assertArrayEquals(expected, buffer.array());
+    }
+  }
+
+  @Test
+  public void testReadOnly()
+    throws Exception
+  {
+    final var file = this.resource("orange.ktx");
+
+    try (var source =
+           new KTXReadaheadByteSources()
+             .createByteSource(file.toUri(), FileChannel.open(file))) {
+      assertThrows(NonWritableChannelException.class, () -> {
+        source.write(ByteBuffer.allocate(1));
+      });
+      assertThrows(NonWritableChannelException.class, () -> {
+        source.truncate(0L);
+      });
+      assertThrows(IllegalArgumentException.class, () -> {
+        source.position(-1L);
+      });
+    }
+  }
+
+  @Test
+  public void testInvalidConfiguration()
+  {
+    assertThrows(IllegalArgumentException.class, () -> {
+      new KTXReadaheadByteSources(0, 1, 1);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new KTXReadaheadByteSources(16, 0, 1);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new KTXReadaheadByteSources(16, 4, 3);
+    });
+  }
+}
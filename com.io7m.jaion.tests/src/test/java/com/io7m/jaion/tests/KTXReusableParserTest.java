@@ -0,0 +1,213 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.tests;
+
+import com.io7m.jaion.api.KTX1FileReadableType;
+import com.io7m.jaion.api.KTX2FileReadableType;
+import com.io7m.jaion.api.KTXFileReadableType;
+import com.io7m.jaion.api.KTXParseRequest;
+import com.io7m.jaion.vanilla.KTXParserFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class KTXReusableParserTest
+{
+  private static final List<String> VALID = List.of(
+    "cube-array-rgba.ktx",
+    "cube-r8-padded.ktx",
+    "cube-rgba-mipmap.ktx",
+    "keyvalues-binary.ktx",
+    "orange.ktx",
+    "r16-mipmap-big.ktx",
+    "r32ui-big.ktx",
+    "rgb-mipmap-reference.ktx",
+    "rgba-mipmap-little.ktx2",
+    "rgba-mipmap-zlib.ktx2",
+    "rgba-mipmap-zstd.ktx2",
+    "rgba-reference-big.ktx",
+    "rgba-reference-little.ktx",
+    "texturearray_astc_8x8_unorm.ktx",
+    "volume-r8-mipmap.ktx"
+  );
+
+  private static final List<String> BROKEN = List.of(
+    "broken-keydata-too-large.ktx",
+    "broken-keydata-value-too-large.ktx",
+    "broken-level-count-huge.ktx2",
+    "broken-orange-truncated-0.ktx",
+    "broken-orange-truncated-1.ktx",
+    "broken-orange-truncated-2.ktx",
+    "broken-rgba-mipmap-truncated.ktx2",
+    "broken-rgba-reference-endianness.ktx",
+    "broken1.ktx"
+  );
+
+  private KTXParserFactory readers;
+  private Path directory;
+
+  @BeforeEach
+  public void setup()
+    throws IOException
+  {
+    this.readers = new KTXParserFactory();
+    this.directory = KTXTestDirectories.createTempDirectory();
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws IOException
+  {
+    KTXTestDirectories.deleteDirectory(this.directory);
+  }
+
+  private Path resource(
+    final String name)
+    throws IOException
+  {
+    return KTXTestDirectories.resourceOf(
+      KTXReusableParserTest.class,
+      this.directory,
+      name
+    );
+  }
+
+  private static KTXParseRequest requestFor(
+    final Path file)
+    throws IOException
+  {
+    return KTXParseRequest.builder(FileChannel.open(file), file.toUri())
+      .build();
+  }
+
+  private static void checkSame(
+    final KTXFileReadableType expected,
+    final KTXFileReadableType received)
+    throws IOException
+  {
+    assertEquals(expected.header(), received.header());
+    assertEquals(expected.keyValueData(), received.keyValueData());
+
+    if (expected instanceof KTX1FileReadableType expected1) {
+      final var received1 = (KTX1FileReadableType) received;
+      assertEquals(expected1.subImages(), received1.subImages());
+      for (final var subImage : expected1.subImages()) {
+        assertEquals(
+          expected1.subImageData(subImage),
+          received1.subImageData(subImage)
+        );
+      }
+      return;
+    }
+
+    final var expected2 = (KTX2FileReadableType) expected;
+    final var received2 = (KTX2FileReadableType) received;
+    assertEquals(expected2.index(), received2.index());
+    assertEquals(expected2.levels(), received2.levels());
+    for (final var level : expected2.levels()) {
+      assertEquals(
+        expected2.levelData(level),
+        received2.levelData(level)
+      );
+    }
+  }
+
+  @Test
+  public void testSameAsFreshParsers()
+    throws Exception
+  {
+    try (var reusable = this.readers.createReusable()) {
+      for (final var name : VALID) {
+        final var file = this.resource(name);
+        try (var parser = this.readers.create(requestFor(file))) {
+          try (var expected = parser.execute();
+               var received = reusable.execute(requestFor(file))) {
+            checkSame(expected, received);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testResultsOutliveLaterParses()
+    throws Exception
+  {
+    try (var reusable = this.readers.createReusable()) {
+      final var fileA = this.resource("rgb-mipmap-reference.ktx");
+      final var fileB = this.resource("rgba-mipmap-little.ktx2");
+
+      try (var a = reusable.execute(requestFor(fileA));
+           var b = reusable.execute(requestFor(fileB))) {
+        try (var parser = this.readers.create(requestFor(fileA))) {
+          try (var expected = parser.execute()) {
+            checkSame(expected, a);
+          }
+        }
+        try (var parser = this.readers.create(requestFor(fileB))) {
+          try (var expected = parser.execute()) {
+            checkSame(expected, b);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testBrokenFilesDoNotPoisonParser()
+    throws Exception
+  {
+    try (var reusable = this.readers.createReusable()) {
+      final var valid = this.resource("orange.ktx");
+      for (final var name : BROKEN) {
+        final var broken = this.resource(name);
+        assertThrows(IOException.class, () -> {
+          reusable.execute(requestFor(broken)).close();
+        });
+
+        try (var parser = this.readers.create(requestFor(valid))) {
+          try (var expected = parser.execute();
+               var received = reusable.execute(requestFor(valid))) {
+            checkSame(expected, received);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testClosed()
+    throws Exception
+  {
+    final var reusable = this.readers.createReusable();
+    reusable.close();
+
+    final var file = this.resource("orange.ktx");
+    assertThrows(IllegalStateException.class, () -> {
+      reusable.execute(requestFor(file));
+    });
+  }
+}
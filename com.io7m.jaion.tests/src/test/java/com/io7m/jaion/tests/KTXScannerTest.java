@@ -0,0 +1,341 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.tests;
+
+import com.io7m.jaion.api.KTX1Header;
+import com.io7m.jaion.api.KTX2Header;
+import com.io7m.jaion.api.KTXAsyncParseRequest;
+import com.io7m.jaion.api.KTXFileReadableType;
+import com.io7m.jaion.api.KTXHeaderType;
+import com.io7m.jaion.api.KTXIndexStoreType;
+import com.io7m.jaion.api.KTXParseRequest;
+import com.io7m.jaion.api.KTXParserFactoryType;
+import com.io7m.jaion.api.KTXParserType;
+import com.io7m.jaion.api.KTXReusableParserType;
+import com.io7m.jaion.api.KTXScanFailed;
+import com.io7m.jaion.api.KTXScanResultType;
+import com.io7m.jaion.api.KTXScanSucceeded;
+import com.io7m.jaion.vanilla.KTXParserFactory;
+import com.io7m.jaion.vanilla.KTXScanner;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class KTXScannerTest
+{
+  private KTXScanner scanner;
+  private Path directory;
+
+  @BeforeEach
+  public void setup()
+    throws IOException
+  {
+    this.scanner =
+      new KTXScanner(new KTXParserFactory(), 4, 2);
+    this.directory =
+      KTXTestDirectories.createTempDirectory();
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws IOException
+  {
+    this.scanner.close();
+    KTXTestDirectories.deleteDirectory(this.directory);
+  }
+
+  @Test
+  public void testScanDirectory()
+    throws Exception
+  {
+    final var nested = this.directory.resolve("nested");
+    Files.createDirectories(nested);
+
+    KTXTestDirectories.resourceOf(
+      KTXScannerTest.class, this.directory, "orange.ktx");
+    KTXTestDirectories.resourceOf(
+      KTXScannerTest.class, this.directory, "rgb-mipmap-reference.ktx");
+    KTXTestDirectories.resourceOf(
+      KTXScannerTest.class, this.directory, "broken1.ktx");
+    KTXTestDirectories.resourceOf(
+      KTXScannerTest.class, nested, "rgba-mipmap-little.ktx2");
+    KTXTestDirectories.resourceOf(
+      KTXScannerTest.class, nested, "cube-rgba-mipmap.ktx");
+    Files.writeString(this.directory.resolve("notes.txt"), "Not a texture.");
+
+    final var results = new HashMap<String, KTXScanResultType>();
+    this.scanner.scanDirectory(
+      this.directory,
+      result -> results.put(result.file().getFileName().toString(), result)
+    );
+
+    assertEquals(5, results.size());
+
+    final var orange =
+      assertInstanceOf(KTXScanSucceeded.class, results.get("orange.ktx"));
+    assertInstanceOf(KTX1Header.class, orange.header());
+    assertEquals(1, orange.subImages().size());
+    assertEquals(0, orange.levels().size());
+    assertEquals(
+      "S=r,T=d",
+      orange.keyValues().asStrings().get("KTXorientation"));
+
+    final var mipmaps =
+      assertInstanceOf(
+        KTXScanSucceeded.class, results.get("rgb-mipmap-reference.ktx"));
+    assertEquals(7, mipmaps.subImages().size());
+
+    final var cube =
+      assertInstanceOf(
+        KTXScanSucceeded.class, results.get("cube-rgba-mipmap.ktx"));
+    assertEquals(12, cube.subImages().size());
+
+    final var ktx2 =
+      assertInstanceOf(
+        KTXScanSucceeded.class, results.get("rgba-mipmap-little.ktx2"));
+    assertInstanceOf(KTX2Header.class, ktx2.header());
+    assertEquals(3, ktx2.levels().size());
+    assertEquals(0, ktx2.subImages().size());
+    assertEquals(2, ktx2.keyValues().size());
+
+    final var broken =
+      assertInstanceOf(KTXScanFailed.class, results.get("broken1.ktx"));
+    assertTrue(
+      broken.exception()
+        .getMessage()
+        .contains("Unrecognized file identifier."));
+  }
+
+  @Test
+  public void testScanDirectoryUncheckedFailures()
+    throws Exception
+  {
+    KTXTestDirectories.resourceOf(
+      KTXScannerTest.class, this.directory, "orange.ktx");
+    KTXTestDirectories.resourceOf(
+      KTXScannerTest.class, this.directory, "cube-rgba-mipmap.ktx");
+    Files.writeString(this.directory.resolve("runtime.ktx"), "Corrupt.");
+
+    this.scanner.close();
+    this.scanner =
+      new KTXScanner(new FailingParsers(new KTXParserFactory()), 4, 2);
+
+    final var results = new HashMap<String, KTXScanResultType>();
+    this.scanner.scanDirectory(
+      this.directory,
+      result -> results.put(result.file().getFileName().toString(), result)
+    );
+
+    assertEquals(3, results.size());
+    assertInstanceOf(KTXScanSucceeded.class, results.get("orange.ktx"));
+    assertInstanceOf(
+      KTXScanSucceeded.class, results.get("cube-rgba-mipmap.ktx"));
+
+    final var runtime =
+      assertInstanceOf(KTXScanFailed.class, results.get("runtime.ktx"));
+    assertInstanceOf(
+      IndexOutOfBoundsException.class, runtime.exception().getCause());
+  }
+
+  @Test
+  public void testScanDirectoryErrorsEndScan()
+    throws Exception
+  {
+    Files.writeString(this.directory.resolve("memory.ktx"), "Corrupt.");
+
+    this.scanner.close();
+    this.scanner =
+      new KTXScanner(new FailingParsers(new KTXParserFactory()), 4, 2);
+
+    assertThrows(OutOfMemoryError.class, () -> {
+      this.scanner.scanDirectory(this.directory, result -> {
+      });
+    });
+  }
+
+  @Test
+  public void testScanDirectoryLimits()
+    throws Exception
+  {
+    KTXTestDirectories.resourceOf(
+      KTXScannerTest.class, this.directory, "orange.ktx");
+    KTXTestDirectories.resourceOf(
+      KTXScannerTest.class, this.directory, "rgb-mipmap-reference.ktx");
+
+    final var orangeSize =
+      Files.size(this.directory.resolve("orange.ktx"));
+
+    this.scanner.close();
+    this.scanner =
+      new KTXScanner(new KTXParserFactory(), 4, 2, orangeSize, 16L);
+
+    final var results = new HashMap<String, KTXScanResultType>();
+    this.scanner.scanDirectory(
+      this.directory,
+      result -> results.put(result.file().getFileName().toString(), result)
+    );
+
+    assertEquals(2, results.size());
+
+    final var tooLarge =
+      assertInstanceOf(
+        KTXScanFailed.class, results.get("rgb-mipmap-reference.ktx"));
+    assertTrue(
+      tooLarge.exception()
+        .getMessage()
+        .contains("file size limit"));
+
+    final var keyValues =
+      assertInstanceOf(KTXScanFailed.class, results.get("orange.ktx"));
+    assertTrue(
+      keyValues.exception()
+        .getMessage()
+        .contains("key/value region size limit"));
+  }
+
+  @Test
+  public void testScanFiles()
+    throws Exception
+  {
+    final var files = new ArrayList<Path>();
+    for (int index = 0; index < 32; ++index) {
+      final var output = this.directory.resolve(Integer.toString(index));
+      Files.createDirectories(output);
+      files.add(
+        KTXTestDirectories.resourceOf(
+          KTXScannerTest.class, output, "rgba-reference-little.ktx")
+      );
+    }
+    files.add(this.directory.resolve("nonexistent.ktx"));
+
+    final var results = new ArrayList<KTXScanResultType>();
+    this.scanner.scanFiles(files, results::add);
+
+    assertEquals(33, results.size());
+    assertEquals(
+      32L,
+      results.stream()
+        .filter(r -> r instanceof KTXScanSucceeded)
+        .count()
+    );
+    assertEquals(
+      List.of(this.directory.resolve("nonexistent.ktx")),
+      results.stream()
+        .filter(r -> r instanceof KTXScanFailed)
+        .map(KTXScanResultType::file)
+        .toList()
+    );
+  }
+
+  @Test
+  public void testScanClosed()
+    throws Exception
+  {
+    this.scanner.close();
+    assertThrows(
+      IllegalStateException.class,
+      () -> this.scanner.scanFiles(List.of(), r -> {
+      }));
+  }
+
+  private static final class FailingParsers implements KTXParserFactoryType
+  {
+    private final KTXParserFactoryType delegate;
+
+    FailingParsers(
+      final KTXParserFactoryType inDelegate)
+    {
+      this.delegate = inDelegate;
+    }
+
+    @Override
+    public KTXParserType create(
+      final KTXParseRequest request)
+      throws IOException
+    {
+      final var name = Path.of(request.source()).getFileName().toString();
+      if (name.equals("runtime.ktx")) {
+        throw new IndexOutOfBoundsException("Corrupt index.");
+      }
+      if (name.equals("memory.ktx")) {
+        throw new OutOfMemoryError("Corrupt count.");
+      }
+      return this.delegate.create(request);
+    }
+
+    @Override
+    public KTXParserType createMapped(
+      final KTXParseRequest request)
+      throws IOException
+    {
+      return this.delegate.createMapped(request);
+    }
+
+    @Override
+    public KTXParserType createMapped(
+      final Path file)
+      throws IOException
+    {
+      return this.delegate.createMapped(file);
+    }
+
+    @Override
+    public KTXParserType createIndexed(
+      final Path file,
+      final KTXIndexStoreType index)
+      throws IOException
+    {
+      return this.delegate.createIndexed(file, index);
+    }
+
+    @Override
+    public KTXReusableParserType createReusable()
+    {
+      return this.delegate.createReusable();
+    }
+
+    @Override
+    public CompletableFuture<KTXFileReadableType> parseAsync(
+      final KTXAsyncParseRequest request)
+    {
+      return this.delegate.parseAsync(request);
+    }
+
+    @Override
+    public KTXHeaderType probe(
+      final SeekableByteChannel channel)
+      throws IOException
+    {
+      return this.delegate.probe(channel);
+    }
+  }
+}
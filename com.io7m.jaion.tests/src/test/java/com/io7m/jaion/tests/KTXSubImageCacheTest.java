@@ -0,0 +1,240 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jaion.tests;
+
+import com.io7m.jaion.api.KTX1FileReadableType;
+import com.io7m.jaion.api.KTX2FileReadableType;
+import com.io7m.jaion.api.KTXParseRequest;
+import com.io7m.jaion.vanilla.KTXParserFactory;
+import com.io7m.jaion.vanilla.KTXSubImageCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class KTXSubImageCacheTest
+{
+  private KTXParserFactory readers;
+  private Path directory;
+
+  @BeforeEach
+  public void setup()
+    throws IOException
+  {
+    this.readers = new KTXParserFactory();
+    this.directory = KTXTestDirectories.createTempDirectory();
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws IOException
+  {
+    KTXTestDirectories.deleteDirectory(this.directory);
+  }
+
+  private Path resource(
+    final String name)
+    throws IOException
+  {
+    return KTXTestDirectories.resourceOf(
+      KTXSubImageCacheTest.class,
+      this.directory,
+      name
+    );
+  }
+
+  @Test
+  public void testHitsDoNotReadTheChannel()
+    throws Exception
+  {
+    final var cache = new KTXSubImageCache(1_000_000L);
+    final var file = this.resource("rgba-reference-big.ktx");
+
+    final var channel = FileChannel.open(file);
+    final var request =
+      KTXParseRequest.builder(channel, file.toUri())
+        .build();
+
+    try (var parser = this.readers.create(request)) {
+      try (var readable = cache.cached(
+        file.toUri(), (KTX1FileReadableType) parser.execute())) {
+        final var subImage = readable.subImages().get(0);
+
+        final var first = readable.subImageData(subImage);
+        assertEquals(1, cache.entryCount());
+        assertEquals(subImage.imageSizeBytes(), cache.byteSize());
+        assertTrue(first.isDirect());
+        assertTrue(first.isReadOnly());
+        assertEquals(ByteOrder.BIG_ENDIAN, first.order());
+
+        channel.close();
+
+        final var second = readable.subImageData(subImage);
+        assertEquals(first, second);
+        assertEquals(ByteOrder.BIG_ENDIAN, second.order());
+      }
+    }
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEvicted()
+    throws Exception
+  {
+    final var cache = new KTXSubImageCache(16_000L);
+
+    final var file = this.resource("rgb-mipmap-reference.ktx");
+    try (var parser = this.readers.createMapped(file)) {
+      try (var readable = cache.cached(
+        file.toUri(), (KTX1FileReadableType) parser.execute())) {
+        final var level0 = readable.subImage(0, 0, 0, 0).orElseThrow();
+        final var level1 = readable.subImage(1, 0, 0, 0).orElseThrow();
+        final var level2 = readable.subImage(2, 0, 0, 0).orElseThrow();
+
+        readable.subImageData(level0);
+        readable.subImageData(level1);
+        assertEquals(12288L + 3072L, cache.byteSize());
+
+        readable.subImageData(level0);
+        readable.subImageData(level2);
+        assertEquals(2, cache.entryCount());
+        assertEquals(12288L + 768L, cache.byteSize());
+        assertTrue(cache.byteSize() <= cache.byteBudget());
+      }
+    }
+  }
+
+  @Test
+  public void testOversizedNotCached()
+    throws Exception
+  {
+    final var cache = new KTXSubImageCache(100L);
+
+    final var file = this.resource("rgb-mipmap-reference.ktx");
+    try (var parser = this.readers.createMapped(file)) {
+      try (var readable = cache.cached(
+        file.toUri(), (KTX1FileReadableType) parser.execute())) {
+        final var level0 = readable.subImage(0, 0, 0, 0).orElseThrow();
+        final var level6 = readable.subImage(6, 0, 0, 0).orElseThrow();
+
+        assertEquals(12288, readable.subImageData(level0).remaining());
+        assertEquals(0, cache.entryCount());
+
+        readable.subImageData(level6);
+        assertEquals(1, cache.entryCount());
+        assertEquals(4L, cache.byteSize());
+      }
+    }
+  }
+
+  @Test
+  public void testInvalidateAndClear()
+    throws Exception
+  {
+    final var cache = new KTXSubImageCache(1_000_000L);
+    final var file1 = this.resource("rgb-mipmap-reference.ktx");
+    final var file2 = this.resource("rgba-mipmap-little.ktx2");
+
+    try (var parser1 = this.readers.createMapped(file1);
+         var parser2 = this.readers.createMapped(file2)) {
+      try (var ktx1 = cache.cached(
+        file1.toUri(), (KTX1FileReadableType) parser1.execute());
+           var ktx2 = cache.cached(
+             file2.toUri(), (KTX2FileReadableType) parser2.execute())) {
+
+        for (final var subImage : ktx1.subImages()) {
+          ktx1.subImageData(subImage);
+        }
+        for (final var level : ktx2.levels()) {
+          assertEquals(
+            level.byteLength(),
+            ktx2.levelData(level).remaining()
+          );
+        }
+        assertEquals(10, cache.entryCount());
+
+        cache.invalidate(file1.toUri());
+        assertEquals(3, cache.entryCount());
+        assertEquals(84L, cache.byteSize());
+
+        cache.clear();
+        assertEquals(0, cache.entryCount());
+        assertEquals(0L, cache.byteSize());
+      }
+    }
+  }
+
+  @Test
+  public void testConcurrentReaders()
+    throws Exception
+  {
+    final var cache = new KTXSubImageCache(8_192L);
+
+    final var file = this.resource("rgb-mipmap-reference.ktx");
+    try (var parser = this.readers.createMapped(file)) {
+      try (var raw = (KTX1FileReadableType) parser.execute()) {
+        final var readable = cache.cached(file.toUri(), raw);
+        final var executor = Executors.newFixedThreadPool(8);
+
+        try {
+          final var tasks = new ArrayList<Callable<Boolean>>();
+          for (int task = 0; task < 32; ++task) {
+            tasks.add(() -> {
+              for (int round = 0; round < 50; ++round) {
+                for (final var subImage : readable.subImages()) {
+                  if (!readable.subImageData(subImage)
+                    .equals(raw.subImageData(subImage))) {
+                    return Boolean.FALSE;
+                  }
+                }
+              }
+              return Boolean.TRUE;
+            });
+          }
+
+          for (final var result : executor.invokeAll(tasks)) {
+            assertTrue(result.get().booleanValue());
+          }
+        } finally {
+          executor.shutdown();
+        }
+
+        assertTrue(cache.byteSize() <= cache.byteBudget());
+        assertFalse(cache.entryCount() == 0);
+      }
+    }
+  }
+
+  @Test
+  public void testNegativeBudget()
+  {
+    assertThrows(IllegalArgumentException.class, () -> {
+      new KTXSubImageCache(-1L);
+    });
+  }
+}
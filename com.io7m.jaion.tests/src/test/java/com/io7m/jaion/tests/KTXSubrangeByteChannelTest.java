@@ -16,20 +16,24 @@
 
 package com.io7m.jaion.tests;
 
+import com.io7m.jaion.vanilla.internal.KTXByteBufferChannel;
 import com.io7m.jaion.vanilla.internal.KTXSubrangeByteChannel;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
 
+import static java.nio.charset.StandardCharsets.US_ASCII;
 import static java.nio.file.StandardOpenOption.READ;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -106,10 +110,15 @@ public final class KTXSubrangeByteChannelTest
       assertEquals(0xff, array[7] & 0xff);
       Arrays.fill(array, (byte) 0xff);
 
+      /*
+       * Reading at the end of the range reports the end of the stream.
+       * Earlier versions returned 0 here.
+       */
+
       byteBuffer.rewind();
       subChannel.position(6L);
       read = subChannel.read(byteBuffer);
-      assertEquals(0, read);
+      assertEquals(-1, read);
       assertEquals(6L, subChannel.position());
 
       assertEquals(0xff, array[0] & 0xff);
@@ -155,4 +164,212 @@ public final class KTXSubrangeByteChannelTest
 
     assertTrue(channel0.isOpen());
   }
+
+  @Test
+  public void testPositionBounds()
+    throws IOException
+  {
+    final var file0 =
+      this.directory.resolve("hello0.txt");
+
+    Files.writeString(file0, "AABBCCDD");
+
+    final var channel0 =
+      FileChannel.open(file0, READ);
+
+    try (var subChannel =
+           new KTXSubrangeByteChannel(channel0, 1L, 6L)) {
+      subChannel.position(6L);
+      assertEquals(6L, subChannel.position());
+
+      assertThrows(IllegalArgumentException.class, () -> {
+        subChannel.position(7L);
+      });
+      assertThrows(IllegalArgumentException.class, () -> {
+        subChannel.position(-1L);
+      });
+      assertEquals(6L, subChannel.position());
+    }
+  }
+
+  @Test
+  public void testBufferLimitRestored()
+    throws IOException
+  {
+    final var file0 =
+      this.directory.resolve("hello0.txt");
+
+    Files.writeString(file0, "AABBCCDD");
+
+    final var channel0 =
+      FileChannel.open(file0, READ);
+
+    try (var subChannel =
+           new KTXSubrangeByteChannel(channel0, 1L, 3L)) {
+      final var byteBuffer = ByteBuffer.allocate(8);
+      assertEquals(3, subChannel.read(byteBuffer));
+      assertEquals(3, byteBuffer.position());
+      assertEquals(8, byteBuffer.limit());
+    }
+
+    assertEquals(0L, channel0.position());
+  }
+
+  @Test
+  public void testScatter()
+    throws IOException
+  {
+    final var file0 =
+      this.directory.resolve("hello0.txt");
+
+    Files.writeString(file0, "AABBCCDD");
+
+    final var channel0 =
+      FileChannel.open(file0, READ);
+
+    try (var subChannel =
+           new KTXSubrangeByteChannel(channel0, 1L, 6L)) {
+      final var buffer0 = ByteBuffer.allocate(2);
+      final var buffer1 = ByteBuffer.allocate(3);
+      final var buffer2 = ByteBuffer.allocate(4);
+
+      final var read =
+        subChannel.read(new ByteBuffer[]{buffer0, buffer1, buffer2});
+      assertEquals(6L, read);
+      assertEquals(6L, subChannel.position());
+
+      assertEquals("AB", new String(buffer0.array(), US_ASCII));
+      assertEquals("BCC", new String(buffer1.array(), US_ASCII));
+      assertEquals(1, buffer2.position());
+      assertEquals('D', buffer2.get(0));
+
+      assertEquals(-1L, subChannel.read(new ByteBuffer[]{buffer2}));
+    }
+  }
+
+  @Test
+  public void testTransferToFile()
+    throws IOException
+  {
+    final var file0 =
+      this.directory.resolve("hello0.txt");
+
+    Files.writeString(file0, "AABBCCDD");
+
+    final var channel0 =
+      FileChannel.open(file0, READ);
+
+    try (var subChannel =
+           new KTXSubrangeByteChannel(channel0, 1L, 6L)) {
+      final var output = new ByteArrayOutputStream();
+      final var target = Channels.newChannel(output);
+
+      subChannel.position(2L);
+      assertEquals(5L, subChannel.transferTo(1L, 100L, target));
+      assertEquals("BBCCD", output.toString(US_ASCII));
+      assertEquals(2L, subChannel.position());
+      assertEquals(0L, channel0.position());
+
+      assertEquals(0L, subChannel.transferTo(6L, 100L, target));
+      assertThrows(IllegalArgumentException.class, () -> {
+        subChannel.transferTo(7L, 1L, target);
+      });
+    }
+  }
+
+  @Test
+  public void testTransferToNonFile()
+    throws IOException
+  {
+    final var data =
+      ByteBuffer.wrap("AABBCCDD".getBytes(US_ASCII));
+
+    try (var subChannel =
+           new KTXSubrangeByteChannel(
+             new KTXByteBufferChannel(data), 1L, 6L)) {
+      final var output = new ByteArrayOutputStream();
+      final var target = Channels.newChannel(output);
+
+      assertEquals(4L, subChannel.transferTo(0L, 4L, target));
+      assertEquals("ABBC", output.toString(US_ASCII));
+      assertEquals(0L, subChannel.position());
+    }
+  }
+
+  @Test
+  public void testTransferToFileTargetFull()
+    throws IOException
+  {
+    final var file0 =
+      this.directory.resolve("hello0.txt");
+
+    Files.writeString(file0, "AABBCCDD");
+
+    final var channel0 =
+      FileChannel.open(file0, READ);
+
+    try (var subChannel =
+           new KTXSubrangeByteChannel(channel0, 1L, 6L)) {
+      final var target = new FullAfterChannel(4);
+
+      assertEquals(4L, subChannel.transferTo(0L, 6L, target));
+      assertEquals("ABBC", target.output.toString(US_ASCII));
+      assertEquals(0L, subChannel.transferTo(4L, 2L, target));
+    }
+  }
+
+  @Test
+  public void testTransferToNonFileTargetFull()
+    throws IOException
+  {
+    final var data =
+      ByteBuffer.wrap("AABBCCDD".getBytes(US_ASCII));
+
+    try (var subChannel =
+           new KTXSubrangeByteChannel(
+             new KTXByteBufferChannel(data), 1L, 6L)) {
+      final var target = new FullAfterChannel(4);
+
+      assertEquals(4L, subChannel.transferTo(0L, 6L, target));
+      assertEquals("ABBC", target.output.toString(US_ASCII));
+      assertEquals(0L, subChannel.transferTo(4L, 2L, target));
+    }
+  }
+
+  private static final class FullAfterChannel implements WritableByteChannel
+  {
+    private final ByteArrayOutputStream output;
+    private int capacity;
+
+    FullAfterChannel(
+      final int inCapacity)
+    {
+      this.output = new ByteArrayOutputStream();
+      this.capacity = inCapacity;
+    }
+
+    @Override
+    public int write(
+      final ByteBuffer src)
+    {
+      final var size = Math.min(src.remaining(), this.capacity);
+      for (int index = 0; index < size; ++index) {
+        this.output.write(src.get());
+      }
+      this.capacity -= size;
+      return size;
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+      return true;
+    }
+
+    @Override
+    public void close()
+    {
+
+    }
+  }
 }
@@ -0,0 +1,326 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.tests;
+
+import com.io7m.jaion.api.KTX1FileReadableType;
+import com.io7m.jaion.api.KTX2FileReadableType;
+import com.io7m.jaion.api.KTXParseRequest;
+import com.io7m.jaion.vanilla.KTXParserFactory;
+import com.io7m.jaion.vanilla.KTXReadaheadByteSources;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public final class KTXTransferTest
+{
+  private KTXParserFactory readers;
+  private Path directory;
+
+  @BeforeEach
+  public void setup()
+    throws IOException
+  {
+    this.readers = new KTXParserFactory();
+    this.directory = KTXTestDirectories.createTempDirectory();
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws IOException
+  {
+    KTXTestDirectories.deleteDirectory(this.directory);
+  }
+
+  private Path resource(
+    final String name)
+    throws IOException
+  {
+    return KTXTestDirectories.resourceOf(
+      KTXTransferTest.class,
+      this.directory,
+      name
+    );
+  }
+
+  private static void checkKTX1(
+    final KTX1FileReadableType readable)
+    throws IOException
+  {
+    final var everything = new ByteArrayOutputStream();
+    var expectedTotal = 0L;
+
+    for (final var subImage : readable.subImages()) {
+      final var expected = readable.subImageData(subImage);
+      final var output = new ByteArrayOutputStream();
+      final var sent =
+        readable.subImageTransferTo(subImage, Channels.newChannel(output));
+
+      assertEquals(subImage.imageSizeBytes(), sent);
+      assertEquals(expected, ByteBuffer.wrap(output.toByteArray()));
+
+      everything.write(output.toByteArray());
+      expectedTotal += sent;
+    }
+
+    final var output = new ByteArrayOutputStream();
+    final var sent =
+      readable.subImagesTransferTo(
+        readable.subImages(), Channels.newChannel(output));
+
+    assertEquals(expectedTotal, sent);
+    assertEquals(
+      ByteBuffer.wrap(everything.toByteArray()),
+      ByteBuffer.wrap(output.toByteArray())
+    );
+  }
+
+  private static void checkKTX1FullTarget(
+    final KTX1FileReadableType readable)
+    throws IOException
+  {
+    final var everything = new ByteArrayOutputStream();
+    for (final var subImage : readable.subImages()) {
+      final var data = readable.subImageData(subImage);
+      final var bytes = new byte[data.remaining()];
+      data.get(bytes);
+      everything.write(bytes);
+    }
+
+    /*
+     * A target that stops accepting data, as a full non-blocking socket
+     * does, ends the transfer early instead of being retried forever.
+     */
+
+    final var target = new FullAfterChannel(10);
+    final var sent =
+      readable.subImagesTransferTo(readable.subImages(), target);
+
+    assertEquals(10L, sent);
+    assertEquals(
+      ByteBuffer.wrap(everything.toByteArray(), 0, 10),
+      ByteBuffer.wrap(target.output.toByteArray())
+    );
+  }
+
+  @Test
+  public void testKTX1Channel()
+    throws Exception
+  {
+    final var file = this.resource("rgb-mipmap-reference.ktx");
+
+    try (var channel = FileChannel.open(file)) {
+      final var request =
+        KTXParseRequest.builder(channel, file.toUri())
+          .build();
+
+      try (var parser = this.readers.create(request)) {
+        checkKTX1((KTX1FileReadableType) parser.execute());
+      }
+    }
+  }
+
+  @Test
+  public void testKTX1Mapped()
+    throws Exception
+  {
+    final var file = this.resource("cube-rgba-mipmap.ktx");
+
+    try (var parser = this.readers.createMapped(file)) {
+      checkKTX1((KTX1FileReadableType) parser.execute());
+    }
+  }
+
+  @Test
+  public void testKTX1NonFileChannel()
+    throws Exception
+  {
+    final var file = this.resource("cube-array-rgba.ktx");
+
+    try (var channel = FileChannel.open(file)) {
+      final var builder =
+        KTXParseRequest.builder(channel, file.toUri());
+      builder.setByteSources(new KTXReadaheadByteSources(16, 4, 8));
+
+      try (var parser = this.readers.create(builder.build())) {
+        checkKTX1((KTX1FileReadableType) parser.execute());
+      }
+    }
+  }
+
+  @Test
+  public void testKTX1FullTargetChannel()
+    throws Exception
+  {
+    final var file = this.resource("cube-array-rgba.ktx");
+
+    try (var channel = FileChannel.open(file)) {
+      final var request =
+        KTXParseRequest.builder(channel, file.toUri())
+          .build();
+
+      try (var parser = this.readers.create(request)) {
+        checkKTX1FullTarget((KTX1FileReadableType) parser.execute());
+      }
+    }
+  }
+
+  @Test
+  public void testKTX1FullTargetMapped()
+    throws Exception
+  {
+    final var file = this.resource("cube-array-rgba.ktx");
+
+    try (var parser = this.readers.createMapped(file)) {
+      checkKTX1FullTarget((KTX1FileReadableType) parser.execute());
+    }
+  }
+
+  @Test
+  public void testKTX1FullTargetNonFileChannel()
+    throws Exception
+  {
+    final var file = this.resource("cube-array-rgba.ktx");
+
+    try (var channel = FileChannel.open(file)) {
+      final var builder =
+        KTXParseRequest.builder(channel, file.toUri());
+      builder.setByteSources(new KTXReadaheadByteSources(16, 4, 8));
+
+      try (var parser = this.readers.create(builder.build())) {
+        checkKTX1FullTarget((KTX1FileReadableType) parser.execute());
+      }
+    }
+  }
+
+  @Test
+  public void testKTX1ToFile()
+    throws Exception
+  {
+    final var file = this.resource("rgb-mipmap-reference.ktx");
+    final var outputFile = this.directory.resolve("level0.bin");
+
+    try (var channel = FileChannel.open(file)) {
+      final var request =
+        KTXParseRequest.builder(channel, file.toUri())
+          .build();
+
+      try (var parser = this.readers.create(request)) {
+        final var readable = (KTX1FileReadableType) parser.execute();
+        final var subImage = readable.subImages().get(0);
+
+        try (var output = FileChannel.open(outputFile, CREATE, WRITE)) {
+          readable.subImageTransferTo(subImage, output);
+        }
+
+        assertEquals(
+          readable.subImageData(subImage),
+          ByteBuffer.wrap(Files.readAllBytes(outputFile))
+        );
+      }
+    }
+  }
+
+  @Test
+  public void testKTX2Levels()
+    throws Exception
+  {
+    final var file = this.resource("rgba-mipmap-zstd.ktx2");
+
+    try (var channel = FileChannel.open(file)) {
+      final var request =
+        KTXParseRequest.builder(channel, file.toUri())
+          .build();
+
+      try (var parser = this.readers.create(request)) {
+        final var readable = (KTX2FileReadableType) parser.execute();
+        final var everything = new ByteArrayOutputStream();
+
+        for (final var level : readable.levels()) {
+          final var output = new ByteArrayOutputStream();
+          final var sent =
+            readable.levelTransferTo(level, Channels.newChannel(output));
+
+          assertEquals(level.byteLength(), sent);
+          assertEquals(
+            readable.levelData(level),
+            ByteBuffer.wrap(output.toByteArray())
+          );
+          everything.write(output.toByteArray());
+        }
+
+        final var output = new ByteArrayOutputStream();
+        readable.levelsTransferTo(
+          readable.levels(), Channels.newChannel(output));
+        assertEquals(
+          ByteBuffer.wrap(everything.toByteArray()),
+          ByteBuffer.wrap(output.toByteArray())
+        );
+      }
+    }
+  }
+
+  private static final class FullAfterChannel implements WritableByteChannel
+  {
+    private final ByteArrayOutputStream output;
+    private int capacity;
+
+    FullAfterChannel(
+      final int inCapacity)
+    {
+      this.output = new ByteArrayOutputStream();
+      this.capacity = inCapacity;
+    }
+
+    @Override
+    public int write(
+      final ByteBuffer src)
+    {
+      final var size = Math.min(src.remaining(), this.capacity);
+      for (int index = 0; index < size; ++index) {
+        this.output.write(src.get());
+      }
+      this.capacity -= size;
+      return size;
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+      return true;
+    }
+
+    @Override
+    public void close()
+    {
+
+    }
+  }
+}
@@ -0,0 +1,696 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jaion.tests;
+
+import com.io7m.jaion.api.KTX1FileReadableType;
+import com.io7m.jaion.api.KTX1SubImage;
+import com.io7m.jaion.api.KTX1SubImageSourceType;
+import com.io7m.jaion.api.KTX1WriteRequest;
+import com.io7m.jaion.api.KTX2FileReadableType;
+import com.io7m.jaion.api.KTX2Header;
+import com.io7m.jaion.api.KTX2LevelSourceType;
+import com.io7m.jaion.api.KTX2WriteRequest;
+import com.io7m.jaion.vanilla.KTX2LevelDecompressor;
+import com.io7m.jaion.vanilla.KTXParserFactory;
+import com.io7m.jaion.vanilla.KTXWriterFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class KTXWriterTest
+{
+  private KTXParserFactory readers;
+  private KTXWriterFactory writers;
+  private Path directory;
+
+  @BeforeEach
+  public void setup()
+    throws IOException
+  {
+    this.readers = new KTXParserFactory();
+    this.writers = new KTXWriterFactory();
+    this.directory = KTXTestDirectories.createTempDirectory();
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws IOException
+  {
+    KTXTestDirectories.deleteDirectory(this.directory);
+  }
+
+  private static KTX1SubImageSourceType sourceOf(
+    final KTX1FileReadableType readable)
+  {
+    return new KTX1SubImageSourceType()
+    {
+      @Override
+      public long subImageSizeBytes(
+        final int mipMapLevel)
+      {
+        return readable.subImage(mipMapLevel, 0, 0, 0)
+          .orElseThrow()
+          .imageSizeBytes();
+      }
+
+      @Override
+      public ByteBuffer subImageData(
+        final KTX1SubImage subImage)
+        throws IOException
+      {
+        return readable.subImageData(
+          readable.subImage(
+            subImage.mipMapLevel(),
+            subImage.arrayElement(),
+            subImage.faceIndex(),
+            subImage.zSlice()
+          ).orElseThrow()
+        );
+      }
+    };
+  }
+
+  private static Map<String, ByteBuffer> keyValuesOf(
+    final KTX1FileReadableType readable)
+  {
+    final var keyValues = readable.keyValues();
+    final var results = new LinkedHashMap<String, ByteBuffer>();
+    for (int index = 0; index < keyValues.size(); ++index) {
+      results.put(keyValues.key(index), keyValues.value(index));
+    }
+    return results;
+  }
+
+  private void checkRoundTrip(
+    final String name)
+    throws Exception
+  {
+    final var input =
+      KTXTestDirectories.resourceOf(
+        KTXWriterTest.class,
+        this.directory,
+        name
+      );
+    final var output =
+      this.directory.resolve("output.ktx");
+
+    try (var parser = this.readers.createMapped(input)) {
+      try (var readable = (KTX1FileReadableType) parser.execute()) {
+        try (var channel =
+               FileChannel.open(output, CREATE, WRITE, TRUNCATE_EXISTING)) {
+          this.writers.createKTX1(
+            new KTX1WriteRequest(
+              channel,
+              output.toUri(),
+              readable.header(),
+              keyValuesOf(readable),
+              sourceOf(readable)
+            )
+          ).execute();
+        }
+      }
+    }
+
+    assertArrayEquals(Files.readAllBytes(input), Files.readAllBytes(output));
+  }
+
+  @Test
+  public void testRoundTripRGBMipmaps()
+    throws Exception
+  {
+    this.checkRoundTrip("rgb-mipmap-reference.ktx");
+  }
+
+  @Test
+  public void testRoundTripCubePadded()
+    throws Exception
+  {
+    this.checkRoundTrip("cube-r8-padded.ktx");
+  }
+
+  @Test
+  public void testRoundTripCubeArray()
+    throws Exception
+  {
+    this.checkRoundTrip("cube-array-rgba.ktx");
+  }
+
+  @Test
+  public void testRoundTripVolume()
+    throws Exception
+  {
+    this.checkRoundTrip("volume-r8-mipmap.ktx");
+  }
+
+  @Test
+  public void testRoundTripKeyValues()
+    throws Exception
+  {
+    this.checkRoundTrip("keyvalues-binary.ktx");
+  }
+
+  @Test
+  public void testRoundTripBigEndian()
+    throws Exception
+  {
+    this.checkRoundTrip("r16-mipmap-big.ktx");
+  }
+
+  @Test
+  public void testNonGatheringChannel()
+    throws Exception
+  {
+    final var input =
+      KTXTestDirectories.resourceOf(
+        KTXWriterTest.class,
+        this.directory,
+        "texturearray_astc_8x8_unorm.ktx"
+      );
+
+    final var bytes = new ByteArrayOutputStream();
+    try (var parser = this.readers.createMapped(input)) {
+      try (var readable = (KTX1FileReadableType) parser.execute()) {
+        try (var channel = Channels.newChannel(bytes)) {
+          this.writers.createKTX1(
+            new KTX1WriteRequest(
+              channel,
+              input.toUri(),
+              readable.header(),
+              keyValuesOf(readable),
+              sourceOf(readable)
+            )
+          ).execute();
+        }
+      }
+    }
+
+    assertArrayEquals(Files.readAllBytes(input), bytes.toByteArray());
+  }
+
+  @Test
+  public void testSubImagesShareGatheringWrites()
+    throws Exception
+  {
+    final var input =
+      KTXTestDirectories.resourceOf(
+        KTXWriterTest.class,
+        this.directory,
+        "cube-array-rgba.ktx"
+      );
+    final var output =
+      this.directory.resolve("output.ktx");
+
+    try (var parser = this.readers.createMapped(input)) {
+      try (var readable = (KTX1FileReadableType) parser.execute()) {
+        try (var channel = new CountingGatheringChannel(
+          FileChannel.open(output, CREATE, WRITE, TRUNCATE_EXISTING))) {
+          this.writers.createKTX1(
+            new KTX1WriteRequest(
+              channel,
+              output.toUri(),
+              readable.header(),
+              keyValuesOf(readable),
+              sourceOf(readable)
+            )
+          ).execute();
+
+          /*
+           * Sub-images are batched with each other rather than being
+           * written one at a time.
+           */
+
+          assertTrue(
+            channel.gatheringWrites < readable.subImages().size(),
+            "%d gathering writes for %d sub-images".formatted(
+              Integer.valueOf(channel.gatheringWrites),
+              Integer.valueOf(readable.subImages().size()))
+          );
+        }
+      }
+    }
+
+    assertArrayEquals(Files.readAllBytes(input), Files.readAllBytes(output));
+  }
+
+  @Test
+  public void testSourceReusesBuffer()
+    throws Exception
+  {
+    final var input =
+      KTXTestDirectories.resourceOf(
+        KTXWriterTest.class,
+        this.directory,
+        "cube-array-rgba.ktx"
+      );
+    final var output =
+      this.directory.resolve("output.ktx");
+
+    try (var parser = this.readers.createMapped(input)) {
+      try (var readable = (KTX1FileReadableType) parser.execute()) {
+        final var source = sourceOf(readable);
+
+        /*
+         * The source copies every sub-image into the same scratch buffer,
+         * overwriting the data it returned for the previous sub-image.
+         */
+
+        final var scratch = ByteBuffer.allocate(65536);
+        final var reusing =
+          new KTX1SubImageSourceType()
+          {
+            @Override
+            public long subImageSizeBytes(
+              final int mipMapLevel)
+            {
+              return source.subImageSizeBytes(mipMapLevel);
+            }
+
+            @Override
+            public ByteBuffer subImageData(
+              final KTX1SubImage subImage)
+              throws IOException
+            {
+              scratch.clear();
+              scratch.put(source.subImageData(subImage));
+              return scratch.flip();
+            }
+
+            @Override
+            public boolean reusesBuffers()
+            {
+              return true;
+            }
+          };
+
+        try (var channel =
+               FileChannel.open(output, CREATE, WRITE, TRUNCATE_EXISTING)) {
+          this.writers.createKTX1(
+            new KTX1WriteRequest(
+              channel,
+              output.toUri(),
+              readable.header(),
+              keyValuesOf(readable),
+              reusing
+            )
+          ).execute();
+        }
+      }
+    }
+
+    assertArrayEquals(Files.readAllBytes(input), Files.readAllBytes(output));
+  }
+
+  @Test
+  public void testSubImageSizeMismatch()
+    throws Exception
+  {
+    final var input =
+      KTXTestDirectories.resourceOf(
+        KTXWriterTest.class,
+        this.directory,
+        "rgb-mipmap-reference.ktx"
+      );
+
+    try (var parser = this.readers.createMapped(input)) {
+      try (var readable = (KTX1FileReadableType) parser.execute()) {
+        final var source = sourceOf(readable);
+        final var request =
+          new KTX1WriteRequest(
+            Channels.newChannel(new ByteArrayOutputStream()),
+            input.toUri(),
+            readable.header(),
+            Map.of(),
+            new KTX1SubImageSourceType()
+            {
+              @Override
+              public long subImageSizeBytes(
+                final int mipMapLevel)
+              {
+                return source.subImageSizeBytes(mipMapLevel);
+              }
+
+              @Override
+              public ByteBuffer subImageData(
+                final KTX1SubImage subImage)
+              {
+                return ByteBuffer.allocate(1);
+              }
+            }
+          );
+
+        final var ex =
+          assertThrows(IOException.class, () -> {
+            this.writers.createKTX1(request).execute();
+          });
+        assertTrue(ex.getMessage().contains("Sub-image size mismatch."));
+      }
+    }
+  }
+
+  @Test
+  public void testKeyValuesWritten()
+    throws Exception
+  {
+    final var input =
+      KTXTestDirectories.resourceOf(
+        KTXWriterTest.class,
+        this.directory,
+        "orange.ktx"
+      );
+    final var output =
+      this.directory.resolve("output.ktx");
+
+    final var keyValues = new LinkedHashMap<String, ByteBuffer>();
+    keyValues.put("KTXorientation", ByteBuffer.wrap("S=r,T=d\0".getBytes()));
+    keyValues.put("x", ByteBuffer.wrap(new byte[]{1, 2, 3}));
+
+    try (var parser = this.readers.createMapped(input)) {
+      try (var readable = (KTX1FileReadableType) parser.execute()) {
+        try (var channel = FileChannel.open(output, CREATE, WRITE)) {
+          this.writers.createKTX1(
+            new KTX1WriteRequest(
+              channel,
+              output.toUri(),
+              readable.header(),
+              keyValues,
+              sourceOf(readable)
+            )
+          ).execute();
+        }
+      }
+    }
+
+    try (var parser = this.readers.createMapped(output)) {
+      try (var readable = (KTX1FileReadableType) parser.execute()) {
+        assertEquals(
+          Map.of("KTXorientation", "S=r,T=d", "x", "\u0001\u0002\u0003"),
+          readable.keyValueData()
+        );
+        assertEquals(
+          ByteBuffer.wrap(new byte[]{1, 2, 3}),
+          readable.keyValues().value("x").orElseThrow()
+        );
+      }
+    }
+  }
+
+  private static ByteBuffer dataFormatDescriptorOf(
+    final Path file,
+    final KTX2FileReadableType readable)
+    throws IOException
+  {
+    final var index = readable.index();
+    final var buffer = ByteBuffer.allocate((int) index.dfdByteLength());
+    try (var channel = FileChannel.open(file)) {
+      channel.read(buffer, index.dfdByteOffset());
+    }
+    return buffer.flip();
+  }
+
+  private static Map<String, ByteBuffer> keyValuesOf(
+    final KTX2FileReadableType readable)
+  {
+    final var keyValues = readable.keyValues();
+    final var results = new LinkedHashMap<String, ByteBuffer>();
+    for (int index = 0; index < keyValues.size(); ++index) {
+      results.put(keyValues.key(index), keyValues.value(index));
+    }
+    return results;
+  }
+
+  private Path writeKTX2(
+    final String name,
+    final long scheme,
+    final KTX2LevelSourceType levels)
+    throws Exception
+  {
+    final var input =
+      KTXTestDirectories.resourceOf(
+        KTXWriterTest.class,
+        this.directory,
+        name
+      );
+    final var output =
+      this.directory.resolve("output.ktx2");
+
+    try (var parser = this.readers.createMapped(input)) {
+      try (var readable = (KTX2FileReadableType) parser.execute()) {
+        final var h = readable.header();
+        final var header =
+          new KTX2Header(
+            h.format(),
+            h.typeSize(),
+            h.pixelWidth(),
+            h.pixelHeight(),
+            h.pixelDepth(),
+            h.layerCount(),
+            h.faceCount(),
+            h.levelCount(),
+            scheme
+          );
+
+        final KTX2LevelSourceType source;
+        if (levels == null) {
+          source = level -> readable.levelData(readable.levels().get(level));
+        } else {
+          source = levels;
+        }
+
+        try (var channel =
+               FileChannel.open(output, CREATE, WRITE, TRUNCATE_EXISTING)) {
+          this.writers.createKTX2(
+            new KTX2WriteRequest(
+              channel,
+              output.toUri(),
+              header,
+              dataFormatDescriptorOf(input, readable),
+              keyValuesOf(readable),
+              source,
+              3
+            )
+          ).execute();
+        }
+      }
+    }
+    return output;
+  }
+
+  @Test
+  public void testRoundTripKTX2()
+    throws Exception
+  {
+    final var output =
+      this.writeKTX2("rgba-mipmap-little.ktx2", 0L, null);
+
+    assertArrayEquals(
+      Files.readAllBytes(this.directory.resolve("rgba-mipmap-little.ktx2")),
+      Files.readAllBytes(output)
+    );
+  }
+
+  @Test
+  public void testZstdKTX2()
+    throws Exception
+  {
+    final var output =
+      this.writeKTX2("rgba-mipmap-little.ktx2", 2L, null);
+    final var input =
+      this.directory.resolve("rgba-mipmap-little.ktx2");
+
+    try (var expectedParser = this.readers.createMapped(input);
+         var parser = this.readers.createMapped(output);
+         var decompressor = new KTX2LevelDecompressor()) {
+      try (var expected = (KTX2FileReadableType) expectedParser.execute();
+           var readable = (KTX2FileReadableType) parser.execute()) {
+        assertEquals(2L, readable.header().supercompressionScheme());
+        assertEquals(expected.keyValueData(), readable.keyValueData());
+
+        final var levels = readable.levels();
+        assertEquals(expected.levels().size(), levels.size());
+
+        for (int index = 0; index < levels.size(); ++index) {
+          final var level = levels.get(index);
+          if (index > 0) {
+            assertTrue(
+              level.byteOffset() < levels.get(index - 1).byteOffset());
+          }
+
+          final var target =
+            ByteBuffer.allocate((int) level.uncompressedByteLength());
+          decompressor.decompress(readable, level, target);
+          assertEquals(
+            expected.levelData(expected.levels().get(index)),
+            target.flip()
+          );
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testZstdDirectLevelsKTX2()
+    throws Exception
+  {
+    final var output =
+      this.writeKTX2("rgba-mipmap-little.ktx2", 2L, level -> {
+        final var data = ByteBuffer.allocateDirect(64 >>> (level * 2));
+        while (data.hasRemaining()) {
+          data.put((byte) level);
+        }
+        return data.flip().asReadOnlyBuffer();
+      });
+
+    try (var parser = this.readers.createMapped(output);
+         var decompressor = new KTX2LevelDecompressor()) {
+      try (var readable = (KTX2FileReadableType) parser.execute()) {
+        for (final var level : readable.levels()) {
+          final var target =
+            ByteBuffer.allocate((int) level.uncompressedByteLength());
+          decompressor.decompress(readable, level, target);
+          target.flip();
+          while (target.hasRemaining()) {
+            assertEquals(level.mipMapLevel(), target.get());
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testUnsupportedSchemeKTX2()
+  {
+    final var ex =
+      assertThrows(IOException.class, () -> {
+        this.writeKTX2("rgba-mipmap-little.ktx2", 3L, null);
+      });
+    assertTrue(
+      ex.getMessage().contains("Unsupported supercompression scheme."));
+  }
+
+  @Test
+  public void testLevelSourceFailsKTX2()
+  {
+    final var ex =
+      assertThrows(IOException.class, () -> {
+        this.writeKTX2("rgba-mipmap-little.ktx2", 2L, level -> {
+          throw new IOException("Level " + level);
+        });
+      });
+    assertEquals("Level 0", ex.getMessage());
+  }
+
+  @Test
+  public void testHeaderFieldOutOfRangeKTX2()
+    throws Exception
+  {
+    final var output = this.directory.resolve("output.ktx2");
+    final var header =
+      new KTX2Header(37L, 0x1_0000_0001L, 1L, 1L, 0L, 0L, 1L, 1L, 0L);
+
+    try (var channel =
+           FileChannel.open(output, CREATE, WRITE, TRUNCATE_EXISTING)) {
+      final var ex =
+        assertThrows(IOException.class, () -> {
+          this.writers.createKTX2(
+            new KTX2WriteRequest(
+              channel,
+              output.toUri(),
+              header,
+              ByteBuffer.allocate(0),
+              Map.of(),
+              level -> ByteBuffer.allocate(4),
+              3
+            )
+          ).execute();
+        });
+      assertTrue(ex.getMessage().contains("Header field out of range."));
+      assertTrue(ex.getMessage().contains("typeSize"));
+    }
+  }
+
+  private static final class CountingGatheringChannel
+    implements GatheringByteChannel
+  {
+    private final FileChannel delegate;
+    private int gatheringWrites;
+
+    CountingGatheringChannel(
+      final FileChannel inDelegate)
+    {
+      this.delegate = inDelegate;
+    }
+
+    @Override
+    public long write(
+      final ByteBuffer[] sources,
+      final int offset,
+      final int length)
+      throws IOException
+    {
+      ++this.gatheringWrites;
+      return this.delegate.write(sources, offset, length);
+    }
+
+    @Override
+    public long write(
+      final ByteBuffer[] sources)
+      throws IOException
+    {
+      return this.write(sources, 0, sources.length);
+    }
+
+    @Override
+    public int write(
+      final ByteBuffer source)
+      throws IOException
+    {
+      return this.delegate.write(source);
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+      return this.delegate.isOpen();
+    }
+
+    @Override
+    public void close()
+      throws IOException
+    {
+      this.delegate.close();
+    }
+  }
+}
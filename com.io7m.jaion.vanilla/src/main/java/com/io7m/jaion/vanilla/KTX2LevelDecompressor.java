@@ -0,0 +1,329 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.vanilla;
+
+import com.github.luben.zstd.ZstdDecompressCtx;
+import com.github.luben.zstd.ZstdException;
+import com.io7m.jaion.api.KTX2FileReadableType;
+import com.io7m.jaion.api.KTX2Level;
+import com.io7m.jaion.api.KTX2LevelDecompressorType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Objects;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+public final class KTX2LevelDecompressor implements KTX2LevelDecompressorType
+{
+  private static final long SCHEME_NONE = 0L;
+  private static final long SCHEME_ZSTD = 2L;
+  private static final long SCHEME_ZLIB = 3L;
+  private static final int DEFAULT_BUFFER_SIZE = 65536;
+
+  private final ByteBuffer input;
+  private final ByteBuffer output;
+  private ZstdDecompressCtx zstd;
+  private Inflater inflater;
+  private boolean closed;
+
+  public KTX2LevelDecompressor()
+  {
+    this(DEFAULT_BUFFER_SIZE);
+  }
+
+  public KTX2LevelDecompressor(
+    final int bufferSize)
+  {
+    if (bufferSize <= 0) {
+      throw new IllegalArgumentException(
+        "Buffer size %d must be positive".formatted(bufferSize));
+    }
+
+    this.input = ByteBuffer.allocateDirect(bufferSize);
+    this.output = ByteBuffer.allocateDirect(bufferSize);
+  }
+
+  private static String errorUnsupportedScheme(
+    final long scheme)
+  {
+    final var lineSeparator = System.lineSeparator();
+    final var text = new StringBuilder(128);
+    text.append("Unsupported supercompression scheme.");
+    text.append(lineSeparator);
+    text.append("  Received: ");
+    text.append(Long.toUnsignedString(scheme));
+    text.append(lineSeparator);
+    text.append("  Supported: ");
+    text.append(SCHEME_NONE);
+    text.append(" (None), ");
+    text.append(SCHEME_ZSTD);
+    text.append(" (Zstandard), ");
+    text.append(SCHEME_ZLIB);
+    text.append(" (ZLIB)");
+    text.append(lineSeparator);
+    return text.toString();
+  }
+
+  private static String errorSizeMismatch(
+    final KTX2Level level,
+    final String problem)
+  {
+    final var lineSeparator = System.lineSeparator();
+    final var text = new StringBuilder(128);
+    text.append("Decompressed size mismatch.");
+    text.append(lineSeparator);
+    text.append("  Level ");
+    text.append(level.mipMapLevel());
+    text.append(' ');
+    text.append(problem);
+    text.append(lineSeparator);
+    text.append("  Expected uncompressed size: ");
+    text.append(Long.toUnsignedString(level.uncompressedByteLength()));
+    text.append(lineSeparator);
+    return text.toString();
+  }
+
+  private static String errorCorrupt(
+    final KTX2Level level,
+    final String message)
+  {
+    final var lineSeparator = System.lineSeparator();
+    final var text = new StringBuilder(128);
+    text.append("Corrupt supercompressed data.");
+    text.append(lineSeparator);
+    text.append("  Level ");
+    text.append(level.mipMapLevel());
+    text.append(": ");
+    text.append(message);
+    text.append(lineSeparator);
+    return text.toString();
+  }
+
+  @Override
+  public void decompress(
+    final KTX2FileReadableType file,
+    final KTX2Level level,
+    final ByteBuffer target)
+    throws IOException
+  {
+    Objects.requireNonNull(file, "file");
+    Objects.requireNonNull(level, "level");
+    Objects.requireNonNull(target, "target");
+
+    if (this.closed) {
+      throw new IllegalStateException("Decompressor is closed.");
+    }
+
+    final var required = level.uncompressedByteLength();
+    if (Long.compareUnsigned(required, target.remaining()) > 0) {
+      throw new IllegalArgumentException(
+        "Target buffer has %d bytes remaining but level %d requires %s"
+          .formatted(
+            Integer.valueOf(target.remaining()),
+            Integer.valueOf(level.mipMapLevel()),
+            Long.toUnsignedString(required))
+      );
+    }
+
+    /*
+     * Decompress into a window of the target that is exactly as large as
+     * the uncompressed level, so that oversized streams are detected rather
+     * than being allowed to overwrite the rest of the caller's buffer.
+     */
+
+    final var start = target.position();
+    final var window = target.duplicate();
+    window.limit(start + (int) required);
+
+    final var scheme = file.header().supercompressionScheme();
+    try (var channel = file.levelDataChannel(level)) {
+      if (scheme == SCHEME_NONE) {
+        this.copy(level, channel, window);
+      } else if (scheme == SCHEME_ZSTD) {
+        this.decompressZstd(level, channel, window);
+      } else if (scheme == SCHEME_ZLIB) {
+        this.decompressZlib(level, channel, window);
+      } else {
+        throw new IOException(errorUnsupportedScheme(scheme));
+      }
+    }
+
+    if (window.hasRemaining()) {
+      throw new IOException(
+        errorSizeMismatch(level, "produced fewer bytes than expected.")
+      );
+    }
+    target.position(window.position());
+  }
+
+  private void copy(
+    final KTX2Level level,
+    final ReadableByteChannel channel,
+    final ByteBuffer window)
+    throws IOException
+  {
+    while (window.hasRemaining()) {
+      if (!this.refill(channel)) {
+        throw new IOException(
+          errorSizeMismatch(level, "stored data ended early.")
+        );
+      }
+      this.drainInputTo(window);
+    }
+  }
+
+  private void drainInputTo(
+    final ByteBuffer window)
+  {
+    final var count = Math.min(this.input.remaining(), window.remaining());
+    final var position = this.input.position();
+    window.put(this.input.slice(position, count));
+    this.input.position(position + count);
+  }
+
+  private void decompressZstd(
+    final KTX2Level level,
+    final ReadableByteChannel channel,
+    final ByteBuffer window)
+    throws IOException
+  {
+    if (this.zstd == null) {
+      this.zstd = new ZstdDecompressCtx();
+    }
+    this.zstd.reset();
+    this.input.clear().flip();
+
+    try {
+      while (true) {
+        if (!this.input.hasRemaining()) {
+          if (!this.refill(channel)) {
+            throw new IOException(
+              errorCorrupt(level, "Compressed stream ended early.")
+            );
+          }
+        }
+
+        final var inputBefore = this.input.position();
+        final var windowBefore = window.position();
+
+        final boolean finished;
+        if (window.isDirect()) {
+          finished = this.zstd.decompressDirectByteBufferStream(
+            window, this.input);
+        } else {
+          this.output.clear();
+          this.output.limit(Math.min(window.remaining(), this.output.capacity()));
+          finished = this.zstd.decompressDirectByteBufferStream(
+            this.output, this.input);
+          window.put(this.output.flip());
+        }
+
+        if (finished) {
+          return;
+        }
+
+        final var noProgress =
+          inputBefore == this.input.position()
+            && windowBefore == window.position();
+
+        if (noProgress && !window.hasRemaining()) {
+          throw new IOException(
+            errorSizeMismatch(level, "produced more bytes than expected.")
+          );
+        }
+      }
+    } catch (final ZstdException e) {
+      throw new IOException(errorCorrupt(level, e.getMessage()), e);
+    }
+  }
+
+  private void decompressZlib(
+    final KTX2Level level,
+    final ReadableByteChannel channel,
+    final ByteBuffer window)
+    throws IOException
+  {
+    if (this.inflater == null) {
+      this.inflater = new Inflater();
+    }
+    this.inflater.reset();
+    this.input.clear().flip();
+
+    try {
+      while (!this.inflater.finished()) {
+        if (this.inflater.needsInput()) {
+          if (!this.refill(channel)) {
+            throw new IOException(
+              errorCorrupt(level, "Compressed stream ended early.")
+            );
+          }
+          this.inflater.setInput(this.input);
+        }
+
+        if (this.inflater.needsDictionary()) {
+          throw new IOException(
+            errorCorrupt(level, "Preset dictionaries are not supported.")
+          );
+        }
+
+        final var count = this.inflater.inflate(window);
+        if (count == 0
+          && !window.hasRemaining()
+          && !this.inflater.finished()
+          && !this.inflater.needsInput()) {
+          throw new IOException(
+            errorSizeMismatch(level, "produced more bytes than expected.")
+          );
+        }
+      }
+    } catch (final DataFormatException e) {
+      throw new IOException(errorCorrupt(level, e.getMessage()), e);
+    }
+  }
+
+  private boolean refill(
+    final ReadableByteChannel channel)
+    throws IOException
+  {
+    this.input.clear();
+    while (this.input.hasRemaining()) {
+      final var count = channel.read(this.input);
+      if (count <= 0) {
+        break;
+      }
+    }
+    this.input.flip();
+    return this.input.hasRemaining();
+  }
+
+  @Override
+  public void close()
+  {
+    if (!this.closed) {
+      this.closed = true;
+      if (this.zstd != null) {
+        this.zstd.close();
+      }
+      if (this.inflater != null) {
+        this.inflater.end();
+      }
+    }
+  }
+}
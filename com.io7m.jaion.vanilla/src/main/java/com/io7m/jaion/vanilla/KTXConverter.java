@@ -0,0 +1,53 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jaion.vanilla;
+
+import com.io7m.jaion.api.KTXConverterType;
+import com.io7m.jaion.api.KTXParserFactoryType;
+import com.io7m.jaion.vanilla.internal.KTX1ToKTX2Converter;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Objects;
+
+public final class KTXConverter implements KTXConverterType
+{
+  private final KTXParserFactoryType parsers;
+
+  public KTXConverter()
+  {
+    this(new KTXParserFactory());
+  }
+
+  public KTXConverter(
+    final KTXParserFactoryType inParsers)
+  {
+    this.parsers = Objects.requireNonNull(inParsers, "parsers");
+  }
+
+  @Override
+  public void convertKTX1ToKTX2(
+    final Path source,
+    final Path target)
+    throws IOException
+  {
+    Objects.requireNonNull(source, "source");
+    Objects.requireNonNull(target, "target");
+
+    new KTX1ToKTX2Converter(this.parsers, source, target).execute();
+  }
+}
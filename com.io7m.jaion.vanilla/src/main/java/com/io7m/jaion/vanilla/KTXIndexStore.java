@@ -0,0 +1,133 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.vanilla;
+
+import com.io7m.jaion.api.KTXIndexStoreType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+public final class KTXIndexStore implements KTXIndexStoreType
+{
+  private static final String SIDECAR_SUFFIX = ".jaionidx";
+
+  private final Function<Path, Path> locations;
+
+  private KTXIndexStore(
+    final Function<Path, Path> inLocations)
+  {
+    this.locations =
+      Objects.requireNonNull(inLocations, "locations");
+  }
+
+  public static KTXIndexStoreType sidecar()
+  {
+    return new KTXIndexStore(
+      file -> file.resolveSibling(file.getFileName() + SIDECAR_SUFFIX)
+    );
+  }
+
+  public static KTXIndexStoreType directory(
+    final Path directory)
+    throws IOException
+  {
+    Objects.requireNonNull(directory, "directory");
+
+    final var absolute = directory.toAbsolutePath();
+    Files.createDirectories(absolute);
+    return new KTXIndexStore(
+      file -> absolute.resolve(nameOf(file) + SIDECAR_SUFFIX)
+    );
+  }
+
+  private static String nameOf(
+    final Path file)
+  {
+    try {
+      final var digest = MessageDigest.getInstance("SHA-256");
+      final var path = file.toAbsolutePath().normalize().toString();
+      return HexFormat.of().formatHex(digest.digest(path.getBytes(UTF_8)));
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public Optional<ByteBuffer> read(
+    final Path file)
+    throws IOException
+  {
+    Objects.requireNonNull(file, "file");
+
+    try {
+      return Optional.of(
+        ByteBuffer.wrap(Files.readAllBytes(this.locations.apply(file)))
+      );
+    } catch (final NoSuchFileException e) {
+      return Optional.empty();
+    }
+  }
+
+  @Override
+  public void write(
+    final Path file,
+    final ByteBuffer data)
+    throws IOException
+  {
+    Objects.requireNonNull(file, "file");
+    Objects.requireNonNull(data, "data");
+
+    /*
+     * Write to a temporary file alongside the target and move it into
+     * place, so that concurrent readers never observe a partial entry.
+     */
+
+    final var target = this.locations.apply(file);
+    final var temporary =
+      target.resolveSibling(target.getFileName() + "." + UUID.randomUUID());
+
+    try {
+      try (var channel = FileChannel.open(temporary, CREATE_NEW, WRITE)) {
+        final var source = data.duplicate();
+        while (source.hasRemaining()) {
+          channel.write(source);
+        }
+      }
+      Files.move(temporary, target, ATOMIC_MOVE, REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+}
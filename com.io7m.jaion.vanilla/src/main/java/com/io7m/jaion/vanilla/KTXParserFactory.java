@@ -16,16 +16,33 @@
 
 package com.io7m.jaion.vanilla;
 
+import com.io7m.jaion.api.KTXAsyncParseRequest;
+import com.io7m.jaion.api.KTXFileReadableType;
+import com.io7m.jaion.api.KTXHeaderType;
+import com.io7m.jaion.api.KTXIndexStoreType;
 import com.io7m.jaion.api.KTXParseRequest;
 import com.io7m.jaion.api.KTXParserFactoryType;
 import com.io7m.jaion.api.KTXParserType;
+import com.io7m.jaion.api.KTXReusableParserType;
+import com.io7m.jaion.vanilla.internal.KTXAsyncParser;
+import com.io7m.jaion.vanilla.internal.KTXDataSourceChannel;
+import com.io7m.jaion.vanilla.internal.KTXDataSourceMapped;
+import com.io7m.jaion.vanilla.internal.KTXHeaders;
+import com.io7m.jaion.vanilla.internal.KTXIndexedParser;
 import com.io7m.jaion.vanilla.internal.KTXParser;
+import com.io7m.jaion.vanilla.internal.KTXReusableParser;
 import com.io7m.jbssio.api.BSSReaderProviderType;
 
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Objects;
 import java.util.ServiceConfigurationError;
 import java.util.ServiceLoader;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 public final class KTXParserFactory implements KTXParserFactoryType
 {
@@ -56,12 +73,106 @@ public final class KTXParserFactory implements KTXParserFactoryType
     final KTXParseRequest request)
     throws IOException
   {
+    final var channel =
+      request.byteSources()
+        .createByteSource(request.source(), request.channel());
+
     return new KTXParser(
       request,
       this.readers.createReaderFromChannel(
         request.source(),
-        request.channel(),
-        "ktx")
+        channel,
+        "ktx"),
+      new KTXDataSourceChannel(channel)
+    );
+  }
+
+  @Override
+  public KTXParserType createMapped(
+    final KTXParseRequest request)
+    throws IOException
+  {
+    Objects.requireNonNull(request, "request");
+
+    if (request.channel() instanceof FileChannel fileChannel) {
+      final var data = KTXDataSourceMapped.map(fileChannel);
+      return new KTXParser(
+        request,
+        this.readers.createReaderFromByteBuffer(
+          request.source(),
+          data.mapped(),
+          "ktx"),
+        data
+      );
+    }
+
+    throw new IllegalArgumentException(
+      "Mapped parsing requires a channel of type %s (received %s)"
+        .formatted(FileChannel.class, request.channel().getClass())
+    );
+  }
+
+  @Override
+  public KTXParserType createMapped(
+    final Path file)
+    throws IOException
+  {
+    Objects.requireNonNull(file, "file");
+
+    try (var channel = FileChannel.open(file)) {
+      return this.createMapped(
+        KTXParseRequest.builder(channel, file.toUri())
+          .build()
+      );
+    }
+  }
+
+  @Override
+  public KTXParserType createIndexed(
+    final Path file,
+    final KTXIndexStoreType index)
+    throws IOException
+  {
+    Objects.requireNonNull(file, "file");
+    Objects.requireNonNull(index, "index");
+
+    /*
+     * Nothing is mapped here: a file with a valid index is read through
+     * its channel, and only a file without one is mapped and parsed.
+     */
+
+    final var modified =
+      Files.getLastModifiedTime(file)
+        .to(TimeUnit.NANOSECONDS);
+
+    return new KTXIndexedParser(
+      this.readers,
+      index,
+      file,
+      Files.size(file),
+      modified
     );
   }
+
+  @Override
+  public KTXReusableParserType createReusable()
+  {
+    return new KTXReusableParser(this.readers);
+  }
+
+  @Override
+  public CompletableFuture<KTXFileReadableType> parseAsync(
+    final KTXAsyncParseRequest request)
+  {
+    return KTXAsyncParser.parse(request);
+  }
+
+  @Override
+  public KTXHeaderType probe(
+    final SeekableByteChannel channel)
+    throws IOException
+  {
+    Objects.requireNonNull(channel, "channel");
+    return KTXHeaders.probe(channel);
+  }
 }
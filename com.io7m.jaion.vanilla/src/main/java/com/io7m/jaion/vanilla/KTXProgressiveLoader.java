@@ -0,0 +1,266 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jaion.vanilla;
+
+import com.io7m.jaion.api.KTX1FileReadableType;
+import com.io7m.jaion.api.KTX1SubImage;
+import com.io7m.jaion.api.KTX2FileReadableType;
+import com.io7m.jaion.api.KTX2Level;
+import com.io7m.jaion.api.KTXFileReadableType;
+import com.io7m.jaion.api.KTXLevelData;
+import com.io7m.jaion.api.KTXProgressiveLoaderType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+public final class KTXProgressiveLoader implements KTXProgressiveLoaderType
+{
+  private static final long DECOMPRESS_BUFFER_SIZE = 65536L;
+
+  private final KTXFileReadableType file;
+  private final Executor executor;
+  private final List<List<KTX1SubImage>> subImagesByLevel;
+  private final AtomicReferenceArray<CompletableFuture<KTXLevelData>> levels;
+
+  public KTXProgressiveLoader(
+    final KTXFileReadableType inFile,
+    final Executor inExecutor)
+  {
+    this.file =
+      Objects.requireNonNull(inFile, "file");
+    this.executor =
+      Objects.requireNonNull(inExecutor, "executor");
+
+    /*
+     * The sub-image index is ordered by level, so a single pass groups
+     * the KTX1 sub-images of each level together.
+     */
+
+    if (inFile instanceof KTX1FileReadableType ktx1) {
+      final var grouped = new ArrayList<List<KTX1SubImage>>();
+      for (final var subImage : ktx1.subImages()) {
+        final var level = subImage.mipMapLevel();
+        while (grouped.size() <= level) {
+          grouped.add(new ArrayList<>());
+        }
+        grouped.get(level).add(subImage);
+      }
+      this.subImagesByLevel = grouped;
+      this.levels = new AtomicReferenceArray<>(grouped.size());
+    } else {
+      final var ktx2 = (KTX2FileReadableType) inFile;
+      this.subImagesByLevel = Collections.emptyList();
+      this.levels = new AtomicReferenceArray<>(ktx2.levels().size());
+    }
+  }
+
+  @Override
+  public int levelCount()
+  {
+    return this.levels.length();
+  }
+
+  @Override
+  public CompletableFuture<KTXLevelData> level(
+    final int mipMapLevel)
+  {
+    if (mipMapLevel < 0 || mipMapLevel >= this.levels.length()) {
+      throw new IllegalArgumentException(
+        "Level %d must be in the range [0, %d)"
+          .formatted(
+            Integer.valueOf(mipMapLevel),
+            Integer.valueOf(this.levels.length()))
+      );
+    }
+
+    /*
+     * Each level is read at most once; later requests for the same level
+     * share the first request's future.
+     */
+
+    final var existing = this.levels.get(mipMapLevel);
+    if (existing != null) {
+      return existing;
+    }
+
+    final var created = new CompletableFuture<KTXLevelData>();
+    if (!this.levels.compareAndSet(mipMapLevel, null, created)) {
+      return this.levels.get(mipMapLevel);
+    }
+
+    /*
+     * The future has already been published, so if the executor refuses
+     * the task the future is failed rather than left forever incomplete.
+     */
+
+    try {
+      this.executor.execute(() -> {
+        try {
+          created.complete(this.read(mipMapLevel));
+        } catch (final Throwable e) {
+          created.completeExceptionally(e);
+        }
+      });
+    } catch (final RejectedExecutionException e) {
+      created.completeExceptionally(e);
+    }
+    return created;
+  }
+
+  @Override
+  public CompletableFuture<Void> smallestLevels(
+    final int count,
+    final Consumer<KTXLevelData> receiver)
+  {
+    Objects.requireNonNull(receiver, "receiver");
+
+    if (count < 0) {
+      throw new IllegalArgumentException(
+        "Level count %d must be non-negative".formatted(count)
+      );
+    }
+
+    /*
+     * All of the requested levels are submitted at once, smallest first,
+     * so that small levels are not queued behind large ones. Delivery to
+     * the receiver is chained so that it always observes the levels in
+     * order from smallest to largest, whatever order the reads finish in.
+     */
+
+    final var last = this.levels.length() - 1;
+    final var first = Math.max(this.levels.length() - count, 0);
+
+    final var requests = new ArrayList<CompletableFuture<KTXLevelData>>();
+    for (int level = last; level >= first; --level) {
+      requests.add(this.level(level));
+    }
+
+    var delivered = CompletableFuture.<Void>completedFuture(null);
+    for (final var request : requests) {
+      delivered = delivered.thenCombine(request, (ignored, data) -> {
+        receiver.accept(data);
+        return null;
+      });
+    }
+    return delivered;
+  }
+
+  private KTXLevelData read(
+    final int mipMapLevel)
+    throws IOException
+  {
+    if (this.file instanceof KTX1FileReadableType ktx1) {
+      return this.readKTX1(ktx1, mipMapLevel);
+    }
+
+    final var ktx2 = (KTX2FileReadableType) this.file;
+    final var level = ktx2.levels().get(mipMapLevel);
+    if (ktx2.header().supercompressionScheme() == 0L) {
+      return new KTXLevelData(mipMapLevel, List.of(ktx2.levelData(level)));
+    }
+    return readKTX2Supercompressed(ktx2, level);
+  }
+
+  private static KTXLevelData readKTX2Supercompressed(
+    final KTX2FileReadableType ktx2,
+    final KTX2Level level)
+    throws IOException
+  {
+    /*
+     * Levels are always delivered uncompressed, so that consumers see the
+     * same texel data whatever supercompression the file uses.
+     */
+
+    final var size = level.uncompressedByteLength();
+    if (Long.compareUnsigned(size, Integer.MAX_VALUE) > 0) {
+      throw new IOException(
+        "Level %d of %s bytes is too large to be held in a buffer."
+          .formatted(
+            Integer.valueOf(level.mipMapLevel()),
+            Long.toUnsignedString(size))
+      );
+    }
+
+    final var buffer =
+      ByteBuffer.allocate((int) size)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    final var bufferSize =
+      (int) Math.max(Math.min(level.byteLength(), DECOMPRESS_BUFFER_SIZE), 1L);
+
+    try (var decompressor = new KTX2LevelDecompressor(bufferSize)) {
+      decompressor.decompress(ktx2, level, buffer);
+    }
+    return new KTXLevelData(
+      level.mipMapLevel(),
+      List.of(buffer.flip().asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN))
+    );
+  }
+
+  private KTXLevelData readKTX1(
+    final KTX1FileReadableType ktx1,
+    final int mipMapLevel)
+    throws IOException
+  {
+    final var subImages = this.subImagesByLevel.get(mipMapLevel);
+
+    /*
+     * The sub-images of a level are read with a single batched read into
+     * one buffer, and each sub-image is then exposed as a slice of it.
+     */
+
+    var total = 0L;
+    for (final var subImage : subImages) {
+      total += subImage.imageSizeBytes();
+    }
+    if (total > Integer.MAX_VALUE) {
+      throw new IOException(
+        "Level %d of %d bytes is too large to be held in a buffer."
+          .formatted(Integer.valueOf(mipMapLevel), Long.valueOf(total))
+      );
+    }
+
+    final var buffer = ByteBuffer.allocate((int) total);
+    ktx1.subImageDataBatch(
+      subImages,
+      Collections.nCopies(subImages.size(), buffer)
+    );
+
+    final var order =
+      ktx1.header().isBigEndian()
+        ? ByteOrder.BIG_ENDIAN
+        : ByteOrder.LITTLE_ENDIAN;
+
+    final var slices = new ArrayList<ByteBuffer>(subImages.size());
+    var position = 0;
+    for (final var subImage : subImages) {
+      final var size = (int) subImage.imageSizeBytes();
+      slices.add(buffer.slice(position, size).order(order));
+      position += size;
+    }
+    return new KTXLevelData(mipMapLevel, slices);
+  }
+}
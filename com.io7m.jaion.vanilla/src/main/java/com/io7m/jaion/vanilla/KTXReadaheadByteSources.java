@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.vanilla;
+
+import com.io7m.jaion.api.KTXByteSourceProviderType;
+import com.io7m.jaion.vanilla.internal.KTXReadaheadChannel;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Objects;
+
+public final class KTXReadaheadByteSources
+  implements KTXByteSourceProviderType
+{
+  private static final int BLOCK_SIZE_DEFAULT = 65536;
+  private static final int READAHEAD_MAXIMUM_DEFAULT = 16;
+  private static final int CACHE_BLOCKS_DEFAULT = 64;
+
+  private final int blockSize;
+  private final int readaheadMaximum;
+  private final int cacheBlocks;
+
+  public KTXReadaheadByteSources()
+  {
+    this(
+      BLOCK_SIZE_DEFAULT,
+      READAHEAD_MAXIMUM_DEFAULT,
+      CACHE_BLOCKS_DEFAULT
+    );
+  }
+
+  public KTXReadaheadByteSources(
+    final int inBlockSize,
+    final int inReadaheadMaximum,
+    final int inCacheBlocks)
+  {
+    if (inBlockSize <= 0) {
+      throw new IllegalArgumentException(
+        "Block size %d must be positive".formatted(inBlockSize)
+      );
+    }
+    if (inReadaheadMaximum <= 0) {
+      throw new IllegalArgumentException(
+        "Readahead maximum %d must be positive".formatted(inReadaheadMaximum)
+      );
+    }
+    if (inCacheBlocks < inReadaheadMaximum) {
+      throw new IllegalArgumentException(
+        "Cache size %d must be at least the readahead maximum %d"
+          .formatted(inCacheBlocks, inReadaheadMaximum)
+      );
+    }
+
+    this.blockSize = inBlockSize;
+    this.readaheadMaximum = inReadaheadMaximum;
+    this.cacheBlocks = inCacheBlocks;
+  }
+
+  @Override
+  public SeekableByteChannel createByteSource(
+    final URI source,
+    final SeekableByteChannel channel)
+    throws IOException
+  {
+    Objects.requireNonNull(source, "source");
+    Objects.requireNonNull(channel, "channel");
+
+    return new KTXReadaheadChannel(
+      channel,
+      this.blockSize,
+      this.readaheadMaximum,
+      this.cacheBlocks
+    );
+  }
+}
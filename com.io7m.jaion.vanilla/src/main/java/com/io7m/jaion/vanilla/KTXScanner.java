@@ -0,0 +1,338 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.vanilla;
+
+import com.io7m.jaion.api.KTX1FileReadableType;
+import com.io7m.jaion.api.KTX2FileReadableType;
+import com.io7m.jaion.api.KTXParseRequest;
+import com.io7m.jaion.api.KTXParserFactoryType;
+import com.io7m.jaion.api.KTXScanFailed;
+import com.io7m.jaion.api.KTXScanResultType;
+import com.io7m.jaion.api.KTXScanSucceeded;
+import com.io7m.jaion.api.KTXScannerType;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+public final class KTXScanner implements KTXScannerType
+{
+  public static final long FILE_SIZE_LIMIT_DEFAULT = 1L << 30;
+  public static final long KEY_VALUE_REGION_LIMIT_DEFAULT = 1L << 20;
+
+  private final KTXParserFactoryType parsers;
+  private final ExecutorService executor;
+  private final int openFilesMaximum;
+  private final long fileSizeLimit;
+  private final long keyValueRegionLimit;
+  private final AtomicBoolean closed;
+
+  public KTXScanner(
+    final KTXParserFactoryType inParsers)
+  {
+    this(
+      inParsers,
+      Runtime.getRuntime().availableProcessors(),
+      Runtime.getRuntime().availableProcessors() * 2
+    );
+  }
+
+  public KTXScanner(
+    final KTXParserFactoryType inParsers,
+    final int threads,
+    final int inOpenFilesMaximum)
+  {
+    this(
+      inParsers,
+      threads,
+      inOpenFilesMaximum,
+      FILE_SIZE_LIMIT_DEFAULT,
+      KEY_VALUE_REGION_LIMIT_DEFAULT
+    );
+  }
+
+  public KTXScanner(
+    final KTXParserFactoryType inParsers,
+    final int threads,
+    final int inOpenFilesMaximum,
+    final long inFileSizeLimit,
+    final long inKeyValueRegionLimit)
+  {
+    this.parsers =
+      Objects.requireNonNull(inParsers, "parsers");
+
+    if (threads < 1) {
+      throw new IllegalArgumentException(
+        "Thread count %d must be positive".formatted(threads)
+      );
+    }
+    if (inOpenFilesMaximum < 1) {
+      throw new IllegalArgumentException(
+        "Open file limit %d must be positive".formatted(inOpenFilesMaximum)
+      );
+    }
+
+    if (inFileSizeLimit < 0L) {
+      throw new IllegalArgumentException(
+        "File size limit %d must be non-negative".formatted(inFileSizeLimit)
+      );
+    }
+    if (inKeyValueRegionLimit < 0L) {
+      throw new IllegalArgumentException(
+        "Key/value region limit %d must be non-negative"
+          .formatted(inKeyValueRegionLimit)
+      );
+    }
+
+    this.openFilesMaximum = inOpenFilesMaximum;
+    this.fileSizeLimit = inFileSizeLimit;
+    this.keyValueRegionLimit = inKeyValueRegionLimit;
+    this.closed = new AtomicBoolean(false);
+
+    final var threadIndex = new AtomicInteger(0);
+    this.executor =
+      Executors.newFixedThreadPool(threads, runnable -> {
+        final var thread = new Thread(runnable);
+        thread.setName(
+          "com.io7m.jaion.scanner[%d]".formatted(threadIndex.incrementAndGet())
+        );
+        thread.setDaemon(true);
+        return thread;
+      });
+  }
+
+  private static boolean isKTX(
+    final Path file)
+  {
+    final var name = file.getFileName();
+    if (name == null) {
+      return false;
+    }
+
+    final var text = name.toString().toLowerCase(Locale.ROOT);
+    return text.endsWith(".ktx") || text.endsWith(".ktx2");
+  }
+
+  @Override
+  public void scanDirectory(
+    final Path directory,
+    final Consumer<KTXScanResultType> receiver)
+    throws IOException
+  {
+    Objects.requireNonNull(directory, "directory");
+    Objects.requireNonNull(receiver, "receiver");
+
+    try (var walk = Files.walk(directory)) {
+      this.scan(
+        walk.filter(Files::isRegularFile)
+          .filter(KTXScanner::isKTX)
+          .iterator(),
+        receiver
+      );
+    }
+  }
+
+  @Override
+  public void scanFiles(
+    final List<Path> files,
+    final Consumer<KTXScanResultType> receiver)
+    throws IOException
+  {
+    Objects.requireNonNull(files, "files");
+    Objects.requireNonNull(receiver, "receiver");
+
+    this.scan(files.iterator(), receiver);
+  }
+
+  private void scan(
+    final Iterator<Path> files,
+    final Consumer<KTXScanResultType> receiver)
+    throws IOException
+  {
+    if (this.closed.get()) {
+      throw new IllegalStateException("Scanner is closed.");
+    }
+
+    /*
+     * Files are submitted from the calling thread, and no more than
+     * openFilesMaximum parses are ever in flight: each parse holds one open
+     * file, so this bounds the number of open files. Results are handed to
+     * the receiver on the calling thread in completion order, as soon as
+     * they are available, rather than after the whole set has been parsed.
+     */
+
+    final CompletionService<KTXScanResultType> completion =
+      new ExecutorCompletionService<>(this.executor);
+
+    var pending = 0;
+    try {
+      while (files.hasNext()) {
+        if (pending == this.openFilesMaximum) {
+          receiver.accept(resultOf(completion.take()));
+          --pending;
+        }
+
+        final var file = files.next();
+        completion.submit(() -> this.parse(file));
+        ++pending;
+
+        for (var done = completion.poll(); done != null; done = completion.poll()) {
+          receiver.accept(resultOf(done));
+          --pending;
+        }
+      }
+
+      while (pending > 0) {
+        receiver.accept(resultOf(completion.take()));
+        --pending;
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      final var ex = new InterruptedIOException("Scan interrupted.");
+      ex.initCause(e);
+      throw ex;
+    }
+  }
+
+  private static KTXScanResultType resultOf(
+    final Future<KTXScanResultType> future)
+    throws InterruptedException, IOException
+  {
+    try {
+      return future.get();
+    } catch (final ExecutionException e) {
+      final var cause = e.getCause();
+      if (cause instanceof RuntimeException runtime) {
+        throw runtime;
+      }
+      if (cause instanceof Error error) {
+        throw error;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  private KTXScanResultType parse(
+    final Path file)
+  {
+    /*
+     * Every result is kept by the receiver, and every allocation made by
+     * a parse is bounded by the size of the file or by the key/value
+     * limits. Both are checked against the scanner's limits before the
+     * file is parsed, so that one hostile file cannot exhaust the heap
+     * that the rest of the scan depends on.
+     */
+
+    try (var channel = FileChannel.open(file)) {
+      final var size = channel.size();
+      if (size > this.fileSizeLimit) {
+        return new KTXScanFailed(
+          file,
+          new IOException(errorFileTooLarge(size, this.fileSizeLimit))
+        );
+      }
+
+      final var builder =
+        KTXParseRequest.builder(channel, file.toUri());
+      builder.setKeyValueRegionLimit(this.keyValueRegionLimit);
+      builder.setKeyValueDatumLimit(
+        Math.min(
+          this.keyValueRegionLimit,
+          KTXParseRequest.KEY_VALUE_DATUM_LIMIT_DEFAULT)
+      );
+      final var request = builder.build();
+
+      try (var parser = this.parsers.create(request)) {
+        try (var readable = parser.execute()) {
+          if (readable instanceof KTX1FileReadableType ktx1) {
+            return new KTXScanSucceeded(
+              file,
+              ktx1.header(),
+              ktx1.keyValues(),
+              ktx1.subImages(),
+              List.of()
+            );
+          }
+
+          final var ktx2 = (KTX2FileReadableType) readable;
+          return new KTXScanSucceeded(
+            file,
+            ktx2.header(),
+            ktx2.keyValues(),
+            List.of(),
+            ktx2.levels()
+          );
+        }
+      }
+    } catch (final IOException e) {
+      return new KTXScanFailed(file, e);
+    } catch (final RuntimeException e) {
+
+      /*
+       * A corrupt file must not abort the whole scan. Unchecked exceptions
+       * are reported for the one file, and the remaining files are still
+       * parsed. Errors are not caught: the heap cannot be trusted after
+       * one, so they end the scan.
+       */
+
+      return new KTXScanFailed(file, new IOException(e));
+    }
+  }
+
+  private static String errorFileTooLarge(
+    final long size,
+    final long limit)
+  {
+    final var lineSeparator = System.lineSeparator();
+    final var text = new StringBuilder(128);
+    text.append("Limit exceeded.");
+    text.append(lineSeparator);
+    text.append("  The file has a size of ");
+    text.append(Long.toUnsignedString(size));
+    text.append(" bytes.");
+    text.append(lineSeparator);
+    text.append("  The scanner file size limit is configured as ");
+    text.append(Long.toUnsignedString(limit));
+    text.append(" bytes.");
+    text.append(lineSeparator);
+    return text.toString();
+  }
+
+  @Override
+  public void close()
+  {
+    if (this.closed.compareAndSet(false, true)) {
+      this.executor.shutdown();
+    }
+  }
+}
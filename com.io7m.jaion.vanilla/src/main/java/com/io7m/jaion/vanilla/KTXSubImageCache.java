@@ -0,0 +1,486 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jaion.vanilla;
+
+import com.io7m.jaion.api.KTX1FileReadableType;
+import com.io7m.jaion.api.KTX1Header;
+import com.io7m.jaion.api.KTX1SubImage;
+import com.io7m.jaion.api.KTX2FileReadableType;
+import com.io7m.jaion.api.KTX2Header;
+import com.io7m.jaion.api.KTX2Index;
+import com.io7m.jaion.api.KTX2Level;
+import com.io7m.jaion.api.KTXCacheKey;
+import com.io7m.jaion.api.KTXKeyValueDataType;
+import com.io7m.jaion.api.KTXSubImageCacheType;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class KTXSubImageCache implements KTXSubImageCacheType
+{
+  private final long budget;
+  private final ConcurrentHashMap<KTXCacheKey, Entry> entries;
+  private final ArrayDeque<Entry> clock;
+  private final AtomicLong size;
+  private final Object evictionLock;
+
+  public KTXSubImageCache(
+    final long inBudget)
+  {
+    if (inBudget < 0L) {
+      throw new IllegalArgumentException(
+        "Byte budget %d must be non-negative".formatted(inBudget)
+      );
+    }
+
+    this.budget = inBudget;
+    this.entries = new ConcurrentHashMap<>();
+    this.clock = new ArrayDeque<>();
+    this.size = new AtomicLong(0L);
+    this.evictionLock = new Object();
+  }
+
+  private static final class Entry
+  {
+    private final KTXCacheKey key;
+    private final ByteBuffer data;
+    private final ByteOrder order;
+    private volatile boolean referenced;
+
+    Entry(
+      final KTXCacheKey inKey,
+      final ByteBuffer inData,
+      final ByteOrder inOrder)
+    {
+      this.key = inKey;
+      this.data = inData;
+      this.order = inOrder;
+    }
+
+    ByteBuffer view()
+    {
+      return this.data.duplicate().order(this.order);
+    }
+  }
+
+  @Override
+  public long byteBudget()
+  {
+    return this.budget;
+  }
+
+  @Override
+  public long byteSize()
+  {
+    return this.size.get();
+  }
+
+  @Override
+  public int entryCount()
+  {
+    return this.entries.size();
+  }
+
+  @Override
+  public KTX1FileReadableType cached(
+    final URI source,
+    final KTX1FileReadableType file)
+  {
+    return new CachedKTX1(
+      this,
+      Objects.requireNonNull(source, "source"),
+      Objects.requireNonNull(file, "file")
+    );
+  }
+
+  @Override
+  public KTX2FileReadableType cached(
+    final URI source,
+    final KTX2FileReadableType file)
+  {
+    return new CachedKTX2(
+      this,
+      Objects.requireNonNull(source, "source"),
+      Objects.requireNonNull(file, "file")
+    );
+  }
+
+  @Override
+  public void invalidate(
+    final URI source)
+  {
+    Objects.requireNonNull(source, "source");
+
+    /*
+     * Every cached entry is in the clock, so a single pass over it finds
+     * all of the entries for the source.
+     */
+
+    synchronized (this.evictionLock) {
+      final var iterator = this.clock.iterator();
+      while (iterator.hasNext()) {
+        final var entry = iterator.next();
+        if (entry.key.source().equals(source)) {
+          iterator.remove();
+          this.remove(entry);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void clear()
+  {
+    synchronized (this.evictionLock) {
+      for (final var entry : this.clock) {
+        this.remove(entry);
+      }
+      this.clock.clear();
+    }
+  }
+
+  private interface LoaderType
+  {
+    ByteBuffer load()
+      throws IOException;
+  }
+
+  private ByteBuffer get(
+    final KTXCacheKey key,
+    final LoaderType loader)
+    throws IOException
+  {
+    /*
+     * Hits never take a lock: the map lookup is lock-free, and recording
+     * the access is a single volatile write of a flag, made only if the
+     * flag isn't already set.
+     */
+
+    final var existing = this.entries.get(key);
+    if (existing != null) {
+      if (!existing.referenced) {
+        existing.referenced = true;
+      }
+      return existing.view();
+    }
+
+    final var loaded = loader.load();
+    final var length = loaded.remaining();
+    if (length > this.budget) {
+      return loaded;
+    }
+
+    /*
+     * Cached data is copied off-heap into a read-only buffer. Concurrent
+     * misses for the same key may both load the data, but only the first
+     * copy is kept.
+     *
+     * The budget bounds the bytes that the cache itself retains. Direct
+     * buffers can't be freed explicitly, and views of evicted entries may
+     * still be held by callers, so the memory of an evicted entry is
+     * released when the garbage collector finds it unreachable. The JVM's
+     * own direct memory limit (-XX:MaxDirectMemorySize) still applies,
+     * and allocation triggers a collection when that limit is reached.
+     */
+
+    final var copy = ByteBuffer.allocateDirect(length);
+    copy.put(loaded.duplicate());
+    copy.flip();
+
+    final var entry =
+      new Entry(key, copy.asReadOnlyBuffer(), loaded.order());
+
+    synchronized (this.evictionLock) {
+      final var previous = this.entries.putIfAbsent(key, entry);
+      if (previous != null) {
+        return previous.view();
+      }
+
+      this.clock.addLast(entry);
+      if (this.size.addAndGet(length) > this.budget) {
+        this.evict();
+      }
+    }
+    return entry.view();
+  }
+
+  private void remove(
+    final Entry entry)
+  {
+    if (this.entries.remove(entry.key, entry)) {
+      this.size.addAndGet(-entry.data.capacity());
+    }
+  }
+
+  private void evict()
+  {
+    /*
+     * Eviction approximates least-recently-used order with the CLOCK
+     * algorithm. Entries are kept in insertion order; an entry at the
+     * head that has been used since it was last examined has its flag
+     * cleared and is moved to the tail, and the first entry that has not
+     * been used is evicted. Each miss that pushes the cache over budget
+     * therefore does work proportional to the entries it passes over,
+     * rather than sorting every entry.
+     */
+
+    while (this.size.get() > this.budget) {
+      final var candidate = this.clock.pollFirst();
+      if (candidate == null) {
+        return;
+      }
+      if (candidate.referenced) {
+        candidate.referenced = false;
+        this.clock.addLast(candidate);
+        continue;
+      }
+      this.remove(candidate);
+    }
+  }
+
+  private static final class CachedKTX1 implements KTX1FileReadableType
+  {
+    private final KTXSubImageCache cache;
+    private final URI source;
+    private final KTX1FileReadableType file;
+
+    CachedKTX1(
+      final KTXSubImageCache inCache,
+      final URI inSource,
+      final KTX1FileReadableType inFile)
+    {
+      this.cache = inCache;
+      this.source = inSource;
+      this.file = inFile;
+    }
+
+    @Override
+    public KTX1Header header()
+    {
+      return this.file.header();
+    }
+
+    @Override
+    public KTXKeyValueDataType keyValues()
+    {
+      return this.file.keyValues();
+    }
+
+    @Override
+    public Map<String, String> keyValueData()
+    {
+      return this.file.keyValueData();
+    }
+
+    @Override
+    public List<KTX1SubImage> subImages()
+    {
+      return this.file.subImages();
+    }
+
+    @Override
+    public Optional<KTX1SubImage> subImage(
+      final int mipMapLevel,
+      final int arrayElement,
+      final int faceIndex,
+      final int zSlice)
+    {
+      return this.file.subImage(mipMapLevel, arrayElement, faceIndex, zSlice);
+    }
+
+    @Override
+    public ByteBuffer subImageData(
+      final KTX1SubImage subImage)
+      throws IOException
+    {
+      Objects.requireNonNull(subImage, "subImage");
+
+      final var key =
+        new KTXCacheKey(
+          this.source,
+          subImage.mipMapLevel(),
+          subImage.arrayElement(),
+          subImage.faceIndex(),
+          subImage.zSlice()
+        );
+      return this.cache.get(key, () -> this.file.subImageData(subImage));
+    }
+
+    @Override
+    public void subImageDataNativeOrder(
+      final KTX1SubImage subImage,
+      final ByteBuffer target)
+      throws IOException
+    {
+      this.file.subImageDataNativeOrder(subImage, target);
+    }
+
+    @Override
+    public void subImageDataBatch(
+      final List<KTX1SubImage> subImages,
+      final List<ByteBuffer> targets)
+      throws IOException
+    {
+      this.file.subImageDataBatch(subImages, targets);
+    }
+
+    @Override
+    public long subImageTransferTo(
+      final KTX1SubImage subImage,
+      final WritableByteChannel target)
+      throws IOException
+    {
+      return this.file.subImageTransferTo(subImage, target);
+    }
+
+    @Override
+    public long subImagesTransferTo(
+      final List<KTX1SubImage> subImages,
+      final WritableByteChannel target)
+      throws IOException
+    {
+      return this.file.subImagesTransferTo(subImages, target);
+    }
+
+    @Override
+    public CompletableFuture<ByteBuffer> subImageDataAsync(
+      final KTX1SubImage subImage,
+      final ByteBuffer target)
+    {
+      return this.file.subImageDataAsync(subImage, target);
+    }
+
+    @Override
+    public void close()
+      throws IOException
+    {
+      this.file.close();
+    }
+  }
+
+  private static final class CachedKTX2 implements KTX2FileReadableType
+  {
+    private final KTXSubImageCache cache;
+    private final URI source;
+    private final KTX2FileReadableType file;
+
+    CachedKTX2(
+      final KTXSubImageCache inCache,
+      final URI inSource,
+      final KTX2FileReadableType inFile)
+    {
+      this.cache = inCache;
+      this.source = inSource;
+      this.file = inFile;
+    }
+
+    @Override
+    public KTX2Header header()
+    {
+      return this.file.header();
+    }
+
+    @Override
+    public KTXKeyValueDataType keyValues()
+    {
+      return this.file.keyValues();
+    }
+
+    @Override
+    public Map<String, String> keyValueData()
+    {
+      return this.file.keyValueData();
+    }
+
+    @Override
+    public KTX2Index index()
+    {
+      return this.file.index();
+    }
+
+    @Override
+    public List<KTX2Level> levels()
+    {
+      return this.file.levels();
+    }
+
+    @Override
+    public ByteBuffer levelData(
+      final KTX2Level level)
+      throws IOException
+    {
+      Objects.requireNonNull(level, "level");
+
+      final var key =
+        new KTXCacheKey(this.source, level.mipMapLevel(), 0, 0, 0);
+      return this.cache.get(key, () -> this.file.levelData(level));
+    }
+
+    @Override
+    public SeekableByteChannel levelDataChannel(
+      final KTX2Level level)
+      throws IOException
+    {
+      return this.file.levelDataChannel(level);
+    }
+
+    @Override
+    public long levelTransferTo(
+      final KTX2Level level,
+      final WritableByteChannel target)
+      throws IOException
+    {
+      return this.file.levelTransferTo(level, target);
+    }
+
+    @Override
+    public long levelsTransferTo(
+      final List<KTX2Level> levels,
+      final WritableByteChannel target)
+      throws IOException
+    {
+      return this.file.levelsTransferTo(levels, target);
+    }
+
+    @Override
+    public CompletableFuture<ByteBuffer> levelDataAsync(
+      final KTX2Level level,
+      final ByteBuffer target)
+    {
+      return this.file.levelDataAsync(level, target);
+    }
+
+    @Override
+    public void close()
+      throws IOException
+    {
+      this.file.close();
+    }
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jaion.vanilla;
+
+import com.io7m.jaion.api.KTX1WriteRequest;
+import com.io7m.jaion.api.KTX2WriteRequest;
+import com.io7m.jaion.api.KTXWriterFactoryType;
+import com.io7m.jaion.api.KTXWriterType;
+import com.io7m.jaion.vanilla.internal.KTX1Writer;
+import com.io7m.jaion.vanilla.internal.KTX2Writer;
+
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+
+public final class KTXWriterFactory implements KTXWriterFactoryType
+{
+  private final ForkJoinPool pool;
+
+  public KTXWriterFactory()
+  {
+    this(ForkJoinPool.commonPool());
+  }
+
+  public KTXWriterFactory(
+    final ForkJoinPool inPool)
+  {
+    this.pool = Objects.requireNonNull(inPool, "pool");
+  }
+
+  @Override
+  public KTXWriterType createKTX1(
+    final KTX1WriteRequest request)
+  {
+    Objects.requireNonNull(request, "request");
+    return new KTX1Writer(request);
+  }
+
+  @Override
+  public KTXWriterType createKTX2(
+    final KTX2WriteRequest request)
+  {
+    Objects.requireNonNull(request, "request");
+    return new KTX2Writer(request, this.pool);
+  }
+}
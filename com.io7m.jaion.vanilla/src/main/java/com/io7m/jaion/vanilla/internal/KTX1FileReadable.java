@@ -18,33 +18,70 @@ package com.io7m.jaion.vanilla.internal;
 
 import com.io7m.jaion.api.KTX1FileReadableType;
 import com.io7m.jaion.api.KTX1Header;
-import com.io7m.jbssio.api.BSSReaderRandomAccessType;
+import com.io7m.jaion.api.KTX1SubImage;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public final class KTX1FileReadable implements KTX1FileReadableType
 {
-  private final BSSReaderRandomAccessType reader;
+  private final Closeable resource;
+  private final KTXDataSourceType data;
   private final KTX1Header header;
-  private final Map<String, String> keyValues;
-  private final long dataOffset;
+  private final KTXKeyValueData keyValues;
+  private final KTX1SubImageIndex subImages;
 
   KTX1FileReadable(
-    final BSSReaderRandomAccessType inReader,
+    final Closeable inResource,
+    final KTXDataSourceType inData,
     final KTX1Header inHeader,
-    final Map<String, String> inKeyValues,
-    final long inDataOffset)
+    final KTXKeyValueData inKeyValues,
+    final KTX1SubImageIndex inSubImages)
   {
-    this.reader =
-      Objects.requireNonNull(inReader, "reader");
+    this.resource =
+      Objects.requireNonNull(inResource, "resource");
+    this.data =
+      Objects.requireNonNull(inData, "data");
     this.header =
       Objects.requireNonNull(inHeader, "header");
     this.keyValues =
-      Map.copyOf(Objects.requireNonNull(inKeyValues, "keyValues"));
-    this.dataOffset =
-      inDataOffset;
+      Objects.requireNonNull(inKeyValues, "keyValues");
+    this.subImages =
+      Objects.requireNonNull(inSubImages, "subImages");
+  }
+
+  private static String errorSubImageTooLarge(
+    final KTX1SubImage subImage)
+  {
+    final var lineSeparator = System.lineSeparator();
+    final var text = new StringBuilder(128);
+    text.append("Sub-image too large.");
+    text.append(lineSeparator);
+    text.append("  The sub-image at file offset 0x");
+    text.append(Long.toUnsignedString(subImage.absoluteByteOffset(), 16));
+    text.append(" has a size of ");
+    text.append(Long.toUnsignedString(subImage.imageSizeBytes()));
+    text.append(" bytes.");
+    text.append(lineSeparator);
+    text.append("  Sub-images larger than ");
+    text.append(Integer.MAX_VALUE);
+    text.append(" bytes cannot be exposed as a single buffer.");
+    text.append(lineSeparator);
+    return text.toString();
+  }
+
+  KTX1SubImageIndex subImageIndex()
+  {
+    return this.subImages;
   }
 
   @Override
@@ -54,15 +91,262 @@ public final class KTX1FileReadable implements KTX1FileReadableType
   }
 
   @Override
-  public Map<String, String> keyValueData()
+  public KTXKeyValueData keyValues()
   {
     return this.keyValues;
   }
 
+  @Override
+  public Map<String, String> keyValueData()
+  {
+    return this.keyValues.asStrings();
+  }
+
+  @Override
+  public List<KTX1SubImage> subImages()
+  {
+    return this.subImages.asList();
+  }
+
+  @Override
+  public Optional<KTX1SubImage> subImage(
+    final int mipMapLevel,
+    final int arrayElement,
+    final int faceIndex,
+    final int zSlice)
+  {
+    final var index =
+      this.subImages.indexOf(mipMapLevel, arrayElement, faceIndex, zSlice);
+
+    if (index == -1) {
+      return Optional.empty();
+    }
+    return Optional.of(this.subImages.subImage(index));
+  }
+
+  @Override
+  public ByteBuffer subImageData(
+    final KTX1SubImage subImage)
+    throws IOException
+  {
+    Objects.requireNonNull(subImage, "subImage");
+
+    final var offset = subImage.absoluteByteOffset();
+    final var size = subImage.imageSizeBytes();
+    if (Long.compareUnsigned(size, Integer.MAX_VALUE) > 0) {
+      throw new IOException(errorSubImageTooLarge(subImage));
+    }
+
+    final var event = new KTXSubImageReadEvent();
+    event.begin();
+    final var result =
+      this.data.data(offset, (int) size)
+        .order(this.byteOrder());
+    KTXEvents.commitSubImageRead(event, "data", List.of(subImage));
+    return result;
+  }
+
+  @Override
+  public void subImageDataNativeOrder(
+    final KTX1SubImage subImage,
+    final ByteBuffer target)
+    throws IOException
+  {
+    Objects.requireNonNull(subImage, "subImage");
+    Objects.requireNonNull(target, "target");
+
+    final var size = subImage.imageSizeBytes();
+    if (Long.compareUnsigned(size, Integer.MAX_VALUE) > 0) {
+      throw new IOException(errorSubImageTooLarge(subImage));
+    }
+
+    final var start = target.position();
+    if (size > target.remaining()) {
+      throw new IllegalArgumentException(
+        "Target buffer has %d bytes remaining, but %d bytes are required."
+          .formatted(
+            Integer.valueOf(target.remaining()),
+            Long.valueOf(size))
+      );
+    }
+
+    /*
+     * The image data is read straight into the target and then swapped
+     * in place, so no intermediate buffer is needed regardless of the
+     * kind of data source.
+     */
+
+    final var event = new KTXSubImageReadEvent();
+    event.begin();
+
+    final var window = target.slice(start, (int) size);
+    this.data.readScattering(
+      subImage.absoluteByteOffset(),
+      new ByteBuffer[]{window}
+    );
+    KTXByteSwap.toNativeOrder(
+      window.flip(),
+      this.byteOrder(),
+      this.elementSize()
+    );
+    target.position(start + (int) size);
+    KTXEvents.commitSubImageRead(event, "nativeOrder", List.of(subImage));
+  }
+
+  @Override
+  public void subImageDataBatch(
+    final List<KTX1SubImage> subImages,
+    final List<ByteBuffer> targets)
+    throws IOException
+  {
+    Objects.requireNonNull(subImages, "subImages");
+    Objects.requireNonNull(targets, "targets");
+
+    final var count = subImages.size();
+    if (count != targets.size()) {
+      throw new IllegalArgumentException(
+        "Sub-image count %d must match target count %d"
+          .formatted(
+            Integer.valueOf(count),
+            Integer.valueOf(targets.size()))
+      );
+    }
+
+    /*
+     * Each sub-image is read into a window of its target. Several
+     * sub-images may share a target, in which case they are placed one
+     * after another in the order given.
+     */
+
+    final var offsets = new long[count];
+    final var windows = new ByteBuffer[count];
+    final var cursors = new IdentityHashMap<ByteBuffer, Integer>();
+
+    for (int index = 0; index < count; ++index) {
+      final var subImage =
+        Objects.requireNonNull(subImages.get(index), "subImage");
+      final var target =
+        Objects.requireNonNull(targets.get(index), "target");
+
+      final var size = subImage.imageSizeBytes();
+      if (Long.compareUnsigned(size, Integer.MAX_VALUE) > 0) {
+        throw new IOException(errorSubImageTooLarge(subImage));
+      }
+
+      final var start =
+        cursors.getOrDefault(target, Integer.valueOf(target.position()))
+          .intValue();
+      if (size > target.limit() - start) {
+        throw new IllegalArgumentException(
+          "Target buffer has %d bytes remaining, but %d bytes are required."
+            .formatted(
+              Integer.valueOf(target.limit() - start),
+              Long.valueOf(size))
+        );
+      }
+
+      offsets[index] = subImage.absoluteByteOffset();
+      windows[index] = target.slice(start, (int) size);
+      cursors.put(target, Integer.valueOf(start + (int) size));
+    }
+
+    final var event = new KTXSubImageReadEvent();
+    event.begin();
+
+    final var runs =
+      KTXReadPlan.plan(offsets, windows, KTXReadPlan.GAP_MAXIMUM);
+    for (final var run : runs) {
+      this.data.readScattering(run.offset(), run.buffers());
+    }
+    KTXEvents.commitSubImageRead(event, "batch", subImages);
+
+    for (final var entry : cursors.entrySet()) {
+      entry.getKey().position(entry.getValue().intValue());
+    }
+  }
+
+  @Override
+  public long subImageTransferTo(
+    final KTX1SubImage subImage,
+    final WritableByteChannel target)
+    throws IOException
+  {
+    return this.subImagesTransferTo(List.of(subImage), target);
+  }
+
+  @Override
+  public long subImagesTransferTo(
+    final List<KTX1SubImage> subImages,
+    final WritableByteChannel target)
+    throws IOException
+  {
+    Objects.requireNonNull(subImages, "subImages");
+    Objects.requireNonNull(target, "target");
+
+    final var count = subImages.size();
+    final var offsets = new long[count];
+    final var sizes = new long[count];
+    for (int index = 0; index < count; ++index) {
+      final var subImage =
+        Objects.requireNonNull(subImages.get(index), "subImage");
+      offsets[index] = subImage.absoluteByteOffset();
+      sizes[index] = subImage.imageSizeBytes();
+    }
+
+    final var event = new KTXSubImageReadEvent();
+    event.begin();
+    final var sent =
+      KTXDataSourceType.transferRanges(this.data, offsets, sizes, target);
+    KTXEvents.commitSubImageRead(event, "transfer", subImages);
+    return sent;
+  }
+
+  @Override
+  public CompletableFuture<ByteBuffer> subImageDataAsync(
+    final KTX1SubImage subImage,
+    final ByteBuffer target)
+  {
+    Objects.requireNonNull(subImage, "subImage");
+
+    final var event = new KTXSubImageReadEvent();
+    event.begin();
+    return KTXDataSourceType.readInto(
+      this.data,
+      subImage.absoluteByteOffset(),
+      subImage.imageSizeBytes(),
+      target
+    ).thenApply(result -> {
+      KTXEvents.commitSubImageRead(event, "async", List.of(subImage));
+      return result;
+    });
+  }
+
+  private int elementSize()
+  {
+    /*
+     * The specification only permits a glTypeSize of 1, 2, or 4. Any
+     * other value is treated as data that must not be swapped.
+     */
+
+    final var typeSize = this.header.glTypeSize();
+    if (typeSize == 2L || typeSize == 4L) {
+      return (int) typeSize;
+    }
+    return 1;
+  }
+
+  private ByteOrder byteOrder()
+  {
+    if (this.header.isBigEndian()) {
+      return ByteOrder.BIG_ENDIAN;
+    }
+    return ByteOrder.LITTLE_ENDIAN;
+  }
+
   @Override
   public void close()
     throws IOException
   {
-    this.reader.close();
+    this.resource.close();
   }
 }
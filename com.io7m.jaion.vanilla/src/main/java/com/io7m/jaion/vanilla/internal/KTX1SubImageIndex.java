@@ -0,0 +1,283 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.vanilla.internal;
+
+import com.io7m.jaion.api.KTX1Header;
+import com.io7m.jaion.api.KTX1SubImage;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+public final class KTX1SubImageIndex
+{
+  private final int mipMapCount;
+  private final int arrayElementCount;
+  private final int faceCount;
+  private final int pixelDepth;
+  private final int[] levelStarts;
+  private final long[] table;
+
+  KTX1SubImageIndex(
+    final int inMipMapCount,
+    final int inArrayElementCount,
+    final int inFaceCount,
+    final int inPixelDepth)
+  {
+    this.mipMapCount = inMipMapCount;
+    this.arrayElementCount = inArrayElementCount;
+    this.faceCount = inFaceCount;
+    this.pixelDepth = inPixelDepth;
+    this.levelStarts = new int[inMipMapCount + 1];
+
+    /*
+     * The offset and size of each sub-image are stored as consecutive
+     * pairs in a single array, ordered by level, array element, face, and
+     * z slice. Records are only created on request.
+     */
+
+    final var perSlice = (long) inArrayElementCount * (long) inFaceCount;
+    long count = 0L;
+    for (int level = 0; level < inMipMapCount; ++level) {
+      this.levelStarts[level] = (int) count;
+      count += perSlice * this.depthOf(level);
+    }
+    this.levelStarts[inMipMapCount] = (int) count;
+    this.table = new long[(int) (count * 2L)];
+  }
+
+  static KTX1SubImageIndex forHeader(
+    final KTX1Header header)
+  {
+    return new KTX1SubImageIndex(
+      (int) KTXHeaders.minUnsigned(header.numberOfMipmapLevels(), 1L),
+      (int) KTXHeaders.minUnsigned(header.numberOfArrayElements(), 1L),
+      (int) KTXHeaders.minUnsigned(header.numberOfFaces(), 1L),
+      (int) KTXHeaders.minUnsigned(header.pixelDepth(), 1L)
+    );
+  }
+
+  static long countFor(
+    final long mipMapCount,
+    final long arrayElementCount,
+    final long faceCount,
+    final long pixelDepth)
+  {
+    /*
+     * The counts come from untrusted headers, so the arithmetic saturates
+     * rather than overflowing into a count that would pass validation.
+     * Depths are unsigned 32-bit values, so every level past the 32nd has
+     * a depth of one.
+     */
+
+    try {
+      final var perSlice = Math.multiplyExact(arrayElementCount, faceCount);
+      final var shifted = Math.min(mipMapCount, (long) Integer.SIZE);
+      long count = 0L;
+      for (int level = 0; level < shifted; ++level) {
+        final var depth = Math.max(pixelDepth >>> level, 1L);
+        count = Math.addExact(count, Math.multiplyExact(perSlice, depth));
+      }
+      final var rest = Math.multiplyExact(mipMapCount - shifted, perSlice);
+      return Math.addExact(count, rest);
+    } catch (final ArithmeticException e) {
+      return Long.MAX_VALUE;
+    }
+  }
+
+  int depthOf(
+    final int mipMapLevel)
+  {
+    if (mipMapLevel >= Integer.SIZE) {
+      return 1;
+    }
+    return Math.max(this.pixelDepth >>> mipMapLevel, 1);
+  }
+
+  int levelStart(
+    final int mipMapLevel)
+  {
+    return this.levelStarts[mipMapLevel];
+  }
+
+  int levelSubImageCount(
+    final int mipMapLevel)
+  {
+    return this.levelStarts[mipMapLevel + 1] - this.levelStarts[mipMapLevel];
+  }
+
+  void set(
+    final int index,
+    final long offset,
+    final long size)
+  {
+    this.table[index * 2] = offset;
+    this.table[index * 2 + 1] = size;
+  }
+
+  long setLevel(
+    final int mipMapLevel,
+    final long dataOffset,
+    final long imageSize,
+    final boolean cubeMap)
+  {
+    final var levelStart = this.levelStarts[mipMapLevel];
+
+    /*
+     * For non-array cube maps, imageSize is the size of a single face,
+     * and each face is followed by cubePadding to a multiple of four
+     * bytes.
+     */
+
+    if (cubeMap) {
+      final var faceStride = KTXParser.alignUp(imageSize, 4L);
+      for (int faceIndex = 0; faceIndex < 6; ++faceIndex) {
+        this.set(
+          levelStart + faceIndex,
+          dataOffset + faceIndex * faceStride,
+          imageSize
+        );
+      }
+      return dataOffset + 6L * faceStride;
+    }
+
+    /*
+     * Otherwise, the imageSize field covers every array element, face, and
+     * z slice of the current mipmap level, so each sub-image occupies an
+     * equal share of it.
+     */
+
+    final var levelCount = this.levelSubImageCount(mipMapLevel);
+    final var subImageSize = imageSize / levelCount;
+
+    var offset = dataOffset;
+    for (int subImage = 0; subImage < levelCount; ++subImage) {
+      this.set(levelStart + subImage, offset, subImageSize);
+      offset += subImageSize;
+    }
+    return KTXParser.alignUp(dataOffset + imageSize, 4L);
+  }
+
+  public int size()
+  {
+    return this.levelStarts[this.mipMapCount];
+  }
+
+  public long offset(
+    final int index)
+  {
+    return this.table[index * 2];
+  }
+
+  public long sizeOf(
+    final int index)
+  {
+    return this.table[index * 2 + 1];
+  }
+
+  public int indexOf(
+    final int mipMapLevel,
+    final int arrayElement,
+    final int faceIndex,
+    final int zSlice)
+  {
+    if (mipMapLevel < 0 || mipMapLevel >= this.mipMapCount) {
+      return -1;
+    }
+    if (arrayElement < 0 || arrayElement >= this.arrayElementCount) {
+      return -1;
+    }
+    if (faceIndex < 0 || faceIndex >= this.faceCount) {
+      return -1;
+    }
+
+    final var depth = this.depthOf(mipMapLevel);
+    if (zSlice < 0 || zSlice >= depth) {
+      return -1;
+    }
+
+    return this.levelStarts[mipMapLevel]
+      + ((arrayElement * this.faceCount) + faceIndex) * depth
+      + zSlice;
+  }
+
+  public KTX1SubImage subImage(
+    final int index)
+  {
+    /*
+     * Every level contains at least one sub-image, so the level starts are
+     * strictly increasing and a miss in the search lands just after the
+     * level that contains the index.
+     */
+
+    final var levelSearch =
+      Arrays.binarySearch(this.levelStarts, 0, this.mipMapCount, index);
+    final var level =
+      levelSearch >= 0 ? levelSearch : -levelSearch - 2;
+
+    final var depth = this.depthOf(level);
+    final var withinLevel = index - this.levelStarts[level];
+    final var zSlice = withinLevel % depth;
+    final var withinSlices = withinLevel / depth;
+    final var faceIndex = withinSlices % this.faceCount;
+    final var arrayElement = withinSlices / this.faceCount;
+
+    return new KTX1SubImage(
+      this.offset(index),
+      this.sizeOf(index),
+      level,
+      arrayElement,
+      faceIndex,
+      zSlice
+    );
+  }
+
+  public List<KTX1SubImage> asList()
+  {
+    return new SubImageList(this);
+  }
+
+  private static final class SubImageList
+    extends AbstractList<KTX1SubImage> implements RandomAccess
+  {
+    private final KTX1SubImageIndex index;
+
+    SubImageList(
+      final KTX1SubImageIndex inIndex)
+    {
+      this.index = inIndex;
+    }
+
+    @Override
+    public KTX1SubImage get(
+      final int i)
+    {
+      if (i < 0 || i >= this.index.size()) {
+        throw new IndexOutOfBoundsException(i);
+      }
+      return this.index.subImage(i);
+    }
+
+    @Override
+    public int size()
+    {
+      return this.index.size();
+    }
+  }
+}
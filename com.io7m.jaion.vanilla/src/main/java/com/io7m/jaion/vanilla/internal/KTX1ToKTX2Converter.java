@@ -0,0 +1,564 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jaion.vanilla.internal;
+
+import com.io7m.jaion.api.KTX1FileReadableType;
+import com.io7m.jaion.api.KTX1Header;
+import com.io7m.jaion.api.KTX1SubImage;
+import com.io7m.jaion.api.KTX2Header;
+import com.io7m.jaion.api.KTXParseRequest;
+import com.io7m.jaion.api.KTXParserFactoryType;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+public final class KTX1ToKTX2Converter
+{
+  private static final int CHANNEL_ALPHA = 15;
+  private static final int QUALIFIER_LINEAR = 0x10;
+  private static final int QUALIFIER_FLOAT = 0xC0;
+  private static final int FLOAT_MINUS_ONE = 0xBF800000;
+  private static final int FLOAT_ONE = 0x3F800000;
+  private static final String KEY_ORIENTATION = "KTXorientation";
+  private static final String KEY_WRITER = "KTXwriter";
+
+  private static final int[] R = {0};
+  private static final int[] RG = {0, 1};
+  private static final int[] RGB = {0, 1, 2};
+  private static final int[] RGBA = {0, 1, 2, CHANNEL_ALPHA};
+
+  /*
+   * glInternalFormat to VkFormat, for the uncompressed formats that can be
+   * described by a DFD with one sample per channel.
+   */
+
+  private static final Map<Long, Format> FORMATS = Map.ofEntries(
+    unorm(0x8229L, 9, 8, R, false),
+    unorm(0x822BL, 16, 8, RG, false),
+    unorm(0x8051L, 23, 8, RGB, false),
+    unorm(0x8C41L, 29, 8, RGB, true),
+    unorm(0x8058L, 37, 8, RGBA, false),
+    unorm(0x8C43L, 43, 8, RGBA, true),
+    unorm(0x822AL, 70, 16, R, false),
+    sfloat(0x822DL, 76, 16, R),
+    sfloat(0x881AL, 97, 16, RGBA),
+    format(0x8236L, 98, 32, R, 0, 0, 1, false),
+    sfloat(0x822EL, 100, 32, R),
+    sfloat(0x8814L, 109, 32, RGBA)
+  );
+
+  private final KTXParserFactoryType parsers;
+  private final Path source;
+  private final Path target;
+
+  public KTX1ToKTX2Converter(
+    final KTXParserFactoryType inParsers,
+    final Path inSource,
+    final Path inTarget)
+  {
+    this.parsers =
+      Objects.requireNonNull(inParsers, "parsers");
+    this.source =
+      Objects.requireNonNull(inSource, "source");
+    this.target =
+      Objects.requireNonNull(inTarget, "target");
+  }
+
+  private record Format(
+    int vkFormat,
+    int channelBits,
+    int[] channels,
+    int qualifiers,
+    int sampleLower,
+    int sampleUpper,
+    boolean srgb)
+  {
+    int bytesPerPixel()
+    {
+      return (this.channels.length * this.channelBits) / 8;
+    }
+  }
+
+  private static Map.Entry<Long, Format> format(
+    final long glInternalFormat,
+    final int vkFormat,
+    final int channelBits,
+    final int[] channels,
+    final int qualifiers,
+    final int sampleLower,
+    final int sampleUpper,
+    final boolean srgb)
+  {
+    return Map.entry(
+      Long.valueOf(glInternalFormat),
+      new Format(
+        vkFormat,
+        channelBits,
+        channels,
+        qualifiers,
+        sampleLower,
+        sampleUpper,
+        srgb
+      )
+    );
+  }
+
+  private static Map.Entry<Long, Format> unorm(
+    final long glInternalFormat,
+    final int vkFormat,
+    final int channelBits,
+    final int[] channels,
+    final boolean srgb)
+  {
+    final var upper = (int) ((1L << channelBits) - 1L);
+    return format(
+      glInternalFormat, vkFormat, channelBits, channels, 0, 0, upper, srgb);
+  }
+
+  private static Map.Entry<Long, Format> sfloat(
+    final long glInternalFormat,
+    final int vkFormat,
+    final int channelBits,
+    final int[] channels)
+  {
+    return format(
+      glInternalFormat,
+      vkFormat,
+      channelBits,
+      channels,
+      QUALIFIER_FLOAT,
+      FLOAT_MINUS_ONE,
+      FLOAT_ONE,
+      false
+    );
+  }
+
+  private static String errorNotKTX1(
+    final Path file)
+  {
+    final var lineSeparator = System.lineSeparator();
+    final var text = new StringBuilder(128);
+    text.append("Conversion source is not a KTX1 file.");
+    text.append(lineSeparator);
+    text.append("  File: ");
+    text.append(file);
+    text.append(lineSeparator);
+    return text.toString();
+  }
+
+  private static String errorUnsupportedFormat(
+    final KTX1Header header)
+  {
+    final var lineSeparator = System.lineSeparator();
+    final var text = new StringBuilder(128);
+    text.append("Unsupported format for conversion.");
+    text.append(lineSeparator);
+    text.append("  glInternalFormat: 0x");
+    text.append(Long.toUnsignedString(header.glInternalFormat(), 16));
+    text.append(lineSeparator);
+    text.append("  Only uncompressed formats with a known VkFormat are ");
+    text.append("supported.");
+    text.append(lineSeparator);
+    return text.toString();
+  }
+
+  private static String errorByteOrder(
+    final KTX1Header header)
+  {
+    final var lineSeparator = System.lineSeparator();
+    final var text = new StringBuilder(128);
+    text.append("Unsupported byte order for conversion.");
+    text.append(lineSeparator);
+    text.append("  The file is big-endian with a glTypeSize of ");
+    text.append(Long.toUnsignedString(header.glTypeSize()));
+    text.append('.');
+    text.append(lineSeparator);
+    text.append("  KTX2 image data is little-endian, and converting it ");
+    text.append("would require decoding the image data.");
+    text.append(lineSeparator);
+    return text.toString();
+  }
+
+  private static String errorSubImageSize(
+    final KTX1SubImage subImage,
+    final long expected)
+  {
+    final var lineSeparator = System.lineSeparator();
+    final var text = new StringBuilder(128);
+    text.append("Sub-image size mismatch.");
+    text.append(lineSeparator);
+    text.append("  Sub-image (level ");
+    text.append(subImage.mipMapLevel());
+    text.append(", element ");
+    text.append(subImage.arrayElement());
+    text.append(", face ");
+    text.append(subImage.faceIndex());
+    text.append(", slice ");
+    text.append(subImage.zSlice());
+    text.append(") has a size of ");
+    text.append(Long.toUnsignedString(subImage.imageSizeBytes()));
+    text.append(" bytes.");
+    text.append(lineSeparator);
+    text.append("  The header implies a size of ");
+    text.append(expected);
+    text.append(" bytes.");
+    text.append(lineSeparator);
+    return text.toString();
+  }
+
+  public void execute()
+    throws IOException
+  {
+    try (var input = FileChannel.open(this.source, READ)) {
+      final var request =
+        KTXParseRequest.builder(input, this.source.toUri())
+          .build();
+
+      try (var parser = this.parsers.create(request)) {
+        try (var readable = parser.execute()) {
+          if (!(readable instanceof KTX1FileReadableType ktx1)) {
+            throw new IOException(errorNotKTX1(this.source));
+          }
+
+          final var header = ktx1.header();
+          final var format =
+            FORMATS.get(Long.valueOf(header.glInternalFormat()));
+          if (format == null) {
+            throw new IOException(errorUnsupportedFormat(header));
+          }
+          if (header.isBigEndian() && header.glTypeSize() > 1L) {
+            throw new IOException(errorByteOrder(header));
+          }
+
+          try (var output = this.openTarget()) {
+            this.convert(input, output, ktx1, format);
+          }
+        }
+      }
+    }
+  }
+
+  private FileChannel openTarget()
+    throws IOException
+  {
+    return FileChannel.open(this.target, CREATE, WRITE, TRUNCATE_EXISTING);
+  }
+
+  private void convert(
+    final FileChannel input,
+    final FileChannel output,
+    final KTX1FileReadableType ktx1,
+    final Format format)
+    throws IOException
+  {
+    final var header = ktx1.header();
+    final var subImages = ktx1.subImages();
+    final var bytesPerPixel = format.bytesPerPixel();
+
+    /*
+     * KTX1 pads every row of uncompressed image data to a multiple of four
+     * bytes, and pads cube map faces and mipmap levels. KTX2 has none of
+     * that padding within a level, so the size of each level is the sum
+     * of the unpadded sub-images that make it up. Some writers omit the
+     * row padding, so the row stride is inferred from the image size.
+     */
+
+    final var levelCount =
+      (int) KTXHeaders.minUnsigned(header.numberOfMipmapLevels(), 1L);
+    final var levelSizes = new long[levelCount];
+    for (final var subImage : subImages) {
+      final var level = subImage.mipMapLevel();
+      rowStride(header, subImage, bytesPerPixel);
+      levelSizes[level] +=
+        rowBytes(header, level, bytesPerPixel) * rows(header, level);
+    }
+
+    final var dfd = dataFormatDescriptor(format);
+    final var keyValues =
+      KTXKeyValueData.encode(keyValuesOf(ktx1), ByteOrder.LITTLE_ENDIAN);
+
+    final var dataStart =
+      KTX2HeaderWriter.dataStart(
+        levelCount, dfd.remaining(), keyValues.remaining());
+    final var alignment =
+      KTX2Writer.levelAlignmentFor(bytesPerPixel);
+
+    final var offsets = new long[levelCount];
+    var position = dataStart;
+    for (int level = levelCount - 1; level >= 0; --level) {
+      position = KTXParser.alignUp(position, alignment);
+      offsets[level] = position;
+      position += levelSizes[level];
+    }
+
+    final var ktx2Header =
+      new KTX2Header(
+        format.vkFormat(),
+        header.glTypeSize(),
+        header.pixelWidth(),
+        header.pixelHeight(),
+        header.pixelDepth(),
+        header.numberOfArrayElements(),
+        header.numberOfFaces(),
+        header.numberOfMipmapLevels(),
+        0L
+      );
+
+    final var prefix = new KTXGatheringOutput(output);
+    KTX2HeaderWriter.write(
+      prefix,
+      ktx2Header,
+      dfd,
+      keyValues,
+      offsets,
+      levelSizes,
+      levelSizes
+    );
+    prefix.flush();
+
+    /*
+     * The image data is copied from file to file with transferTo, which
+     * lets the operating system move the bytes without them ever passing
+     * through the Java heap. Where rows are not padded, which is the
+     * common case, each sub-image is a single transfer.
+     */
+
+    for (int level = levelCount - 1; level >= 0; --level) {
+      final var padding = offsets[level] - output.position();
+      writeFully(output, ByteBuffer.allocate((int) padding));
+
+      final var rowBytes = rowBytes(header, level, bytesPerPixel);
+      final var rows = rows(header, level);
+
+      for (final var subImage : subImages) {
+        if (subImage.mipMapLevel() != level) {
+          continue;
+        }
+
+        final var rowStride = rowStride(header, subImage, bytesPerPixel);
+        final var offset = subImage.absoluteByteOffset();
+        if (rowBytes == rowStride) {
+          transferFully(input, offset, rowBytes * rows, output);
+        } else {
+          for (long row = 0L; row < rows; ++row) {
+            final var rowOffset = offset + row * rowStride;
+            transferFully(input, rowOffset, rowBytes, output);
+          }
+        }
+      }
+    }
+  }
+
+  private static long rowBytes(
+    final KTX1Header header,
+    final int level,
+    final int bytesPerPixel)
+  {
+    return Math.max(header.pixelWidth() >>> level, 1L) * bytesPerPixel;
+  }
+
+  private static long rowStride(
+    final KTX1Header header,
+    final KTX1SubImage subImage,
+    final int bytesPerPixel)
+    throws IOException
+  {
+    final var level = subImage.mipMapLevel();
+    final var rowBytes = rowBytes(header, level, bytesPerPixel);
+    final var rowPadded = KTXParser.alignUp(rowBytes, 4L);
+    final var rows = rows(header, level);
+    final var size = subImage.imageSizeBytes();
+
+    if (size == rowPadded * rows) {
+      return rowPadded;
+    }
+    if (size == rowBytes * rows) {
+      return rowBytes;
+    }
+    throw new IOException(errorSubImageSize(subImage, rowPadded * rows));
+  }
+
+  private static long rows(
+    final KTX1Header header,
+    final int level)
+  {
+    return Math.max(header.pixelHeight() >>> level, 1L);
+  }
+
+  private static void writeFully(
+    final FileChannel output,
+    final ByteBuffer buffer)
+    throws IOException
+  {
+    while (buffer.hasRemaining()) {
+      output.write(buffer);
+    }
+  }
+
+  private static void transferFully(
+    final FileChannel input,
+    final long offset,
+    final long size,
+    final FileChannel output)
+    throws IOException
+  {
+    var position = offset;
+    var remaining = size;
+    while (remaining > 0L) {
+      final var transferred = input.transferTo(position, remaining, output);
+      if (transferred <= 0L) {
+        throw new EOFException(
+          "Unexpected end of file at offset 0x%s"
+            .formatted(Long.toUnsignedString(position, 16))
+        );
+      }
+      position += transferred;
+      remaining -= transferred;
+    }
+  }
+
+  private static ByteBuffer dataFormatDescriptor(
+    final Format format)
+  {
+    final var channels = format.channels();
+    final var blockSize = 24 + 16 * channels.length;
+    final var buffer =
+      ByteBuffer.allocate(4 + blockSize)
+        .order(ByteOrder.LITTLE_ENDIAN);
+
+    /*
+     * A single basic descriptor block: RGBSDA colour model, BT.709
+     * primaries, a 1x1x1x1 texel block, and one sample per channel.
+     */
+
+    buffer.putInt(4 + blockSize);
+    buffer.putInt(0);
+    buffer.putShort((short) 2);
+    buffer.putShort((short) blockSize);
+    buffer.put((byte) 1);
+    buffer.put((byte) 1);
+    buffer.put((byte) (format.srgb() ? 2 : 1));
+    buffer.put((byte) 0);
+    buffer.putInt(0);
+    buffer.put((byte) format.bytesPerPixel());
+    buffer.put(new byte[7]);
+
+    for (int index = 0; index < channels.length; ++index) {
+      final var channel = channels[index];
+      var qualifiers = format.qualifiers();
+      if (format.srgb() && channel == CHANNEL_ALPHA) {
+        qualifiers |= QUALIFIER_LINEAR;
+      }
+
+      buffer.putShort((short) (index * format.channelBits()));
+      buffer.put((byte) (format.channelBits() - 1));
+      buffer.put((byte) (channel | qualifiers));
+      buffer.putInt(0);
+      buffer.putInt(format.sampleLower());
+      buffer.putInt(format.sampleUpper());
+    }
+    return buffer.flip();
+  }
+
+  private static List<Map.Entry<String, ByteBuffer>> keyValuesOf(
+    final KTX1FileReadableType ktx1)
+  {
+    final var keyValues = ktx1.keyValues();
+    final var entries = new ArrayList<Map.Entry<String, ByteBuffer>>();
+    var hasWriter = false;
+
+    for (int index = 0; index < keyValues.size(); ++index) {
+      final var key = keyValues.key(index);
+      var value = keyValues.value(index);
+      if (KEY_ORIENTATION.equals(key)) {
+        value = orientationOf(value);
+      }
+      hasWriter |= KEY_WRITER.equals(key);
+      entries.add(new AbstractMap.SimpleImmutableEntry<>(key, value));
+    }
+
+    if (!hasWriter) {
+      entries.add(
+        new AbstractMap.SimpleImmutableEntry<>(
+          KEY_WRITER,
+          ByteBuffer.wrap("jaion\0".getBytes(UTF_8))
+        )
+      );
+    }
+
+    /*
+     * KTX2 requires the keys to be sorted by their UTF-8 bytes.
+     */
+
+    entries.sort((x, y) -> Arrays.compareUnsigned(
+      x.getKey().getBytes(UTF_8),
+      y.getKey().getBytes(UTF_8)
+    ));
+    return entries;
+  }
+
+  private static ByteBuffer orientationOf(
+    final ByteBuffer value)
+  {
+    /*
+     * KTX1 writes orientation as "S=r,T=d[,R=i]", whereas KTX2 writes the
+     * same information as "rd[i]". Values that do not follow the KTX1
+     * syntax are carried over unchanged.
+     */
+
+    final var bytes = new byte[value.remaining()];
+    value.duplicate().get(bytes);
+
+    var text = new String(bytes, UTF_8);
+    final var nul = text.indexOf('\0');
+    if (nul != -1) {
+      text = text.substring(0, nul);
+    }
+
+    final var result = new StringBuilder(4);
+    final var axes = new String[]{"S=", "T=", "R="};
+    final var parts = text.split(",");
+    if (parts.length > axes.length) {
+      return value;
+    }
+    for (int index = 0; index < parts.length; ++index) {
+      final var part = parts[index].trim();
+      if (!part.startsWith(axes[index]) || part.length() != 3) {
+        return value;
+      }
+      result.append(part.charAt(2));
+    }
+    result.append('\0');
+    return ByteBuffer.wrap(result.toString().getBytes(UTF_8));
+  }
+}
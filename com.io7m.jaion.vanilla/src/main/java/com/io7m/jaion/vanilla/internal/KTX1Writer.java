@@ -0,0 +1,216 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jaion.vanilla.internal;
+
+import com.io7m.jaion.api.KTX1Header;
+import com.io7m.jaion.api.KTX1SubImage;
+import com.io7m.jaion.api.KTX1WriteRequest;
+import com.io7m.jaion.api.KTXWriterType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Objects;
+
+public final class KTX1Writer implements KTXWriterType
+{
+  private static final long U32_MAXIMUM = 0xffff_ffffL;
+
+  private final KTX1WriteRequest request;
+  private final ByteOrder order;
+
+  public KTX1Writer(
+    final KTX1WriteRequest inRequest)
+  {
+    this.request =
+      Objects.requireNonNull(inRequest, "request");
+    this.order =
+      inRequest.header().isBigEndian()
+        ? ByteOrder.BIG_ENDIAN
+        : ByteOrder.LITTLE_ENDIAN;
+  }
+
+  private static String errorSubImageSizeMismatch(
+    final KTX1SubImage subImage,
+    final long received)
+  {
+    final var lineSeparator = System.lineSeparator();
+    final var text = new StringBuilder(128);
+    text.append("Sub-image size mismatch.");
+    text.append(lineSeparator);
+    text.append("  Sub-image (level ");
+    text.append(subImage.mipMapLevel());
+    text.append(", element ");
+    text.append(subImage.arrayElement());
+    text.append(", face ");
+    text.append(subImage.faceIndex());
+    text.append(", slice ");
+    text.append(subImage.zSlice());
+    text.append(") was declared with a size of ");
+    text.append(Long.toUnsignedString(subImage.imageSizeBytes()));
+    text.append(" bytes.");
+    text.append(lineSeparator);
+    text.append("  The sub-image source provided ");
+    text.append(received);
+    text.append(" bytes.");
+    text.append(lineSeparator);
+    return text.toString();
+  }
+
+  private static String errorImageSizeTooLarge(
+    final int mipMapLevel,
+    final long imageSize)
+  {
+    final var lineSeparator = System.lineSeparator();
+    final var text = new StringBuilder(128);
+    text.append("Image size too large.");
+    text.append(lineSeparator);
+    text.append("  Mipmap level ");
+    text.append(mipMapLevel);
+    text.append(" requires an imageSize of ");
+    text.append(imageSize);
+    text.append(" bytes.");
+    text.append(lineSeparator);
+    text.append("  KTX1 image sizes are limited to ");
+    text.append(U32_MAXIMUM);
+    text.append(" bytes.");
+    text.append(lineSeparator);
+    return text.toString();
+  }
+
+  @Override
+  public void execute()
+    throws IOException
+  {
+    final var output =
+      new KTXGatheringOutput(this.request.channel());
+    final var keyValues =
+      KTXKeyValueData.encode(
+        this.request.keyValues().entrySet(),
+        this.order
+      );
+    final var header =
+      this.request.header();
+
+    output.add(this.headerData(header, keyValues.remaining()));
+    output.add(keyValues);
+
+    final var index =
+      KTX1SubImageIndex.forHeader(header);
+    final var cubeMap =
+      KTXParser.isCubeMap(header);
+
+    final var source = this.request.subImages();
+    final var reusesBuffers = source.reusesBuffers();
+    final var mipMapCount =
+      (int) KTXHeaders.minUnsigned(header.numberOfMipmapLevels(), 1L);
+
+    for (int mipMapLevel = 0; mipMapLevel < mipMapCount; ++mipMapLevel) {
+      final var subImageSize = source.subImageSizeBytes(mipMapLevel);
+      final var levelCount = index.levelSubImageCount(mipMapLevel);
+      final var imageSize =
+        cubeMap ? subImageSize : subImageSize * levelCount;
+
+      if (subImageSize < 0L || imageSize > U32_MAXIMUM) {
+        throw new IOException(errorImageSizeTooLarge(mipMapLevel, imageSize));
+      }
+
+      /*
+       * The sub-image index computes the same layout that the parser
+       * expects, including cubePadding after each face of a non-array
+       * cube map, so the offsets reported to the sub-image source match
+       * the offsets a reader of the finished file will see.
+       */
+
+      output.add(this.u32((int) imageSize));
+      final var dataOffset = output.position();
+      index.setLevel(mipMapLevel, dataOffset, imageSize, cubeMap);
+
+      final var levelStart = index.levelStart(mipMapLevel);
+      for (int offset = 0; offset < levelCount; ++offset) {
+        final var subImage = index.subImage(levelStart + offset);
+
+        final var data =
+          Objects.requireNonNull(source.subImageData(subImage), "data");
+
+        if (data.remaining() != subImage.imageSizeBytes()) {
+          throw new IOException(
+            errorSubImageSizeMismatch(subImage, data.remaining())
+          );
+        }
+
+        /*
+         * Queued buffers are only written when the batch is flushed. A
+         * source that declares that it overwrites its buffers has each
+         * one copied into the batch instead.
+         */
+
+        if (reusesBuffers) {
+          output.add(copyOf(data));
+        } else {
+          output.add(data);
+        }
+        if (cubeMap) {
+          output.padTo(4L);
+        }
+      }
+      output.padTo(4L);
+    }
+
+    output.flush();
+  }
+
+  private static ByteBuffer copyOf(
+    final ByteBuffer data)
+  {
+    final var copy = ByteBuffer.allocate(data.remaining());
+    copy.put(data.duplicate());
+    return copy.flip();
+  }
+
+  private ByteBuffer u32(
+    final int value)
+  {
+    final var buffer = ByteBuffer.allocate(4).order(this.order);
+    buffer.putInt(0, value);
+    return buffer;
+  }
+
+  private ByteBuffer headerData(
+    final KTX1Header header,
+    final int keyValueSize)
+  {
+    final var buffer =
+      ByteBuffer.allocate(KTXHeaders.KTX1_HEADER_SIZE).order(this.order);
+
+    buffer.put(KTXHeaders.KTX1_IDENTIFIER);
+    buffer.putInt(0x04030201);
+    buffer.putInt((int) header.glType());
+    buffer.putInt((int) header.glTypeSize());
+    buffer.putInt((int) header.glFormat());
+    buffer.putInt((int) header.glInternalFormat());
+    buffer.putInt((int) header.glBaseInternalFormat());
+    buffer.putInt((int) header.pixelWidth());
+    buffer.putInt((int) header.pixelHeight());
+    buffer.putInt((int) header.pixelDepth());
+    buffer.putInt((int) header.numberOfArrayElements());
+    buffer.putInt((int) header.numberOfFaces());
+    buffer.putInt((int) header.numberOfMipmapLevels());
+    buffer.putInt(keyValueSize);
+    return buffer.flip();
+  }
+}
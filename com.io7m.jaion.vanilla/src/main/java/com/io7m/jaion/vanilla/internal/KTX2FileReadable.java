@@ -0,0 +1,217 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.vanilla.internal;
+
+import com.io7m.jaion.api.KTX2FileReadableType;
+import com.io7m.jaion.api.KTX2Header;
+import com.io7m.jaion.api.KTX2Index;
+import com.io7m.jaion.api.KTX2Level;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+public final class KTX2FileReadable implements KTX2FileReadableType
+{
+  private final Closeable resource;
+  private final KTXDataSourceType data;
+  private final KTX2Header header;
+  private final KTX2Index index;
+  private final KTXKeyValueData keyValues;
+  private final List<KTX2Level> levels;
+
+  KTX2FileReadable(
+    final Closeable inResource,
+    final KTXDataSourceType inData,
+    final KTX2Header inHeader,
+    final KTX2Index inIndex,
+    final KTXKeyValueData inKeyValues,
+    final List<KTX2Level> inLevels)
+  {
+    this.resource =
+      Objects.requireNonNull(inResource, "resource");
+    this.data =
+      Objects.requireNonNull(inData, "data");
+    this.header =
+      Objects.requireNonNull(inHeader, "header");
+    this.index =
+      Objects.requireNonNull(inIndex, "index");
+    this.keyValues =
+      Objects.requireNonNull(inKeyValues, "keyValues");
+    this.levels =
+      List.copyOf(Objects.requireNonNull(inLevels, "levels"));
+  }
+
+  private static String errorLevelTooLarge(
+    final KTX2Level level)
+  {
+    final var lineSeparator = System.lineSeparator();
+    final var text = new StringBuilder(128);
+    text.append("Level too large.");
+    text.append(lineSeparator);
+    text.append("  The level ");
+    text.append(level.mipMapLevel());
+    text.append(" at file offset 0x");
+    text.append(Long.toUnsignedString(level.byteOffset(), 16));
+    text.append(" has a size of ");
+    text.append(Long.toUnsignedString(level.byteLength()));
+    text.append(" bytes.");
+    text.append(lineSeparator);
+    text.append("  Levels larger than ");
+    text.append(Integer.MAX_VALUE);
+    text.append(" bytes cannot be exposed as a single buffer.");
+    text.append(lineSeparator);
+    return text.toString();
+  }
+
+  @Override
+  public KTX2Header header()
+  {
+    return this.header;
+  }
+
+  @Override
+  public KTX2Index index()
+  {
+    return this.index;
+  }
+
+  @Override
+  public KTXKeyValueData keyValues()
+  {
+    return this.keyValues;
+  }
+
+  @Override
+  public Map<String, String> keyValueData()
+  {
+    return this.keyValues.asStrings();
+  }
+
+  @Override
+  public List<KTX2Level> levels()
+  {
+    return this.levels;
+  }
+
+  @Override
+  public ByteBuffer levelData(
+    final KTX2Level level)
+    throws IOException
+  {
+    Objects.requireNonNull(level, "level");
+
+    final var size = level.byteLength();
+    if (Long.compareUnsigned(size, Integer.MAX_VALUE) > 0) {
+      throw new IOException(errorLevelTooLarge(level));
+    }
+
+    final var event = new KTXLevelReadEvent();
+    event.begin();
+    final var result =
+      this.data.data(level.byteOffset(), (int) size)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    KTXEvents.commitLevelRead(event, "data", List.of(level));
+    return result;
+  }
+
+  @Override
+  public SeekableByteChannel levelDataChannel(
+    final KTX2Level level)
+    throws IOException
+  {
+    Objects.requireNonNull(level, "level");
+    return this.data.channel(level.byteOffset(), level.byteLength());
+  }
+
+  @Override
+  public long levelTransferTo(
+    final KTX2Level level,
+    final WritableByteChannel target)
+    throws IOException
+  {
+    return this.levelsTransferTo(List.of(level), target);
+  }
+
+  @Override
+  public long levelsTransferTo(
+    final List<KTX2Level> levelsToSend,
+    final WritableByteChannel target)
+    throws IOException
+  {
+    Objects.requireNonNull(levelsToSend, "levels");
+    Objects.requireNonNull(target, "target");
+
+    /*
+     * The stored bytes of each level are sent as they are: supercompressed
+     * levels are sent compressed, which is what a client that can decode
+     * the file itself expects.
+     */
+
+    final var count = levelsToSend.size();
+    final var offsets = new long[count];
+    final var sizes = new long[count];
+    for (int index = 0; index < count; ++index) {
+      final var level =
+        Objects.requireNonNull(levelsToSend.get(index), "level");
+      offsets[index] = level.byteOffset();
+      sizes[index] = level.byteLength();
+    }
+
+    final var event = new KTXLevelReadEvent();
+    event.begin();
+    final var sent =
+      KTXDataSourceType.transferRanges(this.data, offsets, sizes, target);
+    KTXEvents.commitLevelRead(event, "transfer", levelsToSend);
+    return sent;
+  }
+
+  @Override
+  public CompletableFuture<ByteBuffer> levelDataAsync(
+    final KTX2Level level,
+    final ByteBuffer target)
+  {
+    Objects.requireNonNull(level, "level");
+
+    final var event = new KTXLevelReadEvent();
+    event.begin();
+    return KTXDataSourceType.readInto(
+      this.data,
+      level.byteOffset(),
+      level.byteLength(),
+      target
+    ).thenApply(result -> {
+      KTXEvents.commitLevelRead(event, "async", List.of(level));
+      return result;
+    });
+  }
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    this.resource.close();
+  }
+}
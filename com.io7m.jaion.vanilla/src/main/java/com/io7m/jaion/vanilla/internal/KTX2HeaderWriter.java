@@ -0,0 +1,151 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.vanilla.internal;
+
+import com.io7m.jaion.api.KTX2Header;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public final class KTX2HeaderWriter
+{
+  static final int INDEX_SIZE = 32;
+  static final int LEVEL_INDEX_ENTRY_SIZE = 24;
+
+  private static final long U32_MAXIMUM = 0xffff_ffffL;
+
+  private KTX2HeaderWriter()
+  {
+
+  }
+
+  private static String errorFieldOutOfRange(
+    final String field,
+    final long value)
+  {
+    final var lineSeparator = System.lineSeparator();
+    final var text = new StringBuilder(128);
+    text.append("Header field out of range.");
+    text.append(lineSeparator);
+    text.append("  The field ");
+    text.append(field);
+    text.append(" has a value of ");
+    text.append(Long.toUnsignedString(value));
+    text.append('.');
+    text.append(lineSeparator);
+    text.append("  KTX2 header fields are limited to ");
+    text.append(U32_MAXIMUM);
+    text.append('.');
+    text.append(lineSeparator);
+    return text.toString();
+  }
+
+  static long dataFormatOffset(
+    final int levelCount)
+  {
+    return KTXHeaders.KTX2_HEADER_SIZE
+      + INDEX_SIZE
+      + (long) LEVEL_INDEX_ENTRY_SIZE * levelCount;
+  }
+
+  static long keyValueOffset(
+    final int levelCount,
+    final int dataFormatSize)
+  {
+    return KTXParser.alignUp(
+      dataFormatOffset(levelCount) + dataFormatSize, 4L);
+  }
+
+  static long dataStart(
+    final int levelCount,
+    final int dataFormatSize,
+    final int keyValueSize)
+  {
+    return keyValueOffset(levelCount, dataFormatSize) + keyValueSize;
+  }
+
+  static void write(
+    final KTXGatheringOutput output,
+    final KTX2Header header,
+    final ByteBuffer dataFormat,
+    final ByteBuffer keyValues,
+    final long[] offsets,
+    final long[] byteLengths,
+    final long[] uncompressedLengths)
+    throws IOException
+  {
+    /*
+     * The header, the index, and the level index are written as a single
+     * buffer. The data format descriptor immediately follows the level
+     * index, and the key/value data follows the descriptor. No
+     * supercompression global data is written. An empty key/value region
+     * is recorded with an offset of zero, as the specification requires.
+     */
+
+    final var levelCount = offsets.length;
+    final var dfdOffset = dataFormatOffset(levelCount);
+    final var kvdOffset = keyValueOffset(levelCount, dataFormat.remaining());
+
+    final var prefix =
+      ByteBuffer.allocate((int) dfdOffset)
+        .order(ByteOrder.LITTLE_ENDIAN);
+
+    prefix.put(KTXHeaders.KTX2_IDENTIFIER);
+    putU32(prefix, "vkFormat", header.format());
+    putU32(prefix, "typeSize", header.typeSize());
+    putU32(prefix, "pixelWidth", header.pixelWidth());
+    putU32(prefix, "pixelHeight", header.pixelHeight());
+    putU32(prefix, "pixelDepth", header.pixelDepth());
+    putU32(prefix, "layerCount", header.layerCount());
+    putU32(prefix, "faceCount", header.faceCount());
+    putU32(prefix, "levelCount", header.levelCount());
+    putU32(
+      prefix, "supercompressionScheme", header.supercompressionScheme());
+
+    prefix.putInt((int) dfdOffset);
+    prefix.putInt(dataFormat.remaining());
+    prefix.putInt(keyValues.hasRemaining() ? (int) kvdOffset : 0);
+    prefix.putInt(keyValues.remaining());
+    prefix.putLong(0L);
+    prefix.putLong(0L);
+
+    for (int level = 0; level < levelCount; ++level) {
+      prefix.putLong(offsets[level]);
+      prefix.putLong(byteLengths[level]);
+      prefix.putLong(uncompressedLengths[level]);
+    }
+
+    output.add(prefix.flip());
+    output.add(dataFormat);
+    output.padTo(4L);
+    output.add(keyValues);
+  }
+
+  private static void putU32(
+    final ByteBuffer buffer,
+    final String field,
+    final long value)
+    throws IOException
+  {
+    if (Long.compareUnsigned(value, U32_MAXIMUM) > 0) {
+      throw new IOException(errorFieldOutOfRange(field, value));
+    }
+    buffer.putInt((int) value);
+  }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jaion.vanilla.internal;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdCompressCtx;
+import com.github.luben.zstd.ZstdException;
+import com.io7m.jaion.api.KTX2WriteRequest;
+import com.io7m.jaion.api.KTXWriterType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public final class KTX2Writer implements KTXWriterType
+{
+  private static final long SCHEME_NONE = 0L;
+  private static final long SCHEME_ZSTD = 2L;
+  private static final int DFD_BYTES_PLANE_0 = 20;
+
+  private final KTX2WriteRequest request;
+  private final ForkJoinPool pool;
+
+  public KTX2Writer(
+    final KTX2WriteRequest inRequest,
+    final ForkJoinPool inPool)
+  {
+    this.request =
+      Objects.requireNonNull(inRequest, "request");
+    this.pool =
+      Objects.requireNonNull(inPool, "pool");
+  }
+
+  private record EncodedLevel(
+    long uncompressedSize,
+    ByteBuffer data)
+  {
+
+  }
+
+  private static String errorUnsupportedScheme(
+    final long scheme)
+  {
+    final var lineSeparator = System.lineSeparator();
+    final var text = new StringBuilder(128);
+    text.append("Unsupported supercompression scheme.");
+    text.append(lineSeparator);
+    text.append("  Received: ");
+    text.append(Long.toUnsignedString(scheme));
+    text.append(lineSeparator);
+    text.append("  Supported: ");
+    text.append(SCHEME_NONE);
+    text.append(" (None), ");
+    text.append(SCHEME_ZSTD);
+    text.append(" (Zstandard)");
+    text.append(lineSeparator);
+    return text.toString();
+  }
+
+  private static String errorCompressionFailed(
+    final int mipMapLevel,
+    final String message)
+  {
+    final var lineSeparator = System.lineSeparator();
+    final var text = new StringBuilder(128);
+    text.append("Supercompression failed.");
+    text.append(lineSeparator);
+    text.append("  Level ");
+    text.append(mipMapLevel);
+    text.append(": ");
+    text.append(message);
+    text.append(lineSeparator);
+    return text.toString();
+  }
+
+  @Override
+  public void execute()
+    throws IOException
+  {
+    final var header = this.request.header();
+    final var scheme = header.supercompressionScheme();
+    if (scheme != SCHEME_NONE && scheme != SCHEME_ZSTD) {
+      throw new IOException(errorUnsupportedScheme(scheme));
+    }
+
+    final var levelCount =
+      (int) KTXHeaders.minUnsigned(header.levelCount(), 1L);
+    final var levels =
+      this.encodeLevels(levelCount, scheme == SCHEME_ZSTD);
+
+    final var dfd =
+      this.request.dataFormatDescriptor().duplicate();
+    final var keyValues =
+      KTXKeyValueData.encode(this.sortedKeyValues(), ByteOrder.LITTLE_ENDIAN);
+
+    /*
+     * Levels are stored smallest first, each aligned to the least common
+     * multiple of the texel block size and four. Supercompressed levels
+     * have no alignment requirement.
+     */
+
+    final var dataStart =
+      KTX2HeaderWriter.dataStart(
+        levelCount, dfd.remaining(), keyValues.remaining());
+    final var alignment =
+      scheme == SCHEME_ZSTD ? 1L : this.levelAlignment();
+
+    final var offsets = new long[levelCount];
+    final var byteLengths = new long[levelCount];
+    final var uncompressedLengths = new long[levelCount];
+    var position = dataStart;
+    for (int level = levelCount - 1; level >= 0; --level) {
+      position = KTXParser.alignUp(position, alignment);
+      offsets[level] = position;
+      byteLengths[level] = levels[level].data().remaining();
+      uncompressedLengths[level] = levels[level].uncompressedSize();
+      position += byteLengths[level];
+    }
+
+    final var output =
+      new KTXGatheringOutput(this.request.channel());
+
+    KTX2HeaderWriter.write(
+      output,
+      header,
+      dfd,
+      keyValues,
+      offsets,
+      byteLengths,
+      uncompressedLengths
+    );
+
+    for (int level = levelCount - 1; level >= 0; --level) {
+      output.padTo(alignment);
+      output.add(levels[level].data());
+    }
+    output.flush();
+  }
+
+  private EncodedLevel[] encodeLevels(
+    final int levelCount,
+    final boolean compress)
+    throws IOException
+  {
+    final var tasks = new ArrayList<ForkJoinTask<EncodedLevel>>(levelCount);
+    for (int level = 0; level < levelCount; ++level) {
+      final var mipMapLevel = level;
+      tasks.add(
+        this.pool.submit(() -> this.encodeLevel(mipMapLevel, compress))
+      );
+    }
+
+    /*
+     * Results are collected in level order rather than completion order,
+     * so the layout of the file never depends on scheduling.
+     */
+
+    final var results = new EncodedLevel[levelCount];
+    try {
+      for (int level = 0; level < levelCount; ++level) {
+        results[level] = tasks.get(level).get();
+      }
+      return results;
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch (final ExecutionException e) {
+
+      /*
+       * The pool wraps checked exceptions thrown by tasks, possibly
+       * several times, so the original exception is searched for.
+       */
+
+      for (var c = e.getCause(); c != null; c = c.getCause()) {
+        if (c instanceof IOException io) {
+          throw io;
+        }
+      }
+      throw new IOException(e.getCause());
+    } finally {
+      for (final var task : tasks) {
+        task.cancel(false);
+      }
+    }
+  }
+
+  private EncodedLevel encodeLevel(
+    final int mipMapLevel,
+    final boolean compress)
+    throws IOException
+  {
+    final var data =
+      Objects.requireNonNull(
+        this.request.levels().levelData(mipMapLevel),
+        "levelData"
+      ).duplicate();
+
+    if (!compress) {
+      return new EncodedLevel(data.remaining(), data);
+    }
+
+    try (var context = new ZstdCompressCtx()) {
+      context.setLevel(this.request.zstdLevel());
+      final var size = data.remaining();
+
+      if (data.isDirect()) {
+        return new EncodedLevel(size, context.compress(data));
+      }
+
+      final byte[] source;
+      final int sourceOffset;
+      if (data.hasArray()) {
+        source = data.array();
+        sourceOffset = data.arrayOffset() + data.position();
+      } else {
+        source = new byte[size];
+        sourceOffset = 0;
+        data.get(source);
+      }
+
+      final var target = new byte[(int) Zstd.compressBound(size)];
+      final var written =
+        context.compressByteArray(
+          target, 0, target.length, source, sourceOffset, size);
+      return new EncodedLevel(size, ByteBuffer.wrap(target, 0, written));
+    } catch (final ZstdException e) {
+      throw new IOException(
+        errorCompressionFailed(mipMapLevel, e.getMessage()),
+        e
+      );
+    }
+  }
+
+  private long levelAlignment()
+  {
+    final var dfd = this.request.dataFormatDescriptor();
+
+    var blockSize = 0L;
+    if (dfd.remaining() > DFD_BYTES_PLANE_0) {
+      blockSize = dfd.get(dfd.position() + DFD_BYTES_PLANE_0) & 0xffL;
+    }
+    return levelAlignmentFor(blockSize);
+  }
+
+  static long levelAlignmentFor(
+    final long blockSize)
+  {
+    if (blockSize == 0L) {
+      return 4L;
+    }
+
+    var a = blockSize;
+    var b = 4L;
+    while (b != 0L) {
+      final var t = a % b;
+      a = b;
+      b = t;
+    }
+    return (blockSize * 4L) / a;
+  }
+
+  private ArrayList<Map.Entry<String, ByteBuffer>> sortedKeyValues()
+  {
+    /*
+     * The specification requires keys to be sorted by their UTF-8 byte
+     * sequences, which is not the same as sorting by UTF-16 strings.
+     */
+
+    final var entries =
+      new ArrayList<>(this.request.keyValues().entrySet());
+    entries.sort((x, y) -> Arrays.compareUnsigned(
+      x.getKey().getBytes(UTF_8),
+      y.getKey().getBytes(UTF_8)
+    ));
+    return entries;
+  }
+}
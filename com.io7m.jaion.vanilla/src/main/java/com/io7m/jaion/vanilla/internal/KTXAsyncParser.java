@@ -0,0 +1,322 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.vanilla.internal;
+
+import com.io7m.jaion.api.KTX1Header;
+import com.io7m.jaion.api.KTXAsyncParseRequest;
+import com.io7m.jaion.api.KTXFileReadableType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static com.io7m.jaion.vanilla.internal.KTXParser.alignUp;
+import static com.io7m.jaion.vanilla.internal.KTXParser.errorLimitExceeded;
+
+public final class KTXAsyncParser
+{
+  private static final int WINDOW_SIZE = 4096;
+
+  private final KTXAsyncParseRequest request;
+  private final KTXDataSourceAsync data;
+  private final long fileSize;
+
+  private KTXAsyncParser(
+    final KTXAsyncParseRequest inRequest,
+    final long inFileSize)
+  {
+    this.request =
+      Objects.requireNonNull(inRequest, "request");
+    this.data =
+      new KTXDataSourceAsync(inRequest.channel());
+    this.fileSize =
+      inFileSize;
+  }
+
+  public static CompletableFuture<KTXFileReadableType> parse(
+    final KTXAsyncParseRequest request)
+  {
+    Objects.requireNonNull(request, "request");
+
+    try {
+      final var parser =
+        new KTXAsyncParser(request, request.channel().size());
+      return parser.execute();
+    } catch (final IOException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  private static <T> CompletableFuture<T> fail(
+    final String message)
+  {
+    return CompletableFuture.failedFuture(new IOException(message));
+  }
+
+  private CompletableFuture<KTXFileReadableType> execute()
+  {
+    /*
+     * The first read covers the fixed header of either format, and for
+     * most files also the key/value data and the KTX2 level index. Every
+     * later read is only issued if the data it needs lies outside of the
+     * windows already read, and no read made by the parse ever blocks the
+     * calling thread. The parsed file shares the data source: its
+     * synchronous accessors wait for their reads, and its asynchronous
+     * accessors do not.
+     */
+
+    final var prefixSize = (int) Math.min(this.fileSize, WINDOW_SIZE);
+    return this.data.read(0L, ByteBuffer.allocate(prefixSize))
+      .thenCompose(prefix -> {
+        prefix.flip();
+
+        if (prefix.limit() < 12) {
+          return fail(
+            KTXHeaders.errorTruncated("identifier", 0L, 12L, this.fileSize)
+          );
+        }
+
+        try {
+          if (KTXHeaders.identify(prefix) == 2) {
+            return this.executeKTX2(prefix);
+          }
+          return this.executeKTX1(prefix);
+        } catch (final IOException e) {
+          return CompletableFuture.failedFuture(e);
+        }
+      });
+  }
+
+  private CompletableFuture<ByteBuffer> region(
+    final ByteBuffer window,
+    final long windowOffset,
+    final long offset,
+    final long size,
+    final String section)
+  {
+    if (Long.compareUnsigned(size, this.fileSize - offset) > 0
+      || Long.compareUnsigned(offset, this.fileSize) > 0) {
+      return fail(
+        KTXHeaders.errorTruncated(section, offset, size, this.fileSize)
+      );
+    }
+
+    final var windowEnd = windowOffset + window.limit();
+    if (offset >= windowOffset && offset + size <= windowEnd) {
+      return CompletableFuture.completedFuture(
+        window.slice((int) (offset - windowOffset), (int) size)
+      );
+    }
+
+    return this.data.read(offset, ByteBuffer.allocate((int) size))
+      .thenApply(ByteBuffer::flip);
+  }
+
+  private CompletableFuture<KTXFileReadableType> executeKTX1(
+    final ByteBuffer prefix)
+    throws IOException
+  {
+    if (prefix.limit() < KTXHeaders.KTX1_HEADER_SIZE) {
+      return fail(
+        KTXHeaders.errorTruncated(
+          "header", 12L, KTXHeaders.KTX1_HEADER_SIZE - 12, this.fileSize)
+      );
+    }
+
+    final var header = KTXHeaders.decodeKTX1(prefix);
+    final var order = prefix.order();
+    final var keyValueSize = header.bytesOfKeyValueData();
+    final var keyValueLimit = this.request.keyValueRegionLimit();
+    if (Long.compareUnsigned(keyValueSize, keyValueLimit) > 0) {
+      return fail(
+        errorLimitExceeded(
+          64L, keyValueSize, "key/value region size limit", keyValueLimit)
+      );
+    }
+
+    /*
+     * The sub-image counts are validated against the limits and the file
+     * size before the index is allocated.
+     */
+
+    final var images =
+      KTXParser.createSubImageIndex(
+        header,
+        alignUp(64L + keyValueSize, 4L),
+        this.fileSize
+      );
+
+    return this.region(prefix, 0L, 64L, keyValueSize, "key/value data")
+      .thenCompose(region -> {
+        final KTXKeyValueData keyValues;
+        try {
+          keyValues = this.keyValuesOf(region, order, 64L);
+        } catch (final IOException e) {
+          return CompletableFuture.failedFuture(e);
+        }
+
+        return this.levelsKTX1(
+          header,
+          images,
+          prefix,
+          0L,
+          0,
+          alignUp(64L + keyValueSize, 4L)
+        ).thenApply(ignored -> new KTX1FileReadable(
+          this.data,
+          this.data,
+          header,
+          keyValues,
+          images
+        ));
+      });
+  }
+
+  private KTXKeyValueData keyValuesOf(
+    final ByteBuffer region,
+    final ByteOrder order,
+    final long offset)
+    throws IOException
+  {
+    if (region.limit() == 0) {
+      return KTXKeyValueData.empty();
+    }
+    return KTXKeyValueData.index(
+      region,
+      order,
+      offset,
+      this.request.keyValueDatumLimit()
+    );
+  }
+
+  private CompletableFuture<Void> levelsKTX1(
+    final KTX1Header header,
+    final KTX1SubImageIndex images,
+    final ByteBuffer window,
+    final long windowOffset,
+    final int firstLevel,
+    final long firstOffset)
+  {
+    /*
+     * Walk the imageSize chain through the current window for as long as
+     * possible, and only read a new window (starting at the next imageSize
+     * field) when the chain leaves it.
+     */
+
+    final var mipMapCount =
+      (int) KTXHeaders.minUnsigned(header.numberOfMipmapLevels(), 1L);
+    final var cubeMap =
+      header.numberOfFaces() == 6L && header.numberOfArrayElements() == 0L;
+    final var order =
+      header.isBigEndian() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+    final var windowEnd =
+      windowOffset + window.limit();
+
+    var offset = firstOffset;
+    for (int level = firstLevel; level < mipMapCount; ++level) {
+      if (offset + 4L > this.fileSize) {
+        return fail(
+          KTXHeaders.errorTruncated("imageSize", offset, 4L, this.fileSize)
+        );
+      }
+
+      if (offset < windowOffset || offset + 4L > windowEnd) {
+        final var nextLevel = level;
+        final var nextOffset = offset;
+        final var size = (int) Math.min(this.fileSize - offset, WINDOW_SIZE);
+        return this.data.read(offset, ByteBuffer.allocate(size))
+          .thenCompose(next -> this.levelsKTX1(
+            header, images, next.flip(), nextOffset, nextLevel, nextOffset));
+      }
+
+      final var imageSize =
+        KTXHeaders.u32(
+          window.duplicate().order(order),
+          (int) (offset - windowOffset)
+        );
+
+      final var dataOffset = offset + 4L;
+      offset = images.setLevel(level, dataOffset, imageSize, cubeMap);
+      if (offset > alignUp(this.fileSize, 4L)) {
+        return fail(
+          KTXHeaders.errorTruncated(
+            "image data", dataOffset, offset - dataOffset, this.fileSize)
+        );
+      }
+    }
+
+    return CompletableFuture.completedFuture(null);
+  }
+
+  private CompletableFuture<KTXFileReadableType> executeKTX2(
+    final ByteBuffer prefix)
+    throws IOException
+  {
+    final var headerIndexSize = KTXHeaders.KTX2_HEADER_SIZE + 32;
+    if (prefix.limit() < headerIndexSize) {
+      return fail(
+        KTXHeaders.errorTruncated(
+          "header", 12L, headerIndexSize - 12, this.fileSize)
+      );
+    }
+
+    final var header =
+      KTXHeaders.decodeKTX2(prefix, 12);
+    final var index =
+      KTXHeaders.decodeKTX2Index(prefix, KTXHeaders.KTX2_HEADER_SIZE);
+    final var levelCount =
+      KTXParser.checkKTX2LevelCount(0L, header.levelCount());
+
+    final var keyValueSize = index.kvdByteLength();
+    final var keyValueLimit = this.request.keyValueRegionLimit();
+    if (Long.compareUnsigned(keyValueSize, keyValueLimit) > 0) {
+      return fail(
+        errorLimitExceeded(
+          index.kvdByteOffset(),
+          keyValueSize,
+          "key/value region size limit",
+          keyValueLimit)
+      );
+    }
+
+    final var levelsFuture =
+      this.region(prefix, 0L, headerIndexSize, levelCount * 24L, "level index");
+    final var keyValuesFuture =
+      this.region(
+        prefix, 0L, index.kvdByteOffset(), keyValueSize, "key/value data");
+
+    return levelsFuture.thenCombine(keyValuesFuture, (levelIndex, region) -> {
+      try {
+        return new KTX2FileReadable(
+          this.data,
+          this.data,
+          header,
+          index,
+          this.keyValuesOf(
+            region, ByteOrder.LITTLE_ENDIAN, index.kvdByteOffset()),
+          KTXHeaders.decodeKTX2Levels(levelIndex, (int) levelCount)
+        );
+      } catch (final IOException e) {
+        throw new CompletionException(e);
+      }
+    });
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.vanilla.internal;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Objects;
+
+public final class KTXByteBufferChannel implements SeekableByteChannel
+{
+  private final ByteBuffer buffer;
+  private boolean open;
+
+  public KTXByteBufferChannel(
+    final ByteBuffer inBuffer)
+  {
+    this.buffer =
+      Objects.requireNonNull(inBuffer, "buffer").slice();
+    this.open =
+      true;
+  }
+
+  private void checkOpen()
+    throws ClosedChannelException
+  {
+    if (!this.open) {
+      throw new ClosedChannelException();
+    }
+  }
+
+  @Override
+  public int read(
+    final ByteBuffer dst)
+    throws ClosedChannelException
+  {
+    this.checkOpen();
+
+    if (!this.buffer.hasRemaining()) {
+      return -1;
+    }
+
+    final var count =
+      Math.min(dst.remaining(), this.buffer.remaining());
+    final var position =
+      this.buffer.position();
+
+    dst.put(this.buffer.slice(position, count));
+    this.buffer.position(position + count);
+    return count;
+  }
+
+  @Override
+  public int write(
+    final ByteBuffer src)
+  {
+    throw new NonWritableChannelException();
+  }
+
+  @Override
+  public long position()
+    throws ClosedChannelException
+  {
+    this.checkOpen();
+    return this.buffer.position();
+  }
+
+  @Override
+  public SeekableByteChannel position(
+    final long newPosition)
+    throws ClosedChannelException
+  {
+    this.checkOpen();
+    this.buffer.position((int) Math.min(newPosition, this.buffer.limit()));
+    return this;
+  }
+
+  @Override
+  public long size()
+    throws ClosedChannelException
+  {
+    this.checkOpen();
+    return this.buffer.limit();
+  }
+
+  @Override
+  public SeekableByteChannel truncate(
+    final long size)
+  {
+    throw new NonWritableChannelException();
+  }
+
+  @Override
+  public boolean isOpen()
+  {
+    return this.open;
+  }
+
+  @Override
+  public void close()
+  {
+    this.open = false;
+  }
+}
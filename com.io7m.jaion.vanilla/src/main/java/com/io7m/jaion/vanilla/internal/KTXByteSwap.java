@@ -0,0 +1,76 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jaion.vanilla.internal;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Objects;
+
+public final class KTXByteSwap
+{
+  private KTXByteSwap()
+  {
+
+  }
+
+  public static void toNativeOrder(
+    final ByteBuffer buffer,
+    final ByteOrder order,
+    final int elementSize)
+  {
+    Objects.requireNonNull(buffer, "buffer");
+    Objects.requireNonNull(order, "order");
+
+    if (order == ByteOrder.nativeOrder()) {
+      return;
+    }
+
+    /*
+     * Two views of the same memory are taken: one that reads elements
+     * in the source order, and one that writes elements in the native
+     * order. Copying between the views swaps each element without any
+     * intermediate buffer, and the JIT compiles the element accesses
+     * down to byte-reversing loads and stores.
+     */
+
+    switch (elementSize) {
+      case 2 -> {
+        final var source =
+          buffer.duplicate().order(order).asShortBuffer();
+        final var target =
+          buffer.duplicate().order(ByteOrder.nativeOrder()).asShortBuffer();
+        final var count = source.limit();
+        for (int index = 0; index < count; ++index) {
+          target.put(index, source.get(index));
+        }
+      }
+      case 4 -> {
+        final var source =
+          buffer.duplicate().order(order).asIntBuffer();
+        final var target =
+          buffer.duplicate().order(ByteOrder.nativeOrder()).asIntBuffer();
+        final var count = source.limit();
+        for (int index = 0; index < count; ++index) {
+          target.put(index, source.get(index));
+        }
+      }
+      default -> {
+
+      }
+    }
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.vanilla.internal;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+public final class KTXDataSourceAsync
+  implements KTXDataSourceType, Closeable
+{
+  private final AsynchronousFileChannel channel;
+
+  public KTXDataSourceAsync(
+    final AsynchronousFileChannel inChannel)
+  {
+    this.channel = Objects.requireNonNull(inChannel, "channel");
+  }
+
+  @Override
+  public long size()
+    throws IOException
+  {
+    return this.channel.size();
+  }
+
+  @Override
+  public ByteBuffer data(
+    final long offset,
+    final int size)
+    throws IOException
+  {
+    /*
+     * The synchronous interface simply waits for the asynchronous read.
+     * It is only used by the synchronous accessors of a parsed file; the
+     * parse itself and the asynchronous accessors never call it.
+     */
+
+    final var data = ByteBuffer.allocate(size);
+    await(this.read(offset, data));
+    return data.flip().asReadOnlyBuffer();
+  }
+
+  @Override
+  public SeekableByteChannel channel(
+    final long offset,
+    final long size)
+    throws IOException
+  {
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException(
+        "Regions larger than %d bytes cannot be read from this channel."
+          .formatted(Integer.MAX_VALUE)
+      );
+    }
+    return new KTXByteBufferChannel(this.data(offset, (int) size));
+  }
+
+  @Override
+  public void readScattering(
+    final long offset,
+    final ByteBuffer[] targets)
+    throws IOException
+  {
+    Objects.requireNonNull(targets, "targets");
+
+    /*
+     * Asynchronous file channels have no scattering reads, so the
+     * individual reads are issued together and then awaited.
+     */
+
+    final var reads = new CompletableFuture<?>[targets.length];
+    var position = offset;
+    for (int index = 0; index < targets.length; ++index) {
+      final var target = targets[index];
+      final var size = target.remaining();
+      reads[index] = this.read(position, target);
+      position += size;
+    }
+    await(CompletableFuture.allOf(reads));
+  }
+
+  private static void await(
+    final CompletableFuture<?> future)
+    throws IOException
+  {
+    try {
+      future.get();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      final var ex = new InterruptedIOException("Read interrupted.");
+      ex.initCause(e);
+      throw ex;
+    } catch (final ExecutionException e) {
+      final var cause = e.getCause();
+      if (cause instanceof IOException io) {
+        throw io;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  @Override
+  public CompletableFuture<ByteBuffer> read(
+    final long offset,
+    final ByteBuffer target)
+  {
+    final var future = new CompletableFuture<ByteBuffer>();
+    this.readFrom(offset, target, future);
+    return future;
+  }
+
+  private void readFrom(
+    final long position,
+    final ByteBuffer target,
+    final CompletableFuture<ByteBuffer> future)
+  {
+    if (!target.hasRemaining()) {
+      future.complete(target);
+      return;
+    }
+
+    try {
+      this.channel.read(target, position, null, new CompletionHandler<>()
+      {
+        @Override
+        public void completed(
+          final Integer result,
+          final Object attachment)
+        {
+          if (result.intValue() == -1) {
+            future.completeExceptionally(
+              new EOFException(
+                "Unexpected end of file at offset 0x%s".formatted(
+                  Long.toUnsignedString(position, 16))
+              )
+            );
+            return;
+          }
+          KTXDataSourceAsync.this.readFrom(
+            position + result.longValue(),
+            target,
+            future
+          );
+        }
+
+        @Override
+        public void failed(
+          final Throwable exception,
+          final Object attachment)
+        {
+          future.completeExceptionally(exception);
+        }
+      });
+    } catch (final RuntimeException e) {
+      future.completeExceptionally(e);
+    }
+  }
+
+  @Override
+  public void close()
+  {
+    /*
+     * The channel belongs to the caller that opened it, and is not closed
+     * when the parsed file is.
+     */
+  }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.vanilla.internal;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ScatteringByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+
+public final class KTXDataSourceChannel implements KTXDataSourceType
+{
+  private static final int MAPPING_THRESHOLD = 65536;
+
+  private static final ThreadLocal<ByteBuffer> SCRATCH_BUFFERS =
+    ThreadLocal.withInitial(() -> {
+      return ByteBuffer.allocateDirect(TRANSFER_BUFFER_SIZE);
+    });
+
+  private final SeekableByteChannel channel;
+
+  public KTXDataSourceChannel(
+    final SeekableByteChannel inChannel)
+  {
+    this.channel = Objects.requireNonNull(inChannel, "channel");
+  }
+
+  @Override
+  public long size()
+    throws IOException
+  {
+    return this.channel.size();
+  }
+
+  @Override
+  public ByteBuffer data(
+    final long offset,
+    final int size)
+    throws IOException
+  {
+    /*
+     * Every mapping costs a kernel mapping entry and address space that is
+     * only released when the buffer is garbage collected. Small regions
+     * such as key/value data are far cheaper to copy, and a parsed file
+     * that is kept around would otherwise pin one tiny mapping each.
+     */
+
+    if (this.channel instanceof FileChannel fileChannel) {
+      if (size >= MAPPING_THRESHOLD) {
+        return fileChannel.map(READ_ONLY, offset, size);
+      }
+      final var data = ByteBuffer.allocate(size);
+      readFully(fileChannel, offset, data);
+      return data.flip().asReadOnlyBuffer();
+    }
+
+    final var data = ByteBuffer.allocate(size);
+    synchronized (this.channel) {
+      this.channel.position(offset);
+      while (data.hasRemaining()) {
+        if (this.channel.read(data) == -1) {
+          throw errorEndOfFile(this.channel.position());
+        }
+      }
+    }
+    return data.flip().asReadOnlyBuffer();
+  }
+
+  @Override
+  public SeekableByteChannel channel(
+    final long offset,
+    final long size)
+    throws IOException
+  {
+    final var subrange = new KTXSubrangeByteChannel(this.channel, offset, size);
+    subrange.position(0L);
+    return subrange;
+  }
+
+  @Override
+  public CompletableFuture<ByteBuffer> read(
+    final long offset,
+    final ByteBuffer target)
+  {
+    /*
+     * Seekable channels have no asynchronous interface, so the read is
+     * performed on the calling thread.
+     */
+
+    try {
+      if (this.channel instanceof FileChannel fileChannel) {
+        var position = offset;
+        while (target.hasRemaining()) {
+          final var r = fileChannel.read(target, position);
+          if (r == -1) {
+            throw errorEndOfFile(position);
+          }
+          position += r;
+        }
+        return CompletableFuture.completedFuture(target);
+      }
+
+      synchronized (this.channel) {
+        this.channel.position(offset);
+        while (target.hasRemaining()) {
+          if (this.channel.read(target) == -1) {
+            throw errorEndOfFile(this.channel.position());
+          }
+        }
+      }
+      return CompletableFuture.completedFuture(target);
+    } catch (final IOException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  @Override
+  public void readScattering(
+    final long offset,
+    final ByteBuffer[] targets)
+    throws IOException
+  {
+    Objects.requireNonNull(targets, "targets");
+
+    /*
+     * File channels support positional reads, which never touch the
+     * channel's shared position, so any number of threads can read from
+     * the same file without locking. There is no positional scattering
+     * read, so consecutive small targets (including the gap buffers of a
+     * read plan) are filled from a single read into a per-thread scratch
+     * buffer. Targets too large for the scratch buffer are read directly.
+     */
+
+    if (this.channel instanceof FileChannel fileChannel) {
+      readPositional(fileChannel, offset, targets);
+      return;
+    }
+
+    synchronized (this.channel) {
+      this.channel.position(offset);
+
+      if (this.channel instanceof ScatteringByteChannel scattering) {
+        var first = 0;
+        while (first < targets.length) {
+          if (!targets[first].hasRemaining()) {
+            ++first;
+            continue;
+          }
+          if (scattering.read(targets, first, targets.length - first) == -1) {
+            throw errorEndOfFile(this.channel.position());
+          }
+        }
+        return;
+      }
+
+      for (final var target : targets) {
+        while (target.hasRemaining()) {
+          if (this.channel.read(target) == -1) {
+            throw errorEndOfFile(this.channel.position());
+          }
+        }
+      }
+    }
+  }
+
+  private static void readPositional(
+    final FileChannel fileChannel,
+    final long offset,
+    final ByteBuffer[] targets)
+    throws IOException
+  {
+    final var scratch = SCRATCH_BUFFERS.get();
+    var position = offset;
+    var index = 0;
+
+    while (index < targets.length) {
+      var end = index;
+      var total = 0L;
+      while (end < targets.length
+             && total + targets[end].remaining() <= scratch.capacity()) {
+        total += targets[end].remaining();
+        ++end;
+      }
+
+      if (end - index <= 1) {
+        position = readFully(fileChannel, position, targets[index]);
+        ++index;
+        continue;
+      }
+
+      scratch.clear();
+      scratch.limit((int) total);
+      position = readFully(fileChannel, position, scratch);
+      scratch.flip();
+      for (int copy = index; copy < end; ++copy) {
+        final var target = targets[copy];
+        final var remaining = target.remaining();
+        target.put(scratch.slice(scratch.position(), remaining));
+        scratch.position(scratch.position() + remaining);
+      }
+      index = end;
+    }
+  }
+
+  private static long readFully(
+    final FileChannel fileChannel,
+    final long offset,
+    final ByteBuffer target)
+    throws IOException
+  {
+    var position = offset;
+    while (target.hasRemaining()) {
+      final var r = fileChannel.read(target, position);
+      if (r == -1) {
+        throw errorEndOfFile(position);
+      }
+      position += r;
+    }
+    return position;
+  }
+
+  @Override
+  public long transferTo(
+    final long offset,
+    final long size,
+    final WritableByteChannel target)
+    throws IOException
+  {
+    Objects.requireNonNull(target, "target");
+
+    /*
+     * FileChannel.transferTo is positional and lets the kernel move the
+     * data (with sendfile or similar) without copying it into the heap.
+     * It may transfer fewer bytes than requested, so it is repeated until
+     * the whole range has been sent. A transfer of nothing from within
+     * the file means that a non-blocking target is full, and the count
+     * sent so far is returned rather than spinning.
+     */
+
+    if (this.channel instanceof FileChannel fileChannel) {
+      var done = 0L;
+      while (done < size) {
+        final var position = offset + done;
+        final var r = fileChannel.transferTo(position, size - done, target);
+        if (r == 0L) {
+          if (position >= fileChannel.size()) {
+            throw errorEndOfFile(position);
+          }
+          break;
+        }
+        done += r;
+      }
+      return done;
+    }
+
+    return KTXDataSourceType.super.transferTo(offset, size, target);
+  }
+
+  private static EOFException errorEndOfFile(
+    final long position)
+  {
+    return new EOFException(
+      "Unexpected end of file at offset 0x%s".formatted(
+        Long.toUnsignedString(position, 16))
+    );
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.vanilla.internal;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+
+public final class KTXDataSourceMapped implements KTXDataSourceType
+{
+  private final ByteBuffer mapped;
+
+  public KTXDataSourceMapped(
+    final ByteBuffer inMapped)
+  {
+    this.mapped =
+      Objects.requireNonNull(inMapped, "mapped").asReadOnlyBuffer();
+  }
+
+  private static String errorFileTooLarge(
+    final long size)
+  {
+    final var lineSeparator = System.lineSeparator();
+    final var text = new StringBuilder(128);
+    text.append("File too large to map.");
+    text.append(lineSeparator);
+    text.append("  The file has a size of ");
+    text.append(Long.toUnsignedString(size));
+    text.append(" bytes.");
+    text.append(lineSeparator);
+    text.append("  Files larger than ");
+    text.append(Integer.MAX_VALUE);
+    text.append(" bytes cannot be parsed in mapped mode.");
+    text.append(lineSeparator);
+    return text.toString();
+  }
+
+  public static KTXDataSourceMapped map(
+    final FileChannel channel)
+    throws IOException
+  {
+    Objects.requireNonNull(channel, "channel");
+
+    final var size = channel.size();
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException(errorFileTooLarge(size));
+    }
+    return new KTXDataSourceMapped(channel.map(READ_ONLY, 0L, size));
+  }
+
+  public ByteBuffer mapped()
+  {
+    return this.mapped.duplicate();
+  }
+
+  @Override
+  public long size()
+  {
+    return this.mapped.capacity();
+  }
+
+  @Override
+  public ByteBuffer data(
+    final long offset,
+    final int size)
+    throws IOException
+  {
+    final var capacity = this.mapped.capacity();
+    if (offset < 0L || offset + size > capacity) {
+      throw new EOFException(
+        "Unexpected end of file at offset 0x%s".formatted(
+          Long.toUnsignedString(capacity, 16))
+      );
+    }
+    return this.mapped.slice((int) offset, size);
+  }
+
+  @Override
+  public SeekableByteChannel channel(
+    final long offset,
+    final long size)
+    throws IOException
+  {
+    if (size > Integer.MAX_VALUE) {
+      throw new EOFException(
+        "Unexpected end of file at offset 0x%s".formatted(
+          Long.toUnsignedString(this.mapped.capacity(), 16))
+      );
+    }
+    return new KTXByteBufferChannel(this.data(offset, (int) size));
+  }
+
+  @Override
+  public long transferTo(
+    final long offset,
+    final long size,
+    final WritableByteChannel target)
+    throws IOException
+  {
+    Objects.requireNonNull(target, "target");
+
+    if (size > Integer.MAX_VALUE) {
+      throw new EOFException(
+        "Unexpected end of file at offset 0x%s".formatted(
+          Long.toUnsignedString(this.mapped.capacity(), 16))
+      );
+    }
+    return KTXDataSourceType.writeSome(target, this.data(offset, (int) size));
+  }
+
+  @Override
+  public CompletableFuture<ByteBuffer> read(
+    final long offset,
+    final ByteBuffer target)
+  {
+    try {
+      target.put(this.data(offset, target.remaining()));
+      return CompletableFuture.completedFuture(target);
+    } catch (final IOException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  @Override
+  public void readScattering(
+    final long offset,
+    final ByteBuffer[] targets)
+    throws IOException
+  {
+    Objects.requireNonNull(targets, "targets");
+
+    var position = offset;
+    for (final var target : targets) {
+      final var size = target.remaining();
+      target.put(this.data(position, size));
+      position += size;
+    }
+  }
+}
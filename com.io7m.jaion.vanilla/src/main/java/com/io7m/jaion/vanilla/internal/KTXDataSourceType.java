@@ -0,0 +1,178 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.vanilla.internal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+public interface KTXDataSourceType
+{
+  int TRANSFER_BUFFER_SIZE = 65536;
+
+  long size()
+    throws IOException;
+
+  ByteBuffer data(
+    long offset,
+    int size)
+    throws IOException;
+
+  SeekableByteChannel channel(
+    long offset,
+    long size)
+    throws IOException;
+
+  CompletableFuture<ByteBuffer> read(
+    long offset,
+    ByteBuffer target);
+
+  void readScattering(
+    long offset,
+    ByteBuffer[] targets)
+    throws IOException;
+
+  default long transferTo(
+    final long offset,
+    final long size,
+    final WritableByteChannel target)
+    throws IOException
+  {
+    Objects.requireNonNull(target, "target");
+
+    /*
+     * Sources without a zero-copy path copy through a bounded buffer.
+     */
+
+    final var buffer =
+      ByteBuffer.allocate((int) Math.min(size, TRANSFER_BUFFER_SIZE));
+    final var targets = new ByteBuffer[]{buffer};
+
+    var done = 0L;
+    while (done < size) {
+      buffer.clear();
+      buffer.limit((int) Math.min(buffer.capacity(), size - done));
+      this.readScattering(offset + done, targets);
+      buffer.flip();
+      final var expected = buffer.remaining();
+      final var written = writeSome(target, buffer);
+      done += written;
+      if (written < expected) {
+        break;
+      }
+    }
+    return done;
+  }
+
+  static long writeSome(
+    final WritableByteChannel target,
+    final ByteBuffer buffer)
+    throws IOException
+  {
+    /*
+     * A blocking channel always accepts the whole buffer. A non-blocking
+     * channel may accept nothing, in which case the caller is told how
+     * much was written rather than retrying in a busy loop.
+     */
+
+    final var start = buffer.position();
+    while (buffer.hasRemaining()) {
+      if (target.write(buffer) == 0) {
+        break;
+      }
+    }
+    return buffer.position() - start;
+  }
+
+  static long transferRanges(
+    final KTXDataSourceType data,
+    final long[] offsets,
+    final long[] sizes,
+    final WritableByteChannel target)
+    throws IOException
+  {
+    /*
+     * Ranges are sent in the order given. A range that starts exactly
+     * where the previous one ended is merged into it, so that adjacent
+     * ranges cost a single transfer.
+     */
+
+    var total = 0L;
+    var runOffset = 0L;
+    var runSize = 0L;
+    for (int index = 0; index < offsets.length; ++index) {
+      final var offset = offsets[index];
+      final var size = sizes[index];
+      if (runSize > 0L && runOffset + runSize == offset) {
+        runSize += size;
+        continue;
+      }
+      if (runSize > 0L) {
+        final var sent = data.transferTo(runOffset, runSize, target);
+        total += sent;
+        if (sent < runSize) {
+          return total;
+        }
+      }
+      runOffset = offset;
+      runSize = size;
+    }
+    if (runSize > 0L) {
+      total += data.transferTo(runOffset, runSize, target);
+    }
+    return total;
+  }
+
+  static CompletableFuture<ByteBuffer> readInto(
+    final KTXDataSourceType data,
+    final long offset,
+    final long size,
+    final ByteBuffer target)
+  {
+    Objects.requireNonNull(target, "target");
+
+    /*
+     * Callers of an asynchronous read observe every failure through the
+     * returned future, including a target that is too small.
+     */
+
+    if (Long.compareUnsigned(size, target.remaining()) > 0) {
+      return CompletableFuture.failedFuture(
+        new IllegalArgumentException(
+          "Target buffer has %d bytes remaining, but %s bytes are required."
+            .formatted(
+              Integer.valueOf(target.remaining()),
+              Long.toUnsignedString(size))
+        )
+      );
+    }
+
+    /*
+     * Read into a window of exactly the requested size, and only advance
+     * the caller's buffer once the read has completed.
+     */
+
+    final var start = target.position();
+    final var window = target.slice(start, (int) size);
+    return data.read(offset, window)
+      .thenApply(ignored -> target.position(start + (int) size));
+  }
+}
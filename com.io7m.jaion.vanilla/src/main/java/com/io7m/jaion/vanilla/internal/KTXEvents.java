@@ -0,0 +1,86 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.vanilla.internal;
+
+import com.io7m.jaion.api.KTX1SubImage;
+import com.io7m.jaion.api.KTX2Level;
+
+import java.util.List;
+
+final class KTXEvents
+{
+  private KTXEvents()
+  {
+
+  }
+
+  static void commitSubImageRead(
+    final KTXSubImageReadEvent event,
+    final String operation,
+    final List<KTX1SubImage> subImages)
+  {
+    if (!event.shouldCommit()) {
+      return;
+    }
+
+    event.operation = operation;
+    event.subImageCount = subImages.size();
+
+    var total = 0L;
+    for (final var subImage : subImages) {
+      total += subImage.imageSizeBytes();
+    }
+    event.byteCount = total;
+
+    if (!subImages.isEmpty()) {
+      final var first = subImages.get(0);
+      event.mipMapLevel = first.mipMapLevel();
+      event.arrayElement = first.arrayElement();
+      event.faceIndex = first.faceIndex();
+      event.zSlice = first.zSlice();
+      event.byteOffset = first.absoluteByteOffset();
+    }
+    event.commit();
+  }
+
+  static void commitLevelRead(
+    final KTXLevelReadEvent event,
+    final String operation,
+    final List<KTX2Level> levels)
+  {
+    if (!event.shouldCommit()) {
+      return;
+    }
+
+    event.operation = operation;
+    event.levelCount = levels.size();
+
+    var total = 0L;
+    for (final var level : levels) {
+      total += level.byteLength();
+    }
+    event.byteCount = total;
+
+    if (!levels.isEmpty()) {
+      final var first = levels.get(0);
+      event.mipMapLevel = first.mipMapLevel();
+      event.byteOffset = first.byteOffset();
+    }
+    event.commit();
+  }
+}
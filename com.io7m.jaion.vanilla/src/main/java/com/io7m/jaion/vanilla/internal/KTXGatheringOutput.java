@@ -0,0 +1,123 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jaion.vanilla.internal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Objects;
+
+public final class KTXGatheringOutput
+{
+  static final int BUFFERS_MAXIMUM = 64;
+  static final long BYTES_MAXIMUM = 8L * 1024L * 1024L;
+
+  private static final byte[] ZEROS = new byte[16];
+
+  private final WritableByteChannel channel;
+  private final ArrayList<ByteBuffer> pending;
+  private long pendingBytes;
+  private long position;
+
+  KTXGatheringOutput(
+    final WritableByteChannel inChannel)
+  {
+    this.channel =
+      Objects.requireNonNull(inChannel, "channel");
+    this.pending =
+      new ArrayList<>(BUFFERS_MAXIMUM);
+  }
+
+  long position()
+  {
+    return this.position;
+  }
+
+  void add(
+    final ByteBuffer buffer)
+    throws IOException
+  {
+    final var size = buffer.remaining();
+    if (size == 0) {
+      return;
+    }
+
+    /*
+     * Buffers are queued and written together with a single gathering
+     * write. The queue is bounded both in the number of buffers and in
+     * the number of bytes it refers to, so that callers producing data
+     * lazily never have more than a few megabytes of it alive at once.
+     * The contents of a queued buffer must not change until it has been
+     * flushed.
+     */
+
+    this.pending.add(buffer.duplicate());
+    this.pendingBytes += size;
+    this.position += size;
+
+    if (this.pending.size() >= BUFFERS_MAXIMUM
+        || this.pendingBytes >= BYTES_MAXIMUM) {
+      this.flush();
+    }
+  }
+
+  void padTo(
+    final long alignment)
+    throws IOException
+  {
+    var padding =
+      KTXParser.alignUp(this.position, alignment) - this.position;
+    while (padding > 0L) {
+      final var size = (int) Math.min(padding, ZEROS.length);
+      this.add(ByteBuffer.wrap(ZEROS, 0, size));
+      padding -= size;
+    }
+  }
+
+  void flush()
+    throws IOException
+  {
+    if (this.pending.isEmpty()) {
+      return;
+    }
+
+    final var buffers =
+      this.pending.toArray(new ByteBuffer[0]);
+
+    if (this.channel instanceof GatheringByteChannel gathering) {
+      var remaining = this.pendingBytes;
+      var first = 0;
+      while (remaining > 0L) {
+        remaining -= gathering.write(buffers, first, buffers.length - first);
+        while (first < buffers.length && !buffers[first].hasRemaining()) {
+          ++first;
+        }
+      }
+    } else {
+      for (final var buffer : buffers) {
+        while (buffer.hasRemaining()) {
+          this.channel.write(buffer);
+        }
+      }
+    }
+
+    this.pending.clear();
+    this.pendingBytes = 0L;
+  }
+}
@@ -0,0 +1,396 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.vanilla.internal;
+
+import com.io7m.jaion.api.KTX1Header;
+import com.io7m.jaion.api.KTX2Header;
+import com.io7m.jaion.api.KTX2Index;
+import com.io7m.jaion.api.KTX2Level;
+import com.io7m.jaion.api.KTXHeaderType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class KTXHeaders
+{
+  static final byte[] KTX1_IDENTIFIER = {
+    (byte) 0xAB,
+    (byte) 0x4B,
+    (byte) 0x54,
+    (byte) 0x58,
+    (byte) 0x20,
+    (byte) 0x31,
+    (byte) 0x31,
+    (byte) 0xBB,
+    (byte) 0x0D,
+    (byte) 0x0A,
+    (byte) 0x1A,
+    (byte) 0x0A
+  };
+  static final byte[] KTX2_IDENTIFIER = {
+    (byte) 0xAB,
+    (byte) 0x4B,
+    (byte) 0x54,
+    (byte) 0x58,
+    (byte) 0x20,
+    (byte) 0x32,
+    (byte) 0x30,
+    (byte) 0xBB,
+    (byte) 0x0D,
+    (byte) 0x0A,
+    (byte) 0x1A,
+    (byte) 0x0A
+  };
+  static final byte[] ENDIAN_BIG = {
+    (byte) 0x04,
+    (byte) 0x03,
+    (byte) 0x02,
+    (byte) 0x01
+  };
+  static final byte[] ENDIAN_LITTLE = {
+    (byte) 0x01,
+    (byte) 0x02,
+    (byte) 0x03,
+    (byte) 0x04
+  };
+
+  public static final int KTX1_HEADER_SIZE = 64;
+  public static final int KTX2_HEADER_SIZE = 48;
+
+  private static final ThreadLocal<ByteBuffer> PROBE_BUFFERS =
+    ThreadLocal.withInitial(() -> ByteBuffer.allocate(KTX1_HEADER_SIZE));
+
+  private KTXHeaders()
+  {
+
+  }
+
+  static ByteBuffer headerBuffer()
+  {
+    final var buffer = PROBE_BUFFERS.get();
+    buffer.clear();
+    buffer.order(ByteOrder.BIG_ENDIAN);
+    return buffer;
+  }
+
+  public static KTXHeaderType probe(
+    final SeekableByteChannel channel)
+    throws IOException
+  {
+    /*
+     * The fixed KTX1 header is the larger of the two fixed headers, so a
+     * single read of at most that many bytes is enough to decode either
+     * format. The scratch buffer is per-thread so that probing allocates
+     * nothing beyond the header record itself.
+     */
+
+    final var buffer = headerBuffer();
+    final var received = readFully(channel, buffer);
+    if (received < 12) {
+      throw new IOException(
+        errorTruncated("identifier", 0L, 12L, channel.size())
+      );
+    }
+
+    if (identify(buffer) == 2) {
+      if (received < KTX2_HEADER_SIZE) {
+        throw new IOException(
+          errorTruncated("header", 12L, KTX2_HEADER_SIZE - 12, channel.size())
+        );
+      }
+      return decodeKTX2(buffer, 12);
+    }
+
+    if (received < KTX1_HEADER_SIZE) {
+      throw new IOException(
+        errorTruncated("header", 12L, KTX1_HEADER_SIZE - 12, channel.size())
+      );
+    }
+    return decodeKTX1(buffer);
+  }
+
+  private static int readFully(
+    final SeekableByteChannel channel,
+    final ByteBuffer buffer)
+    throws IOException
+  {
+    if (channel instanceof FileChannel fileChannel) {
+      while (buffer.hasRemaining()) {
+        final var r = fileChannel.read(buffer, buffer.position());
+        if (r == -1) {
+          break;
+        }
+      }
+      return buffer.position();
+    }
+
+    /*
+     * Channels without positional reads are read from the start, and the
+     * caller's position is restored afterwards.
+     */
+
+    synchronized (channel) {
+      final var saved = channel.position();
+      try {
+        channel.position(0L);
+        while (buffer.hasRemaining()) {
+          final var r = channel.read(buffer);
+          if (r == -1) {
+            break;
+          }
+        }
+      } finally {
+        channel.position(saved);
+      }
+    }
+    return buffer.position();
+  }
+
+  static String errorUnrecognizedFileIdentifier(
+    final byte[] identifier)
+  {
+    final var lineSeparator = System.lineSeparator();
+    final var text = new StringBuilder(128);
+    text.append("Unrecognized file identifier.");
+    text.append(lineSeparator);
+    text.append("  Received:");
+    text.append(lineSeparator);
+    text.append("    ");
+    text.append(formatBytes(identifier));
+    text.append(lineSeparator);
+    text.append("  Expected one of:");
+    text.append(lineSeparator);
+    text.append("    ");
+    text.append(formatBytes(KTX1_IDENTIFIER));
+    text.append(" for KTX 1.0");
+    text.append(lineSeparator);
+    text.append("    ");
+    text.append(formatBytes(KTX2_IDENTIFIER));
+    text.append(" for KTX 2.0");
+    text.append(lineSeparator);
+    return text.toString();
+  }
+
+  static String errorUnrecognizedEndianness(
+    final byte[] endianness)
+  {
+    final var lineSeparator = System.lineSeparator();
+    final var text = new StringBuilder(128);
+    text.append("Unrecognized endianness value.");
+    text.append(lineSeparator);
+    text.append("  Received:");
+    text.append(lineSeparator);
+    text.append("    ");
+    text.append(formatBytes(endianness));
+    text.append(lineSeparator);
+    text.append("  Expected one of:");
+    text.append(lineSeparator);
+    text.append("    ");
+    text.append(formatBytes(ENDIAN_BIG));
+    text.append(" for big endian");
+    text.append(lineSeparator);
+    text.append("    ");
+    text.append(formatBytes(ENDIAN_LITTLE));
+    text.append(" for little endian");
+    text.append(lineSeparator);
+    return text.toString();
+  }
+
+  static String errorTruncated(
+    final String section,
+    final long offset,
+    final long required,
+    final long fileSize)
+  {
+    final var lineSeparator = System.lineSeparator();
+    final var text = new StringBuilder(128);
+    text.append("Out of bounds.");
+    text.append(lineSeparator);
+    text.append("  The ");
+    text.append(section);
+    text.append(" at file offset 0x");
+    text.append(Long.toUnsignedString(offset, 16));
+    text.append(" requires ");
+    text.append(Long.toUnsignedString(required));
+    text.append(" bytes.");
+    text.append(lineSeparator);
+    text.append("  The file has a size of ");
+    text.append(Long.toUnsignedString(fileSize));
+    text.append(" bytes.");
+    text.append(lineSeparator);
+    return text.toString();
+  }
+
+  static String formatBytes(
+    final byte[] data)
+  {
+    final var builder = new StringBuilder(24);
+    for (final var b : data) {
+      builder.append(String.format("%02x", b));
+    }
+    return builder.toString();
+  }
+
+  private static boolean matches(
+    final ByteBuffer buffer,
+    final int offset,
+    final byte[] expected)
+  {
+    for (int index = 0; index < expected.length; ++index) {
+      if (buffer.get(offset + index) != expected[index]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static byte[] copyOf(
+    final ByteBuffer buffer,
+    final int offset,
+    final int length)
+  {
+    final var bytes = new byte[length];
+    buffer.get(offset, bytes);
+    return bytes;
+  }
+
+  static long u32(
+    final ByteBuffer buffer,
+    final int offset)
+  {
+    return Integer.toUnsignedLong(buffer.getInt(offset));
+  }
+
+  static long minUnsigned(
+    final long x,
+    final long y)
+  {
+    if (Long.compareUnsigned(x, y) > 0) {
+      return x;
+    }
+    return y;
+  }
+
+  public static int identify(
+    final ByteBuffer buffer)
+    throws IOException
+  {
+    if (matches(buffer, 0, KTX2_IDENTIFIER)) {
+      return 2;
+    }
+    if (matches(buffer, 0, KTX1_IDENTIFIER)) {
+      return 1;
+    }
+    throw new IOException(
+      errorUnrecognizedFileIdentifier(copyOf(buffer, 0, 12))
+    );
+  }
+
+  public static KTX1Header decodeKTX1(
+    final ByteBuffer buffer)
+    throws IOException
+  {
+    final boolean isBigEndian;
+    if (matches(buffer, 12, ENDIAN_BIG)) {
+      isBigEndian = true;
+      buffer.order(ByteOrder.BIG_ENDIAN);
+    } else if (matches(buffer, 12, ENDIAN_LITTLE)) {
+      isBigEndian = false;
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+    } else {
+      throw new IOException(
+        errorUnrecognizedEndianness(copyOf(buffer, 12, 4))
+      );
+    }
+
+    return new KTX1Header(
+      isBigEndian,
+      u32(buffer, 16),
+      u32(buffer, 20),
+      u32(buffer, 24),
+      u32(buffer, 28),
+      u32(buffer, 32),
+      u32(buffer, 36),
+      u32(buffer, 40),
+      u32(buffer, 44),
+      u32(buffer, 48),
+      minUnsigned(u32(buffer, 52), 1L),
+      u32(buffer, 56),
+      u32(buffer, 60)
+    );
+  }
+
+  public static KTX2Header decodeKTX2(
+    final ByteBuffer buffer,
+    final int offset)
+  {
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    return new KTX2Header(
+      u32(buffer, offset),
+      u32(buffer, offset + 4),
+      u32(buffer, offset + 8),
+      u32(buffer, offset + 12),
+      u32(buffer, offset + 16),
+      u32(buffer, offset + 20),
+      u32(buffer, offset + 24),
+      u32(buffer, offset + 28),
+      u32(buffer, offset + 32)
+    );
+  }
+
+  public static KTX2Index decodeKTX2Index(
+    final ByteBuffer buffer,
+    final int offset)
+  {
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    return new KTX2Index(
+      u32(buffer, offset),
+      u32(buffer, offset + 4),
+      u32(buffer, offset + 8),
+      u32(buffer, offset + 12),
+      buffer.getLong(offset + 16),
+      buffer.getLong(offset + 24)
+    );
+  }
+
+  public static List<KTX2Level> decodeKTX2Levels(
+    final ByteBuffer buffer,
+    final int levelCount)
+  {
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+    final var levels = new ArrayList<KTX2Level>(levelCount);
+    for (int level = 0; level < levelCount; ++level) {
+      final var base = level * 24;
+      levels.add(
+        new KTX2Level(
+          level,
+          buffer.getLong(base),
+          buffer.getLong(base + 8),
+          buffer.getLong(base + 16)
+        )
+      );
+    }
+    return levels;
+  }
+}
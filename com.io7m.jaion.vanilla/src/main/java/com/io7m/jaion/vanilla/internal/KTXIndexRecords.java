@@ -0,0 +1,373 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.vanilla.internal;
+
+import com.io7m.jaion.api.KTX1Header;
+import com.io7m.jaion.api.KTX2Header;
+import com.io7m.jaion.api.KTX2Index;
+import com.io7m.jaion.api.KTX2Level;
+import com.io7m.jaion.api.KTXFileReadableType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Optional;
+
+public final class KTXIndexRecords
+{
+  private static final int MAGIC = 0x4958_4b4a;
+  private static final int VERSION = 1;
+  private static final int KIND_KTX1 = 1;
+  private static final int KIND_KTX2 = 2;
+  private static final int PREAMBLE_SIZE = 4 + 4 + 8 + 8 + 4;
+
+  private KTXIndexRecords()
+  {
+
+  }
+
+  public static ByteBuffer encode(
+    final long fileSize,
+    final long modified,
+    final KTXFileReadableType file)
+  {
+    if (file instanceof KTX1FileReadable ktx1) {
+      return encodeKTX1(fileSize, modified, ktx1);
+    }
+    return encodeKTX2(fileSize, modified, (KTX2FileReadable) file);
+  }
+
+  private static ByteBuffer preamble(
+    final int size,
+    final long fileSize,
+    final long modified,
+    final int kind)
+  {
+    final var buffer =
+      ByteBuffer.allocate(size)
+        .order(ByteOrder.LITTLE_ENDIAN);
+
+    buffer.putInt(MAGIC);
+    buffer.putInt(VERSION);
+    buffer.putLong(fileSize);
+    buffer.putLong(modified);
+    buffer.putInt(kind);
+    return buffer;
+  }
+
+  private static void putEntries(
+    final ByteBuffer buffer,
+    final int[] entries)
+  {
+    buffer.putInt(entries.length);
+    for (final var entry : entries) {
+      buffer.putInt(entry);
+    }
+  }
+
+  private static ByteBuffer encodeKTX1(
+    final long fileSize,
+    final long modified,
+    final KTX1FileReadable file)
+  {
+    final var header = file.header();
+    final var entries = file.keyValues().entryTable();
+    final var images = file.subImageIndex();
+
+    final var size =
+      PREAMBLE_SIZE
+      + 1 + (12 * 8)
+      + 4 + (entries.length * 4)
+      + 4 + (images.size() * 16);
+
+    final var buffer = preamble(size, fileSize, modified, KIND_KTX1);
+    buffer.put((byte) (header.isBigEndian() ? 1 : 0));
+    buffer.putLong(header.glType());
+    buffer.putLong(header.glTypeSize());
+    buffer.putLong(header.glFormat());
+    buffer.putLong(header.glInternalFormat());
+    buffer.putLong(header.glBaseInternalFormat());
+    buffer.putLong(header.pixelWidth());
+    buffer.putLong(header.pixelHeight());
+    buffer.putLong(header.pixelDepth());
+    buffer.putLong(header.numberOfArrayElements());
+    buffer.putLong(header.numberOfFaces());
+    buffer.putLong(header.numberOfMipmapLevels());
+    buffer.putLong(header.bytesOfKeyValueData());
+    putEntries(buffer, entries);
+
+    buffer.putInt(images.size());
+    for (int index = 0; index < images.size(); ++index) {
+      buffer.putLong(images.offset(index));
+      buffer.putLong(images.sizeOf(index));
+    }
+    return buffer.flip();
+  }
+
+  private static ByteBuffer encodeKTX2(
+    final long fileSize,
+    final long modified,
+    final KTX2FileReadable file)
+  {
+    final var header = file.header();
+    final var index = file.index();
+    final var entries = file.keyValues().entryTable();
+    final var levels = file.levels();
+
+    final var size =
+      PREAMBLE_SIZE
+      + (9 * 8)
+      + (6 * 8)
+      + 4 + (entries.length * 4)
+      + 4 + (levels.size() * 28);
+
+    final var buffer = preamble(size, fileSize, modified, KIND_KTX2);
+    buffer.putLong(header.format());
+    buffer.putLong(header.typeSize());
+    buffer.putLong(header.pixelWidth());
+    buffer.putLong(header.pixelHeight());
+    buffer.putLong(header.pixelDepth());
+    buffer.putLong(header.layerCount());
+    buffer.putLong(header.faceCount());
+    buffer.putLong(header.levelCount());
+    buffer.putLong(header.supercompressionScheme());
+    buffer.putLong(index.dfdByteOffset());
+    buffer.putLong(index.dfdByteLength());
+    buffer.putLong(index.kvdByteOffset());
+    buffer.putLong(index.kvdByteLength());
+    buffer.putLong(index.sgdByteOffset());
+    buffer.putLong(index.sgdByteLength());
+    putEntries(buffer, entries);
+
+    buffer.putInt(levels.size());
+    for (final var level : levels) {
+      buffer.putInt(level.mipMapLevel());
+      buffer.putLong(level.byteOffset());
+      buffer.putLong(level.byteLength());
+      buffer.putLong(level.uncompressedByteLength());
+    }
+    return buffer.flip();
+  }
+
+  public static Optional<KTXFileReadableType> decode(
+    final ByteBuffer record,
+    final long fileSize,
+    final long modified,
+    final Closeable resource,
+    final KTXDataSourceType data)
+  {
+    /*
+     * Any record that doesn't describe exactly this version of the file,
+     * or that can't be decoded, is treated as stale so that the caller
+     * falls back to parsing the file.
+     */
+
+    final var buffer =
+      record.duplicate()
+        .order(ByteOrder.LITTLE_ENDIAN);
+
+    try {
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+        return Optional.empty();
+      }
+      if (buffer.getLong() != fileSize || buffer.getLong() != modified) {
+        return Optional.empty();
+      }
+      if (fileSize != data.size()) {
+        return Optional.empty();
+      }
+
+      return switch (buffer.getInt()) {
+        case KIND_KTX1 -> Optional.of(decodeKTX1(buffer, resource, data));
+        case KIND_KTX2 -> Optional.of(decodeKTX2(buffer, resource, data));
+        default -> Optional.empty();
+      };
+    } catch (final BufferUnderflowException
+                   | IndexOutOfBoundsException
+                   | NegativeArraySizeException
+                   | IllegalArgumentException
+                   | IOException e) {
+      return Optional.empty();
+    }
+  }
+
+  private static int getCount(
+    final ByteBuffer buffer,
+    final int recordSize)
+    throws IOException
+  {
+    /*
+     * Counts are checked against the bytes actually present before
+     * anything is allocated, so that a corrupt index can't request an
+     * arbitrarily large array.
+     */
+
+    final var count = buffer.getInt();
+    if (count < 0 || count > buffer.remaining() / recordSize) {
+      throw new IOException("Record count exceeds the index size.");
+    }
+    return count;
+  }
+
+  private static int[] getEntries(
+    final ByteBuffer buffer)
+    throws IOException
+  {
+    final var entries = new int[getCount(buffer, 4)];
+    for (int index = 0; index < entries.length; ++index) {
+      entries[index] = buffer.getInt();
+    }
+    return entries;
+  }
+
+  private static KTXKeyValueData keyValuesOf(
+    final KTXDataSourceType data,
+    final long offset,
+    final long size,
+    final ByteOrder order,
+    final int[] entries)
+    throws IOException
+  {
+    if (entries.length == 0) {
+      return KTXKeyValueData.empty();
+    }
+    if (Long.compareUnsigned(size, Integer.MAX_VALUE) > 0) {
+      throw new IOException("Key/value region too large.");
+    }
+    return KTXKeyValueData.ofEntries(
+      data.data(offset, (int) size),
+      order,
+      entries
+    );
+  }
+
+  private static KTX1FileReadable decodeKTX1(
+    final ByteBuffer buffer,
+    final Closeable resource,
+    final KTXDataSourceType data)
+    throws IOException
+  {
+    final var header =
+      new KTX1Header(
+        buffer.get() != 0,
+        buffer.getLong(),
+        buffer.getLong(),
+        buffer.getLong(),
+        buffer.getLong(),
+        buffer.getLong(),
+        buffer.getLong(),
+        buffer.getLong(),
+        buffer.getLong(),
+        buffer.getLong(),
+        buffer.getLong(),
+        buffer.getLong(),
+        buffer.getLong()
+      );
+
+    final var keyValues =
+      keyValuesOf(
+        data,
+        64L,
+        header.bytesOfKeyValueData(),
+        header.isBigEndian() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN,
+        getEntries(buffer)
+      );
+
+    final var count = getCount(buffer, 16);
+    final var expected =
+      KTX1SubImageIndex.countFor(
+        KTXHeaders.minUnsigned(header.numberOfMipmapLevels(), 1L),
+        KTXHeaders.minUnsigned(header.numberOfArrayElements(), 1L),
+        KTXHeaders.minUnsigned(header.numberOfFaces(), 1L),
+        KTXHeaders.minUnsigned(header.pixelDepth(), 1L)
+      );
+    if (count != expected) {
+      throw new IOException("Sub-image count mismatch.");
+    }
+
+    final var images =
+      KTXParser.createSubImageIndex(
+        header,
+        KTXParser.alignUp(64L + header.bytesOfKeyValueData(), 4L),
+        data.size()
+      );
+    for (int index = 0; index < images.size(); ++index) {
+      images.set(index, buffer.getLong(), buffer.getLong());
+    }
+
+    return new KTX1FileReadable(resource, data, header, keyValues, images);
+  }
+
+  private static KTX2FileReadable decodeKTX2(
+    final ByteBuffer buffer,
+    final Closeable resource,
+    final KTXDataSourceType data)
+    throws IOException
+  {
+    final var header =
+      new KTX2Header(
+        buffer.getLong(),
+        buffer.getLong(),
+        buffer.getLong(),
+        buffer.getLong(),
+        buffer.getLong(),
+        buffer.getLong(),
+        buffer.getLong(),
+        buffer.getLong(),
+        buffer.getLong()
+      );
+
+    final var index =
+      new KTX2Index(
+        buffer.getLong(),
+        buffer.getLong(),
+        buffer.getLong(),
+        buffer.getLong(),
+        buffer.getLong(),
+        buffer.getLong()
+      );
+
+    final var keyValues =
+      keyValuesOf(
+        data,
+        index.kvdByteOffset(),
+        index.kvdByteLength(),
+        ByteOrder.LITTLE_ENDIAN,
+        getEntries(buffer)
+      );
+
+    final var levelCount = getCount(buffer, 4 + 8 + 8 + 8);
+    final var levels = new ArrayList<KTX2Level>(levelCount);
+    for (int level = 0; level < levelCount; ++level) {
+      levels.add(
+        new KTX2Level(
+          buffer.getInt(),
+          buffer.getLong(),
+          buffer.getLong(),
+          buffer.getLong()
+        )
+      );
+    }
+
+    return new KTX2FileReadable(
+      resource, data, header, index, keyValues, levels);
+  }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.vanilla.internal;
+
+import com.io7m.jaion.api.KTXFileReadableType;
+import com.io7m.jaion.api.KTXIndexStoreType;
+import com.io7m.jaion.api.KTXParseRequest;
+import com.io7m.jaion.api.KTXParserType;
+import com.io7m.jbssio.api.BSSReaderProviderType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.lang.System.Logger.Level.WARNING;
+
+public final class KTXIndexedParser implements KTXParserType
+{
+  private static final System.Logger LOG =
+    System.getLogger(KTXIndexedParser.class.getName());
+
+  private final BSSReaderProviderType readers;
+  private final KTXIndexStoreType store;
+  private final Path file;
+  private final long fileSize;
+  private final long modified;
+  private final AtomicBoolean closed;
+
+  public KTXIndexedParser(
+    final BSSReaderProviderType inReaders,
+    final KTXIndexStoreType inStore,
+    final Path inFile,
+    final long inFileSize,
+    final long inModified)
+  {
+    this.readers =
+      Objects.requireNonNull(inReaders, "readers");
+    this.store =
+      Objects.requireNonNull(inStore, "store");
+    this.file =
+      Objects.requireNonNull(inFile, "file");
+    this.fileSize =
+      inFileSize;
+    this.modified =
+      inModified;
+    this.closed =
+      new AtomicBoolean(false);
+  }
+
+  @Override
+  public KTXFileReadableType execute()
+    throws IOException
+  {
+    if (!this.closed.compareAndSet(false, true)) {
+      throw new IllegalStateException("Parser is closed.");
+    }
+
+    final var existing = this.readIndex();
+    if (existing.isPresent()) {
+      final var decoded = this.decodeIndex(existing.get());
+      if (decoded.isPresent()) {
+        return decoded.get();
+      }
+    }
+
+    final var result = this.parse();
+
+    /*
+     * The index is only a cache. Failing to persist it (for example,
+     * because the sidecar directory is read-only) must not fail a parse
+     * that has already succeeded, and must not leak the parsed file.
+     */
+
+    try {
+      this.store.write(
+        this.file,
+        KTXIndexRecords.encode(this.fileSize, this.modified, result)
+      );
+    } catch (final IOException e) {
+      LOG.log(
+        WARNING,
+        "Failed to write index for {0}: {1}",
+        this.file,
+        e.getMessage()
+      );
+    }
+    return result;
+  }
+
+  private Optional<ByteBuffer> readIndex()
+  {
+    /*
+     * An index that cannot be read is treated in the same way as an
+     * index that does not exist: the file is parsed in full.
+     */
+
+    try {
+      return this.store.read(this.file);
+    } catch (final IOException e) {
+      LOG.log(
+        WARNING,
+        "Failed to read index for {0}: {1}",
+        this.file,
+        e.getMessage()
+      );
+      return Optional.empty();
+    }
+  }
+
+  private Optional<KTXFileReadableType> decodeIndex(
+    final ByteBuffer record)
+    throws IOException
+  {
+    /*
+     * A file described by a valid index is never mapped as a whole.
+     * Sub-image data is read through the channel on demand, and the
+     * channel is owned by the returned file.
+     */
+
+    final var channel = FileChannel.open(this.file);
+    try {
+      final var decoded =
+        KTXIndexRecords.decode(
+          record,
+          this.fileSize,
+          this.modified,
+          channel,
+          new KTXDataSourceChannel(channel)
+        );
+      if (decoded.isEmpty()) {
+        channel.close();
+      }
+      return decoded;
+    } catch (final RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  private KTXFileReadableType parse()
+    throws IOException
+  {
+    try (var channel = FileChannel.open(this.file)) {
+      final var request =
+        KTXParseRequest.builder(channel, this.file.toUri())
+          .build();
+      final var data =
+        KTXDataSourceMapped.map(channel);
+      final var reader =
+        this.readers.createReaderFromByteBuffer(
+          request.source(),
+          data.mapped(),
+          "ktx");
+
+      final var parser = new KTXParser(request, reader, data);
+      try {
+        return parser.execute();
+      } catch (final IOException | RuntimeException e) {
+        parser.close();
+        throw e;
+      }
+    }
+  }
+
+  @Override
+  public void close()
+  {
+    this.closed.set(true);
+  }
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.vanilla.internal;
+
+import com.io7m.jaion.api.KTXKeyValueDataType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public final class KTXKeyValueData implements KTXKeyValueDataType
+{
+  private static final int[] NO_ENTRIES = new int[0];
+  private static final KTXKeyValueData EMPTY =
+    new KTXKeyValueData(ByteBuffer.allocate(0), NO_ENTRIES, 0);
+
+  private final ByteBuffer region;
+  private final int[] entries;
+  private final int count;
+  private volatile Map<String, String> strings;
+
+  private KTXKeyValueData(
+    final ByteBuffer inRegion,
+    final int[] inEntries,
+    final int inCount)
+  {
+    this.region =
+      Objects.requireNonNull(inRegion, "region").asReadOnlyBuffer();
+    this.entries =
+      Objects.requireNonNull(inEntries, "entries");
+    this.count =
+      inCount;
+  }
+
+  public static KTXKeyValueData empty()
+  {
+    return EMPTY;
+  }
+
+  public static KTXKeyValueData index(
+    final ByteBuffer region,
+    final ByteOrder order,
+    final long regionOffset,
+    final long datumLimit)
+    throws IOException
+  {
+    Objects.requireNonNull(region, "region");
+    Objects.requireNonNull(order, "order");
+
+    final var view = region.slice().order(order);
+    final var length = view.capacity();
+
+    var entries = NO_ENTRIES;
+    var count = 0;
+    var position = 0;
+
+    while (length - position >= 4) {
+      final var entrySize = KTXHeaders.u32(view, position);
+      if (Long.compareUnsigned(entrySize, datumLimit) > 0) {
+        throw new IOException(
+          KTXParser.errorLimitExceeded(
+            regionOffset + position,
+            entrySize,
+            "key/value datum limit",
+            datumLimit)
+        );
+      }
+
+      final var entryStart = position + 4;
+      if (entrySize > length - entryStart) {
+        throw new IOException(
+          KTXHeaders.errorTruncated(
+            "key/value datum",
+            regionOffset + entryStart,
+            entrySize,
+            regionOffset + length)
+        );
+      }
+
+      final var entryEnd = entryStart + (int) entrySize;
+      var keyEnd = entryEnd;
+      for (int index = entryStart; index < entryEnd; ++index) {
+        if (view.get(index) == 0) {
+          keyEnd = index;
+          break;
+        }
+      }
+
+      if (count * 3 == entries.length) {
+        final var resized = new int[Math.max(24, entries.length * 2)];
+        System.arraycopy(entries, 0, resized, 0, entries.length);
+        entries = resized;
+      }
+
+      entries[count * 3] = entryStart;
+      entries[count * 3 + 1] = keyEnd;
+      entries[count * 3 + 2] = entryEnd;
+      ++count;
+
+      position = (int) KTXParser.alignUp(entryEnd, 4L);
+    }
+
+    if (count == 0) {
+      return EMPTY;
+    }
+    return new KTXKeyValueData(view, entries, count);
+  }
+
+  static KTXKeyValueData ofEntries(
+    final ByteBuffer region,
+    final ByteOrder order,
+    final int[] entries)
+    throws IOException
+  {
+    Objects.requireNonNull(region, "region");
+    Objects.requireNonNull(order, "order");
+    Objects.requireNonNull(entries, "entries");
+
+    final var view = region.slice().order(order);
+    final var length = view.capacity();
+    if (entries.length % 3 != 0) {
+      throw new IOException("Malformed key/value entry table.");
+    }
+
+    for (int index = 0; index < entries.length; index += 3) {
+      final var keyStart = entries[index];
+      final var keyEnd = entries[index + 1];
+      final var entryEnd = entries[index + 2];
+      if (keyStart < 0 || keyStart > keyEnd || keyEnd > entryEnd
+          || entryEnd > length) {
+        throw new IOException("Malformed key/value entry table.");
+      }
+    }
+
+    if (entries.length == 0) {
+      return EMPTY;
+    }
+    return new KTXKeyValueData(view, entries.clone(), entries.length / 3);
+  }
+
+  static ByteBuffer encode(
+    final Collection<Map.Entry<String, ByteBuffer>> entries,
+    final ByteOrder order)
+  {
+    Objects.requireNonNull(entries, "entries");
+    Objects.requireNonNull(order, "order");
+
+    var size = 0L;
+    for (final var entry : entries) {
+      size += 4L + KTXParser.alignUp(encodedEntrySize(entry), 4L);
+    }
+
+    if (size > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException(
+        "Key/value data of %d bytes is too large."
+          .formatted(Long.valueOf(size))
+      );
+    }
+
+    /*
+     * Each entry is a keyAndValueByteSize field, a NUL-terminated UTF-8
+     * key, the value bytes, and valuePadding to a multiple of four bytes.
+     */
+
+    final var buffer = ByteBuffer.allocate((int) size).order(order);
+    for (final var entry : entries) {
+      buffer.putInt((int) encodedEntrySize(entry));
+      buffer.put(entry.getKey().getBytes(UTF_8));
+      buffer.put((byte) 0);
+      buffer.put(entry.getValue().duplicate());
+      buffer.position((int) KTXParser.alignUp(buffer.position(), 4L));
+    }
+    return buffer.flip();
+  }
+
+  private static long encodedEntrySize(
+    final Map.Entry<String, ByteBuffer> entry)
+  {
+    final var key = entry.getKey();
+    if (key.indexOf('\0') != -1) {
+      throw new IllegalArgumentException(
+        "Keys must not contain NUL characters."
+      );
+    }
+    return key.getBytes(UTF_8).length + 1L + entry.getValue().remaining();
+  }
+
+  int[] entryTable()
+  {
+    return Arrays.copyOf(this.entries, this.count * 3);
+  }
+
+  private void checkIndex(
+    final int index)
+  {
+    Objects.checkIndex(index, this.count);
+  }
+
+  @Override
+  public int size()
+  {
+    return this.count;
+  }
+
+  @Override
+  public String key(
+    final int index)
+  {
+    this.checkIndex(index);
+
+    final var keyStart = this.entries[index * 3];
+    final var keyEnd = this.entries[index * 3 + 1];
+    final var bytes = new byte[keyEnd - keyStart];
+    this.region.get(keyStart, bytes);
+    return new String(bytes, UTF_8);
+  }
+
+  @Override
+  public ByteBuffer value(
+    final int index)
+  {
+    this.checkIndex(index);
+
+    final var keyEnd = this.entries[index * 3 + 1];
+    final var entryEnd = this.entries[index * 3 + 2];
+    final var valueStart = Math.min(keyEnd + 1, entryEnd);
+    return this.region.slice(valueStart, entryEnd - valueStart)
+      .order(this.region.order());
+  }
+
+  @Override
+  public Optional<ByteBuffer> value(
+    final String key)
+  {
+    Objects.requireNonNull(key, "key");
+
+    /*
+     * Compare the encoded key against the raw region in place so that
+     * lookups do not decode the keys of entries that don't match.
+     */
+
+    final var encoded = key.getBytes(UTF_8);
+    for (int index = 0; index < this.count; ++index) {
+      final var keyStart = this.entries[index * 3];
+      final var keyEnd = this.entries[index * 3 + 1];
+      if (keyEnd - keyStart == encoded.length
+          && this.keyMatches(keyStart, encoded)) {
+        return Optional.of(this.value(index));
+      }
+    }
+    return Optional.empty();
+  }
+
+  private boolean keyMatches(
+    final int keyStart,
+    final byte[] encoded)
+  {
+    for (int index = 0; index < encoded.length; ++index) {
+      if (this.region.get(keyStart + index) != encoded[index]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public Map<String, String> asStrings()
+  {
+    var result = this.strings;
+    if (result == null) {
+      result = Map.copyOf(this.decodeStrings());
+      this.strings = result;
+    }
+    return result;
+  }
+
+  private Map<String, String> decodeStrings()
+  {
+    final var result = new HashMap<String, String>(this.count);
+    for (int index = 0; index < this.count; ++index) {
+      final var value = this.value(index);
+      var valueEnd = value.limit();
+      for (int offset = 0; offset < value.limit(); ++offset) {
+        if (value.get(offset) == 0) {
+          valueEnd = offset;
+          break;
+        }
+      }
+
+      final var bytes = new byte[valueEnd];
+      value.get(0, bytes);
+      result.put(this.key(index), new String(bytes, UTF_8));
+    }
+    return result;
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.vanilla.internal;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.io7m.jaion.LevelRead")
+@Label("KTX2 Level Read")
+@Category({"Jaion", "KTX"})
+@Description("Level data was read from a KTX2 file.")
+@StackTrace(false)
+final class KTXLevelReadEvent extends Event
+{
+  @Label("Operation")
+  String operation;
+
+  @Label("Level Count")
+  int levelCount;
+
+  @Label("Mipmap Level")
+  @Description("The first mipmap level read.")
+  int mipMapLevel;
+
+  @Label("Byte Offset")
+  @Description("The file offset of the first level read.")
+  long byteOffset;
+
+  @Label("Byte Count")
+  @DataAmount
+  long byteCount;
+
+  KTXLevelReadEvent()
+  {
+
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.vanilla.internal;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("com.io7m.jaion.Parse")
+@Label("KTX Parse")
+@Category({"Jaion", "KTX"})
+@Description("A KTX file was parsed.")
+@StackTrace(false)
+final class KTXParseEvent extends Event
+{
+  @Label("Source")
+  String source;
+
+  @Label("Format Version")
+  int formatVersion;
+
+  @Label("Succeeded")
+  boolean succeeded;
+
+  @Label("Bytes Read")
+  @Description("The bytes of the file requested by the parser.")
+  @DataAmount
+  long bytesRead;
+
+  @Label("Parser Reads")
+  @Description("The reads requested by the parser, not channel calls.")
+  long parserReads;
+
+  @Label("Parser Seeks")
+  @Description("The seeks and skips requested by the parser.")
+  long parserSeeks;
+
+  @Label("Key/Value Bytes")
+  @DataAmount
+  long keyValueBytes;
+
+  @Label("Header Duration")
+  @Description("The time spent reading and decoding headers and indices.")
+  @Timespan
+  long headerDuration;
+
+  @Label("Key/Value Duration")
+  @Timespan
+  long keyValueDuration;
+
+  @Label("Sub-Image Index Duration")
+  @Description("The time spent walking the KTX1 image size fields.")
+  @Timespan
+  long indexDuration;
+
+  KTXParseEvent()
+  {
+
+  }
+}
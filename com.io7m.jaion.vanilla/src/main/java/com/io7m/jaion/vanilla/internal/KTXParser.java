@@ -17,159 +17,68 @@
 package com.io7m.jaion.vanilla.internal;
 
 import com.io7m.jaion.api.KTX1Header;
+import com.io7m.jaion.api.KTX2Index;
 import com.io7m.jaion.api.KTXFileReadableType;
 import com.io7m.jaion.api.KTXParseRequest;
 import com.io7m.jaion.api.KTXParserType;
 import com.io7m.jbssio.api.BSSReaderRandomAccessType;
 
 import java.io.IOException;
-import java.util.ArrayDeque;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
-
 public final class KTXParser implements KTXParserType
 {
-  private static final byte[] KTX1_IDENTIFIER = {
-    (byte) 0xAB,
-    (byte) 0x4B,
-    (byte) 0x54,
-    (byte) 0x58,
-    (byte) 0x20,
-    (byte) 0x31,
-    (byte) 0x31,
-    (byte) 0xBB,
-    (byte) 0x0D,
-    (byte) 0x0A,
-    (byte) 0x1A,
-    (byte) 0x0A
-  };
-  private static final byte[] KTX2_IDENTIFIER = {
-    (byte) 0xAB,
-    (byte) 0x4B,
-    (byte) 0x54,
-    (byte) 0x58,
-    (byte) 0x20,
-    (byte) 0x32,
-    (byte) 0x30,
-    (byte) 0xBB,
-    (byte) 0x0D,
-    (byte) 0x0A,
-    (byte) 0x1A,
-    (byte) 0x0A
-  };
-  private static final byte[] ENDIAN_BIG = {
-    (byte) 0x04,
-    (byte) 0x03,
-    (byte) 0x02,
-    (byte) 0x01
-  };
-  private static final byte[] ENDIAN_LITTLE = {
-    (byte) 0x01,
-    (byte) 0x02,
-    (byte) 0x03,
-    (byte) 0x04
-  };
+  static final long KTX1_SUB_IMAGES_MAXIMUM = 0x3fff_ffffL;
+  static final long MIPMAP_LEVELS_MAXIMUM = 32L;
+  static final int KTX2_HEADER_INDEX_SIZE = 68;
+  static final int KTX2_LEVEL_SIZE = 24;
+  static final int KTX2_LEVELS_SPECULATIVE = 16;
+  static final long KTX2_LEVEL_COUNT_OFFSET = 40L;
 
   private final AtomicBoolean closed;
   private final KTXParseRequest request;
   private final BSSReaderRandomAccessType readerInitial;
-  private final ArrayDeque<BSSReaderRandomAccessType> readerStack;
+  private final KTXDataSourceType data;
+  private final ByteBuffer[] headerTargets;
   private BSSReaderRandomAccessType reader;
   private boolean isBigEndian;
+  private KTXParseEvent event;
+  private long phaseStart;
 
   public KTXParser(
     final KTXParseRequest inRequest,
-    final BSSReaderRandomAccessType inReader)
+    final BSSReaderRandomAccessType inReader,
+    final KTXDataSourceType inData)
   {
     this.request =
       Objects.requireNonNull(inRequest, "inRequest");
     this.readerInitial =
       Objects.requireNonNull(inReader, "reader");
-    this.readerStack =
-      new ArrayDeque<>();
+    this.data =
+      Objects.requireNonNull(inData, "data");
+    this.headerTargets =
+      new ByteBuffer[1];
     this.reader =
       this.readerInitial;
     this.closed =
       new AtomicBoolean(false);
   }
 
-  private static String errorUnrecognizedFileIdentifier(
-    final byte[] identifier)
-  {
-    final var lineSeparator = System.lineSeparator();
-    final var text = new StringBuilder(128);
-    text.append("Unrecognized file identifier.");
-    text.append(lineSeparator);
-    text.append("  Received:");
-    text.append(lineSeparator);
-    text.append("    ");
-    text.append(formatBytes(identifier));
-    text.append(lineSeparator);
-    text.append("  Expected one of:");
-    text.append(lineSeparator);
-    text.append("    ");
-    text.append(formatBytes(KTX1_IDENTIFIER));
-    text.append(" for KTX 1.0");
-    text.append(lineSeparator);
-    text.append("    ");
-    text.append(formatBytes(KTX2_IDENTIFIER));
-    text.append(" for KTX 2.0");
-    text.append(lineSeparator);
-    return text.toString();
-  }
-
-  private static String errorUnrecognizedEndianness(
-    final byte[] endianness)
-  {
-    final var lineSeparator = System.lineSeparator();
-    final var text = new StringBuilder(128);
-    text.append("Unrecognized endianness value.");
-    text.append(lineSeparator);
-    text.append("  Received:");
-    text.append(lineSeparator);
-    text.append("    ");
-    text.append(formatBytes(endianness));
-    text.append(lineSeparator);
-    text.append("  Expected one of:");
-    text.append(lineSeparator);
-    text.append("    ");
-    text.append(formatBytes(ENDIAN_BIG));
-    text.append(" for big endian");
-    text.append(lineSeparator);
-    text.append("    ");
-    text.append(formatBytes(ENDIAN_LITTLE));
-    text.append(" for little endian");
-    text.append(lineSeparator);
-    return text.toString();
-  }
-
-  private static String formatBytes(
-    final byte[] data)
-  {
-    final var builder = new StringBuilder(24);
-    for (final var b : data) {
-      builder.append(String.format("%02x", b));
-    }
-    return builder.toString();
-  }
-
-  private String errorLimitExceeded(
+  static String errorLimitExceeded(
+    final long offset,
     final long length,
-    final String limitName)
+    final String limitName,
+    final long limit)
   {
     final var lineSeparator = System.lineSeparator();
     final var text = new StringBuilder(128);
     text.append("Limit exceeded.");
     text.append(lineSeparator);
     text.append("  At file offset 0x");
-    text.append(Long.toUnsignedString(this.reader.offsetCurrentAbsolute(), 16));
+    text.append(Long.toUnsignedString(offset, 16));
     text.append(" we encountered data with a size specified as ");
     text.append(Long.toUnsignedString(length));
     text.append('.');
@@ -177,7 +86,7 @@ public final class KTXParser implements KTXParserType
     text.append("  The ");
     text.append(limitName);
     text.append(" is configured as ");
-    text.append(Long.toUnsignedString(this.request.keyValueRegionLimit()));
+    text.append(Long.toUnsignedString(limit));
     text.append('.');
     text.append(lineSeparator);
     return text.toString();
@@ -191,255 +100,297 @@ public final class KTXParser implements KTXParserType
       throw new IllegalStateException("Parser is closed.");
     }
 
-    this.readerStack.clear();
     this.reader = this.readerInitial;
 
-    final var identifier = new byte[12];
-    this.reader.seekTo(0L);
-    this.reader.readBytes(identifier);
+    /*
+     * The parse event is always populated so that the parser needs no
+     * separate code path for recording; the counters and timestamps are
+     * cheap next to the I/O they describe.
+     */
 
-    if (Arrays.equals(identifier, KTX2_IDENTIFIER)) {
-      return this.executeKTX2();
-    }
-    if (Arrays.equals(identifier, KTX1_IDENTIFIER)) {
-      return this.executeKTX1();
+    this.event = new KTXParseEvent();
+    this.event.begin();
+    this.phaseStart = System.nanoTime();
+
+    try {
+      final var result = this.executeIdentify();
+      this.event.succeeded = true;
+      return result;
+    } finally {
+      if (this.event.shouldCommit()) {
+        this.event.source = this.request.source().toString();
+        this.event.commit();
+      }
     }
+  }
 
-    throw new IOException(errorUnrecognizedFileIdentifier(identifier));
+  private long phaseEnd()
+  {
+    final var now = System.nanoTime();
+    final var duration = now - this.phaseStart;
+    this.phaseStart = now;
+    return duration;
   }
 
-  private KTXFileReadableType executeKTX1()
-    throws IOException
+  private void countRead(
+    final long size)
   {
-    final KTX1Header header;
+    ++this.event.parserReads;
+    this.event.bytesRead += size;
+  }
 
-    try {
-      this.startReader("header", 52L);
+  private void seekTo(
+    final long offset)
+    throws IOException
+  {
+    ++this.event.parserSeeks;
+    this.reader.seekTo(offset);
+  }
 
-      final var endianness = new byte[4];
-      this.reader.readBytes(endianness);
+  private KTXFileReadableType executeIdentify()
+    throws IOException
+  {
+    /*
+     * The fixed KTX1 header is the larger of the two fixed headers. Read
+     * up to that many bytes in a single operation into the per-thread
+     * header buffer, and decode the identifier and (for KTX1) the whole
+     * header from there rather than field-by-field through the reader.
+     */
+
+    final var fileSize = this.data.size();
+    final var buffer = KTXHeaders.headerBuffer();
+    buffer.limit((int) Math.min(fileSize, buffer.capacity()));
+    this.headerTargets[0] = buffer;
+    this.data.readScattering(0L, this.headerTargets);
+    buffer.flip();
+    this.countRead(buffer.limit());
+
+    if (buffer.limit() < 12) {
+      throw new IOException(
+        KTXHeaders.errorTruncated("identifier", 0L, 12L, fileSize)
+      );
+    }
 
-      if (Arrays.equals(endianness, ENDIAN_BIG)) {
-        this.isBigEndian = true;
-      } else if (Arrays.equals(endianness, ENDIAN_LITTLE)) {
-        this.isBigEndian = false;
-      } else {
-        throw new IOException(errorUnrecognizedEndianness(endianness));
-      }
+    if (KTXHeaders.identify(buffer) == 2) {
+      this.event.formatVersion = 2;
+      this.seekTo(12L);
+      return this.executeKTX2();
+    }
+    this.event.formatVersion = 1;
+    return this.executeKTX1(buffer, fileSize);
+  }
 
-      final long glType =
-        this.readU32("glType");
-      final long glTypeSize =
-        this.readU32("glTypeSize");
-      final long glFormat =
-        this.readU32("glFormat");
-      final long glInternalFormat =
-        this.readU32("glInternalFormat");
-      final long glBaseInternalFormat =
-        this.readU32("glBaseInternalFormat");
-      final long pixelWidth =
-        this.readU32("pixelWidth");
-      final long pixelHeight =
-        this.readU32("pixelHeight");
-      final long pixelDepth =
-        this.readU32("pixelDepth");
-      final long numberOfArrayElements =
-        this.readU32("numberOfArrayElements");
-      final long numberOfFaces =
-        this.readU32("numberOfFaces");
-      final long numberOfMipmapLevels =
-        this.readU32("numberOfMipmapLevels");
-      final long bytesOfKeyValueData =
-        this.readU32("bytesOfKeyValueData");
-
-      header = new KTX1Header(
-        this.isBigEndian,
-        glType,
-        glTypeSize,
-        glFormat,
-        glInternalFormat,
-        glBaseInternalFormat,
-        pixelWidth,
-        pixelHeight,
-        pixelDepth,
-        numberOfArrayElements,
-        minUnsigned(numberOfFaces, 1L),
-        numberOfMipmapLevels,
-        bytesOfKeyValueData
+  private KTXFileReadableType executeKTX1(
+    final ByteBuffer buffer,
+    final long fileSize)
+    throws IOException
+  {
+    if (buffer.limit() < KTXHeaders.KTX1_HEADER_SIZE) {
+      throw new IOException(
+        KTXHeaders.errorTruncated(
+          "header",
+          12L,
+          KTXHeaders.KTX1_HEADER_SIZE - 12,
+          fileSize)
       );
-    } finally {
-      this.popReader();
     }
 
+    final var header = KTXHeaders.decodeKTX1(buffer);
+    this.isBigEndian = header.isBigEndian();
+    this.event.headerDuration = this.phaseEnd();
+
     {
       final var size = header.bytesOfKeyValueData();
       final var limit = this.request.keyValueRegionLimit();
       if (Long.compareUnsigned(size, limit) > 0) {
         throw new IOException(
-          this.errorLimitExceeded(size, "key/value region size limit")
+          errorLimitExceeded(
+            KTXHeaders.KTX1_HEADER_SIZE,
+            size,
+            "key/value region size limit",
+            limit)
         );
       }
     }
 
-    this.reader.seekTo(64L);
-    final var keyValues = new HashMap<String, String>();
-
-    final var dataOffset =
-      this.readKeyValueDataKTX1(header, keyValues);
+    final var keyValues =
+      this.readKeyValueData(
+        KTXHeaders.KTX1_HEADER_SIZE,
+        header.bytesOfKeyValueData(),
+        this.isBigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN
+      );
+    this.event.keyValueDuration = this.phaseEnd();
 
-    this.reader.seekTo(dataOffset);
+    this.seekTo(
+      alignUp(KTXHeaders.KTX1_HEADER_SIZE + header.bytesOfKeyValueData(), 4L)
+    );
 
     final var images =
       this.readSubImageOffsetsKTX1(header);
+    this.event.indexDuration = this.phaseEnd();
 
     this.closed.set(true);
-    return new KTX1FileReadable(this.reader, header, keyValues, dataOffset);
+    return new KTX1FileReadable(
+      this.reader,
+      this.data,
+      header,
+      keyValues,
+      images
+    );
   }
 
-  private List<KTX1SubImage> readSubImageOffsetsKTX1(
+  private KTX1SubImageIndex readSubImageOffsetsKTX1(
     final KTX1Header header)
     throws IOException
   {
-    final var subImages = new ArrayList<KTX1SubImage>();
-
-    if (header.numberOfFaces() == 6L && header.numberOfArrayElements() == 0L) {
-      return this.readSubImageOffsetsCubeMapKTX1(header);
-    }
-
+    final var index =
+      createSubImageIndex(
+        header,
+        this.reader.offsetCurrentAbsolute(),
+        this.data.size()
+      );
     final var mipMapCount =
-      (int) minUnsigned(header.numberOfMipmapLevels(), 1L);
-    final var arrayElementCount =
-      (int) minUnsigned(header.numberOfArrayElements(), 1L);
-    final var faceCount =
-      (int) minUnsigned(header.numberOfFaces(), 1L);
-    final var pixelDepth =
-      (int) minUnsigned(header.pixelDepth(), 1L);
+      (int) KTXHeaders.minUnsigned(header.numberOfMipmapLevels(), 1L);
+    final var cubeMap =
+      isCubeMap(header);
 
     for (int mipMapLevel = 0; mipMapLevel < mipMapCount; ++mipMapLevel) {
       final var imageSize = this.readU32("imageSize");
-
-      final var width =
-        (int) header.pixelWidth() >> mipMapLevel;
-      final var height =
-        (int) header.pixelHeight() >> mipMapLevel;
-
-      for (int arrayElement = 0; arrayElement < arrayElementCount; ++arrayElement) {
-        for (int faceIndex = 0; faceIndex < faceCount; ++faceIndex) {
-          for (int zSlice = 0; zSlice < pixelDepth; ++zSlice) {
-            subImages.add(
-              new KTX1SubImage(
-                this.reader.offsetCurrentAbsolute(),
-                imageSize,
-                mipMapLevel,
-                arrayElement,
-                faceIndex,
-                zSlice
-              )
-            );
-          }
-        }
-      }
-      this.reader.skip(imageSize);
-      this.reader.align(4);
+      final var dataOffset = this.reader.offsetCurrentAbsolute();
+      final var next =
+        index.setLevel(mipMapLevel, dataOffset, imageSize, cubeMap);
+      checkLevelEnd(dataOffset, next, this.data.size());
+      ++this.event.parserSeeks;
+      this.reader.skip(next - dataOffset);
     }
-
-    return List.copyOf(subImages);
+    return index;
   }
 
-  private List<KTX1SubImage> readSubImageOffsetsCubeMapKTX1(
-    final KTX1Header header)
+  static void checkLevelEnd(
+    final long dataOffset,
+    final long levelEnd,
+    final long fileSize)
+    throws IOException
   {
-    return List.of();
+    /*
+     * The final level may omit its trailing padding, but its data must
+     * otherwise lie entirely within the file.
+     */
+
+    if (levelEnd > alignUp(fileSize, 4L)) {
+      throw new IOException(
+        KTXHeaders.errorTruncated(
+          "image data", dataOffset, levelEnd - dataOffset, fileSize)
+      );
+    }
   }
 
-  private static long minUnsigned(
-    final long x,
-    final long y)
+  static long checkKTX2LevelCount(
+    final long fileOffset,
+    final long levelCountRaw)
+    throws IOException
   {
-    if (Long.compareUnsigned(x, y) > 0) {
-      return x;
+    /*
+     * A level count beyond the number of levels any 32-bit sized texture
+     * can have is rejected before the level index is sized from it.
+     */
+
+    final var levelCount = KTXHeaders.minUnsigned(levelCountRaw, 1L);
+    if (Long.compareUnsigned(levelCount, MIPMAP_LEVELS_MAXIMUM) > 0) {
+      throw new IOException(
+        errorLimitExceeded(
+          fileOffset + KTX2_LEVEL_COUNT_OFFSET,
+          levelCount,
+          "mipmap level count limit",
+          MIPMAP_LEVELS_MAXIMUM)
+      );
     }
-    return y;
+    return levelCount;
   }
 
-  private long readKeyValueDataKTX1(
+  static KTX1SubImageIndex createSubImageIndex(
     final KTX1Header header,
-    final Map<String, String> keyValues)
+    final long offset,
+    final long fileSize)
     throws IOException
   {
-    try {
-      this.startReader("keyValueData", header.bytesOfKeyValueData());
-
-      while (true) {
-        final var remaining = this.reader.bytesRemaining().orElse(0L);
-        if (remaining < 4L) {
-          break;
-        }
-
-        final var size = this.readU32("keyAndValueByteSize");
-        final var limit = this.request.keyValueRegionLimit();
-        if (Long.compareUnsigned(size, limit) > 0) {
-          throw new IOException(
-            this.errorLimitExceeded(size, "key/value datum limit")
-          );
-        }
-
-        final var data = new byte[(int) size];
-        this.reader.readBytes(data);
-
-        var dataStart = 0;
-        for (int index = 0; index < data.length; ++index) {
-          final var x = data[index];
-          if (x == 0) {
-            dataStart = index + 1;
-            break;
-          }
-        }
-
-        var dataEnd = data.length - 1;
-        for (int index = dataStart; index < data.length; ++index) {
-          final var x = data[index];
-          if (x == 0) {
-            dataEnd = index;
-            break;
-          }
-        }
-
-        final var key =
-          new String(data, 0, dataStart - 1, UTF_8);
-        final var value =
-          new String(data, dataStart, dataEnd - dataStart, UTF_8);
-
-        keyValues.put(key, value);
-      }
+    final var mipMapCountRaw =
+      KTXHeaders.minUnsigned(header.numberOfMipmapLevels(), 1L);
+    final var arrayElementCountRaw =
+      KTXHeaders.minUnsigned(header.numberOfArrayElements(), 1L);
+    final var faceCountRaw =
+      KTXHeaders.minUnsigned(header.numberOfFaces(), 1L);
+    final var pixelDepthRaw =
+      KTXHeaders.minUnsigned(header.pixelDepth(), 1L);
+
+    if (mipMapCountRaw > MIPMAP_LEVELS_MAXIMUM) {
+      throw new IOException(
+        errorLimitExceeded(
+          offset,
+          mipMapCountRaw,
+          "mipmap level count limit",
+          MIPMAP_LEVELS_MAXIMUM)
+      );
+    }
 
-      this.reader.align(4);
-      return this.reader.offsetCurrentAbsolute();
-    } finally {
-      this.popReader();
+    final var count =
+      KTX1SubImageIndex.countFor(
+        mipMapCountRaw,
+        arrayElementCountRaw,
+        faceCountRaw,
+        pixelDepthRaw
+      );
+
+    if (count > KTX1_SUB_IMAGES_MAXIMUM) {
+      throw new IOException(
+        errorLimitExceeded(
+          offset,
+          count,
+          "sub-image count limit",
+          KTX1_SUB_IMAGES_MAXIMUM)
+      );
     }
-  }
 
-  private void popReader()
-    throws IOException
-  {
-    this.reader.close();
-    this.reader = this.readerStack.pop();
+    /*
+     * Each level carries a four byte imageSize field, and each sub-image
+     * occupies at least one byte. A header that claims more sub-images
+     * than the rest of the file could hold is rejected here, before the
+     * index is allocated.
+     */
+
+    final var required = 4L * mipMapCountRaw + count;
+    final var remaining = Math.max(fileSize - offset, 0L);
+    if (required > remaining) {
+      throw new IOException(
+        KTXHeaders.errorTruncated("sub-image data", offset, required, fileSize)
+      );
+    }
+
+    final var mipMapCount = (int) mipMapCountRaw;
+    final var arrayElementCount = (int) arrayElementCountRaw;
+    final var faceCount = (int) faceCountRaw;
+    final var pixelDepth = (int) pixelDepthRaw;
+
+    return new KTX1SubImageIndex(
+      mipMapCount,
+      arrayElementCount,
+      faceCount,
+      pixelDepth
+    );
   }
 
-  private void startReader(
-    final String header,
-    final long size)
-    throws IOException
+  static boolean isCubeMap(
+    final KTX1Header header)
   {
-    this.readerStack.push(this.reader);
-    this.reader = this.reader.createSubReaderAtBounded(header, 0L, size);
+    return KTXHeaders.minUnsigned(header.numberOfFaces(), 1L) == 6L
+      && header.numberOfArrayElements() == 0L;
   }
 
   private long readU32(
     final String name)
     throws IOException
   {
+    this.countRead(4L);
     if (this.isBigEndian) {
       return this.reader.readU32BE(name);
     }
@@ -449,7 +400,166 @@ public final class KTXParser implements KTXParserType
   private KTXFileReadableType executeKTX2()
     throws IOException
   {
-    throw new IOException();
+    /*
+     * The header, the index, and the level index are contiguous. Read
+     * enough bytes to cover all three for any texture with up to
+     * KTX2_LEVELS_SPECULATIVE levels in a single read, and only go back for
+     * the rest of the level index for textures with more levels than that.
+     */
+
+    final var fileSize = this.data.size();
+    final var prefixOffset = this.reader.offsetCurrentAbsolute();
+    final var prefixSize =
+      (int) Math.min(
+        fileSize - prefixOffset,
+        KTX2_HEADER_INDEX_SIZE + KTX2_LEVELS_SPECULATIVE * KTX2_LEVEL_SIZE
+      );
+
+    if (prefixSize < KTX2_HEADER_INDEX_SIZE) {
+      throw new IOException(
+        KTXHeaders.errorTruncated(
+          "header",
+          prefixOffset,
+          KTX2_HEADER_INDEX_SIZE,
+          fileSize)
+      );
+    }
+
+    final var prefixBytes = new byte[prefixSize];
+    this.reader.readBytes(prefixBytes);
+    this.countRead(prefixSize);
+    final var prefix =
+      ByteBuffer.wrap(prefixBytes)
+        .order(ByteOrder.LITTLE_ENDIAN);
+
+    final var header =
+      KTXHeaders.decodeKTX2(prefix, 0);
+    final var index =
+      KTXHeaders.decodeKTX2Index(prefix, KTXHeaders.KTX2_HEADER_SIZE - 12);
+
+    final var levelCount =
+      checkKTX2LevelCount(prefixOffset - 12L, header.levelCount());
+    final var levelIndexSize =
+      levelCount * KTX2_LEVEL_SIZE;
+    final var levelIndexOffset =
+      prefixOffset + KTX2_HEADER_INDEX_SIZE;
+
+    if (Long.compareUnsigned(levelIndexSize, fileSize - levelIndexOffset) > 0) {
+      throw new IOException(
+        KTXHeaders.errorTruncated(
+          "level index",
+          levelIndexOffset,
+          levelIndexSize,
+          fileSize)
+      );
+    }
+
+    final ByteBuffer levelIndex;
+    if (KTX2_HEADER_INDEX_SIZE + levelIndexSize <= prefixSize) {
+      levelIndex =
+        prefix.slice(KTX2_HEADER_INDEX_SIZE, (int) levelIndexSize)
+          .order(ByteOrder.LITTLE_ENDIAN);
+    } else {
+      final var levelBytes = new byte[(int) levelIndexSize];
+      this.seekTo(levelIndexOffset);
+      this.reader.readBytes(levelBytes);
+      this.countRead(levelIndexSize);
+      levelIndex =
+        ByteBuffer.wrap(levelBytes)
+          .order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    final var levels =
+      KTXHeaders.decodeKTX2Levels(levelIndex, (int) levelCount);
+    this.event.headerDuration = this.phaseEnd();
+
+    final var size = index.kvdByteLength();
+    final var limit = this.request.keyValueRegionLimit();
+    if (Long.compareUnsigned(size, limit) > 0) {
+      throw new IOException(
+        errorLimitExceeded(
+          index.kvdByteOffset(),
+          size,
+          "key/value region size limit",
+          limit)
+      );
+    }
+
+    final var keyValues =
+      this.readKeyValueData(
+        index.kvdByteOffset(),
+        size,
+        ByteOrder.LITTLE_ENDIAN
+      );
+    this.event.keyValueDuration = this.phaseEnd();
+
+    this.closed.set(true);
+    return new KTX2FileReadable(
+      this.reader,
+      this.data,
+      header,
+      index,
+      keyValues,
+      levels
+    );
+  }
+
+  private KTXKeyValueData readKeyValueData(
+    final long offset,
+    final long size,
+    final ByteOrder order)
+    throws IOException
+  {
+    this.event.keyValueBytes = size;
+    if (size != 0L) {
+      this.countRead(size);
+    }
+    return readKeyValueData(this.data, this.request, offset, size, order);
+  }
+
+  static KTXKeyValueData readKeyValueData(
+    final KTXDataSourceType data,
+    final KTXParseRequest request,
+    final long offset,
+    final long size,
+    final ByteOrder order)
+    throws IOException
+  {
+    if (size == 0L) {
+      return KTXKeyValueData.empty();
+    }
+
+    final var fileSize = data.size();
+    if (Long.compareUnsigned(size, fileSize - offset) > 0) {
+      throw new IOException(
+        KTXHeaders.errorTruncated("key/value data", offset, size, fileSize)
+      );
+    }
+
+    /*
+     * The region is taken from the data source as a single buffer (a view
+     * of the mapping in mapped mode, a heap copy for the small regions
+     * typical of key/value data otherwise) and indexed in place; nothing
+     * is decoded until a key or value is actually requested.
+     */
+
+    return KTXKeyValueData.index(
+      data.data(offset, (int) size),
+      order,
+      offset,
+      request.keyValueDatumLimit()
+    );
+  }
+
+  static long alignUp(
+    final long offset,
+    final long alignment)
+  {
+    final var remainder = offset % alignment;
+    if (remainder == 0L) {
+      return offset;
+    }
+    return offset + (alignment - remainder);
   }
 
   @Override
@@ -0,0 +1,110 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.vanilla.internal;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+public final class KTXReadPlan
+{
+  public static final long GAP_MAXIMUM = 65536L;
+
+  private KTXReadPlan()
+  {
+
+  }
+
+  public record Run(
+    long offset,
+    ByteBuffer[] buffers)
+  {
+    public Run
+    {
+      Objects.requireNonNull(buffers, "buffers");
+    }
+  }
+
+  public static List<Run> plan(
+    final long[] offsets,
+    final ByteBuffer[] windows,
+    final long gapMaximum)
+  {
+    Objects.requireNonNull(offsets, "offsets");
+    Objects.requireNonNull(windows, "windows");
+
+    if (offsets.length != windows.length) {
+      throw new IllegalArgumentException(
+        "Offset count %d must match window count %d"
+          .formatted(
+            Integer.valueOf(offsets.length),
+            Integer.valueOf(windows.length))
+      );
+    }
+
+    final var order = new Integer[offsets.length];
+    Arrays.setAll(order, Integer::valueOf);
+    Arrays.sort(order, Comparator.comparingLong(i -> offsets[i.intValue()]));
+
+    /*
+     * Ranges are taken in file order and appended to the current run for as
+     * long as each one starts at or shortly after the end of the previous
+     * one. Short gaps between ranges are read into a shared scratch buffer
+     * and discarded, which is cheaper than a separate read. A range that
+     * overlaps the previous one can't be scattered and starts a new run.
+     */
+
+    final var runs = new ArrayList<Run>();
+    final var buffers = new ArrayList<ByteBuffer>();
+    ByteBuffer gap = null;
+    var runOffset = 0L;
+    var runEnd = 0L;
+
+    for (final var boxed : order) {
+      final var index = boxed.intValue();
+      final var offset = offsets[index];
+      final var window = windows[index];
+      final var distance = offset - runEnd;
+
+      if (!buffers.isEmpty() && (distance < 0L || distance > gapMaximum)) {
+        runs.add(new Run(runOffset, buffers.toArray(new ByteBuffer[0])));
+        buffers.clear();
+      }
+
+      if (buffers.isEmpty()) {
+        runOffset = offset;
+      } else if (distance > 0L) {
+        if (gap == null) {
+          gap = ByteBuffer.allocate((int) gapMaximum);
+        }
+        buffers.add(gap.slice(0, (int) distance));
+      }
+
+      buffers.add(window);
+      runEnd = offset + window.remaining();
+    }
+
+    if (!buffers.isEmpty()) {
+      runs.add(new Run(runOffset, buffers.toArray(new ByteBuffer[0])));
+    }
+    return runs;
+  }
+}
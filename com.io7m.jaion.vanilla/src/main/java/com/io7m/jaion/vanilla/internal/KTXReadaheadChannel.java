@@ -0,0 +1,263 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jaion.vanilla.internal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+public final class KTXReadaheadChannel implements SeekableByteChannel
+{
+  private final SeekableByteChannel channel;
+  private final int blockSize;
+  private final int readaheadMaximum;
+  private final LinkedHashMap<Long, ByteBuffer> blocks;
+  private final long size;
+  private long position;
+  private long nextBlock;
+  private int readahead;
+
+  public KTXReadaheadChannel(
+    final SeekableByteChannel inChannel,
+    final int inBlockSize,
+    final int inReadaheadMaximum,
+    final int inCacheBlocks)
+    throws IOException
+  {
+    this.channel =
+      Objects.requireNonNull(inChannel, "channel");
+
+    if (inBlockSize <= 0) {
+      throw new IllegalArgumentException(
+        "Block size %d must be positive".formatted(inBlockSize)
+      );
+    }
+    if (inReadaheadMaximum <= 0) {
+      throw new IllegalArgumentException(
+        "Readahead maximum %d must be positive".formatted(inReadaheadMaximum)
+      );
+    }
+    if (inCacheBlocks < inReadaheadMaximum) {
+      throw new IllegalArgumentException(
+        "Cache size %d must be at least the readahead maximum %d"
+          .formatted(inCacheBlocks, inReadaheadMaximum)
+      );
+    }
+
+    this.blockSize = inBlockSize;
+    this.readaheadMaximum = inReadaheadMaximum;
+    this.blocks = new LinkedHashMap<>(16, 0.75f, true)
+    {
+      @Override
+      protected boolean removeEldestEntry(
+        final Map.Entry<Long, ByteBuffer> eldest)
+      {
+        return this.size() > inCacheBlocks;
+      }
+    };
+
+    /*
+     * The underlying data is assumed not to change while it is being
+     * parsed, so the size is fetched once rather than on every call.
+     */
+
+    this.size = this.channel.size();
+    this.readahead = 1;
+  }
+
+  private void checkOpen()
+    throws ClosedChannelException
+  {
+    if (!this.channel.isOpen()) {
+      throw new ClosedChannelException();
+    }
+  }
+
+  @Override
+  public synchronized int read(
+    final ByteBuffer dst)
+    throws IOException
+  {
+    this.checkOpen();
+
+    if (this.position >= this.size) {
+      return -1;
+    }
+    if (!dst.hasRemaining()) {
+      return 0;
+    }
+
+    /*
+     * Reads at least as large as the maximum readahead window gain
+     * nothing from the cache and would only evict blocks that smaller
+     * reads will want, so they go straight to the underlying channel.
+     */
+
+    if (dst.remaining() >= this.blockSize * this.readaheadMaximum) {
+      this.channel.position(this.position);
+      final var r = this.channel.read(dst);
+      if (r > 0) {
+        this.position += r;
+      }
+      return r;
+    }
+
+    var total = 0;
+    while (dst.hasRemaining() && this.position < this.size) {
+      final var index = this.position / this.blockSize;
+      final var block = this.block(index);
+      final var within = (int) (this.position - index * this.blockSize);
+      if (within >= block.limit()) {
+        break;
+      }
+
+      final var count = Math.min(dst.remaining(), block.limit() - within);
+      dst.put(dst.position(), block, within, count);
+      dst.position(dst.position() + count);
+      this.position += count;
+      total += count;
+    }
+    return total == 0 ? -1 : total;
+  }
+
+  private ByteBuffer block(
+    final long index)
+    throws IOException
+  {
+    final var cached = this.blocks.get(Long.valueOf(index));
+    if (cached != null) {
+      return cached;
+    }
+
+    /*
+     * A miss on the block that directly follows the previous fetch looks
+     * like a forward scan, so the readahead window doubles. Any other miss
+     * is treated as a random access and resets the window to one block.
+     */
+
+    if (index == this.nextBlock) {
+      this.readahead = Math.min(this.readahead * 2, this.readaheadMaximum);
+    } else {
+      this.readahead = 1;
+    }
+
+    final var start = index * this.blockSize;
+    final var length =
+      (int) Math.min(
+        (long) this.readahead * this.blockSize,
+        this.size - start);
+
+    final var buffer = ByteBuffer.allocate(length);
+    this.channel.position(start);
+    while (buffer.hasRemaining()) {
+      if (this.channel.read(buffer) == -1) {
+        break;
+      }
+    }
+    buffer.flip();
+
+    /*
+     * The requested block is inserted first. The cache holds at least as
+     * many blocks as the largest readahead window, so it cannot be
+     * evicted by the blocks that follow it.
+     */
+
+    ByteBuffer first = null;
+    var count = 0L;
+    for (int offset = 0; offset < buffer.limit(); offset += this.blockSize) {
+      final var blockLength = Math.min(this.blockSize, buffer.limit() - offset);
+      final var block = buffer.slice(offset, blockLength).asReadOnlyBuffer();
+      this.blocks.put(Long.valueOf(index + count), block);
+      if (first == null) {
+        first = block;
+      }
+      ++count;
+    }
+
+    this.nextBlock = index + count;
+    if (first == null) {
+      return ByteBuffer.allocate(0);
+    }
+    return first;
+  }
+
+  @Override
+  public int write(
+    final ByteBuffer src)
+  {
+    throw new NonWritableChannelException();
+  }
+
+  @Override
+  public synchronized long position()
+    throws ClosedChannelException
+  {
+    this.checkOpen();
+    return this.position;
+  }
+
+  @Override
+  public synchronized SeekableByteChannel position(
+    final long newPosition)
+    throws ClosedChannelException
+  {
+    this.checkOpen();
+
+    if (newPosition < 0L) {
+      throw new IllegalArgumentException(
+        "Position %d must be non-negative".formatted(newPosition)
+      );
+    }
+    this.position = newPosition;
+    return this;
+  }
+
+  @Override
+  public long size()
+    throws ClosedChannelException
+  {
+    this.checkOpen();
+    return this.size;
+  }
+
+  @Override
+  public SeekableByteChannel truncate(
+    final long newSize)
+  {
+    throw new NonWritableChannelException();
+  }
+
+  @Override
+  public boolean isOpen()
+  {
+    return this.channel.isOpen();
+  }
+
+  @Override
+  public synchronized void close()
+    throws IOException
+  {
+    this.blocks.clear();
+    this.channel.close();
+  }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright © 2021 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jaion.vanilla.internal;
+
+import com.io7m.jaion.api.KTX1Header;
+import com.io7m.jaion.api.KTXFileReadableType;
+import com.io7m.jaion.api.KTXParseRequest;
+import com.io7m.jaion.api.KTXReusableParserType;
+import com.io7m.jbssio.api.BSSReaderProviderType;
+import com.io7m.jbssio.api.BSSReaderRandomAccessType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Objects;
+
+public final class KTXReusableParser implements KTXReusableParserType
+{
+  private static final int KTX2_PREFIX_SIZE =
+    12 + KTXParser.KTX2_HEADER_INDEX_SIZE;
+  private static final int SCRATCH_SIZE =
+    KTX2_PREFIX_SIZE
+      + KTXParser.KTX2_LEVELS_SPECULATIVE * KTXParser.KTX2_LEVEL_SIZE;
+  private static final int SCRATCH_MAXIMUM = 4096;
+
+  private final BSSReaderProviderType readers;
+  private final ByteBuffer[] targets;
+  private ByteBuffer scratch;
+  private boolean closed;
+
+  public KTXReusableParser(
+    final BSSReaderProviderType inReaders)
+  {
+    this.readers =
+      Objects.requireNonNull(inReaders, "readers");
+    this.scratch =
+      ByteBuffer.allocate(SCRATCH_SIZE);
+    this.targets =
+      new ByteBuffer[1];
+  }
+
+  @Override
+  public KTXFileReadableType execute(
+    final KTXParseRequest request)
+    throws IOException
+  {
+    Objects.requireNonNull(request, "request");
+
+    if (this.closed) {
+      throw new IllegalStateException("Parser is closed.");
+    }
+
+    /*
+     * The reader and data source belong to the returned file, so they are
+     * created for each request. Everything the parser itself needs is
+     * decoded from a single scratch buffer that is reused across requests.
+     */
+
+    final var channel =
+      request.byteSources()
+        .createByteSource(request.source(), request.channel());
+    final var data = new KTXDataSourceChannel(channel);
+    final var reader =
+      this.readers.createReaderFromChannel(request.source(), channel, "ktx");
+
+    try {
+      return this.parse(request, reader, data);
+    } catch (final IOException | RuntimeException e) {
+      reader.close();
+      throw e;
+    }
+  }
+
+  private KTXFileReadableType parse(
+    final KTXParseRequest request,
+    final BSSReaderRandomAccessType reader,
+    final KTXDataSourceType data)
+    throws IOException
+  {
+    final var fileSize = data.size();
+    final var prefix =
+      this.fill(data, 0L, (int) Math.min(fileSize, this.scratch.capacity()));
+
+    if (prefix.limit() < 12) {
+      throw new IOException(
+        KTXHeaders.errorTruncated("identifier", 0L, 12L, fileSize)
+      );
+    }
+
+    if (KTXHeaders.identify(prefix) == 2) {
+      return this.parseKTX2(request, reader, data, fileSize);
+    }
+
+    if (prefix.limit() < KTXHeaders.KTX1_HEADER_SIZE) {
+      throw new IOException(
+        KTXHeaders.errorTruncated(
+          "header",
+          12L,
+          KTXHeaders.KTX1_HEADER_SIZE - 12,
+          fileSize)
+      );
+    }
+
+    final var header = KTXHeaders.decodeKTX1(prefix);
+    final var order = prefix.order();
+    final var keyValueSize = header.bytesOfKeyValueData();
+    checkKeyValueLimit(request, KTXHeaders.KTX1_HEADER_SIZE, keyValueSize);
+
+    final var keyValues =
+      KTXParser.readKeyValueData(
+        data,
+        request,
+        KTXHeaders.KTX1_HEADER_SIZE,
+        keyValueSize,
+        order
+      );
+
+    var offset =
+      KTXParser.alignUp(KTXHeaders.KTX1_HEADER_SIZE + keyValueSize, 4L);
+    final var index =
+      KTXParser.createSubImageIndex(header, offset, fileSize);
+    final var cubeMap =
+      KTXParser.isCubeMap(header);
+    final var mipMapCount =
+      (int) KTXHeaders.minUnsigned(header.numberOfMipmapLevels(), 1L);
+
+    for (int mipMapLevel = 0; mipMapLevel < mipMapCount; ++mipMapLevel) {
+      final var imageSize = this.readU32(data, offset, order);
+      final var dataOffset = offset + 4L;
+      offset = index.setLevel(mipMapLevel, dataOffset, imageSize, cubeMap);
+      KTXParser.checkLevelEnd(dataOffset, offset, fileSize);
+    }
+
+    return new KTX1FileReadable(reader, data, header, keyValues, index);
+  }
+
+  private KTXFileReadableType parseKTX2(
+    final KTXParseRequest request,
+    final BSSReaderRandomAccessType reader,
+    final KTXDataSourceType data,
+    final long fileSize)
+    throws IOException
+  {
+    final var available = this.scratch.limit();
+    if (available < KTX2_PREFIX_SIZE) {
+      throw new IOException(
+        KTXHeaders.errorTruncated(
+          "header",
+          12L,
+          KTXParser.KTX2_HEADER_INDEX_SIZE,
+          fileSize)
+      );
+    }
+
+    final var header =
+      KTXHeaders.decodeKTX2(this.scratch, 12);
+    final var index =
+      KTXHeaders.decodeKTX2Index(this.scratch, KTXHeaders.KTX2_HEADER_SIZE);
+
+    final var levelCount =
+      KTXParser.checkKTX2LevelCount(0L, header.levelCount());
+    final var levelIndexSize =
+      levelCount * KTXParser.KTX2_LEVEL_SIZE;
+
+    final var levelIndexAvailable = fileSize - KTX2_PREFIX_SIZE;
+    if (Long.compareUnsigned(levelIndexSize, levelIndexAvailable) > 0) {
+      throw new IOException(
+        KTXHeaders.errorTruncated(
+          "level index",
+          KTX2_PREFIX_SIZE,
+          levelIndexSize,
+          fileSize)
+      );
+    }
+
+    /*
+     * Textures with more levels than the scratch buffer covers are rare.
+     * The scratch buffer grows to fit them, up to a small bound, so that a
+     * parser that sees one such file does not allocate for the next.
+     */
+
+    final ByteBuffer levelIndex;
+    if (KTX2_PREFIX_SIZE + levelIndexSize <= available) {
+      levelIndex =
+        this.scratch.slice(KTX2_PREFIX_SIZE, (int) levelIndexSize);
+    } else {
+      final var required = (int) levelIndexSize;
+      if (required <= SCRATCH_MAXIMUM) {
+        if (this.scratch.capacity() < required) {
+          this.scratch = ByteBuffer.allocate(SCRATCH_MAXIMUM);
+        }
+        levelIndex = this.fill(data, KTX2_PREFIX_SIZE, required);
+      } else {
+        levelIndex = ByteBuffer.allocate(required);
+        this.targets[0] = levelIndex;
+        data.readScattering(KTX2_PREFIX_SIZE, this.targets);
+        levelIndex.flip();
+      }
+    }
+
+    final var levels =
+      KTXHeaders.decodeKTX2Levels(
+        levelIndex.order(ByteOrder.LITTLE_ENDIAN),
+        (int) levelCount
+      );
+
+    final var keyValueSize = index.kvdByteLength();
+    checkKeyValueLimit(request, index.kvdByteOffset(), keyValueSize);
+
+    final var keyValues =
+      KTXParser.readKeyValueData(
+        data,
+        request,
+        index.kvdByteOffset(),
+        keyValueSize,
+        ByteOrder.LITTLE_ENDIAN
+      );
+
+    return new KTX2FileReadable(
+      reader,
+      data,
+      header,
+      index,
+      keyValues,
+      levels
+    );
+  }
+
+  private static void checkKeyValueLimit(
+    final KTXParseRequest request,
+    final long offset,
+    final long size)
+    throws IOException
+  {
+    final var limit = request.keyValueRegionLimit();
+    if (Long.compareUnsigned(size, limit) > 0) {
+      throw new IOException(
+        KTXParser.errorLimitExceeded(
+          offset,
+          size,
+          "key/value region size limit",
+          limit)
+      );
+    }
+  }
+
+  private ByteBuffer fill(
+    final KTXDataSourceType data,
+    final long offset,
+    final int length)
+    throws IOException
+  {
+    final var buffer = this.scratch;
+    buffer.clear();
+    buffer.limit(length);
+    this.targets[0] = buffer;
+    data.readScattering(offset, this.targets);
+    return buffer.flip();
+  }
+
+  private long readU32(
+    final KTXDataSourceType data,
+    final long offset,
+    final ByteOrder order)
+    throws IOException
+  {
+    final var buffer = this.fill(data, offset, 4);
+    return buffer.order(order).getInt(0) & 0xffff_ffffL;
+  }
+
+  @Override
+  public void close()
+  {
+    this.closed = true;
+  }
+}
@@ -14,20 +14,27 @@
  * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
  */
 
+
 package com.io7m.jaion.vanilla.internal;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ScatteringByteChannel;
 import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Objects;
 
-public final class KTXSubrangeByteChannel implements SeekableByteChannel
+public final class KTXSubrangeByteChannel
+  implements SeekableByteChannel, ScatteringByteChannel
 {
+  private static final int TRANSFER_BUFFER_SIZE = 65536;
+
   private final SeekableByteChannel delegate;
   private final long baseStart;
   private final long limit;
-  private final long baseEnd;
+  private long position;
 
   public KTXSubrangeByteChannel(
     final SeekableByteChannel inDelegate,
@@ -37,15 +44,45 @@ public final class KTXSubrangeByteChannel implements SeekableByteChannel
     this.delegate =
       Objects.requireNonNull(inDelegate, "delegate");
 
+    if (inBase < 0L) {
+      throw new IllegalArgumentException(
+        "Base %d must be non-negative".formatted(inBase)
+      );
+    }
+    if (inLimit < 0L) {
+      throw new IllegalArgumentException(
+        "Limit %d must be non-negative".formatted(inLimit)
+      );
+    }
+
     this.baseStart = inBase;
-    this.baseEnd = this.baseStart + inLimit;
     this.limit = inLimit;
+    this.position = 0L;
+  }
+
+  private void checkPosition(
+    final long newPosition)
+  {
+    if (newPosition < 0L || newPosition > this.limit) {
+      throw new IllegalArgumentException(
+        "Position %d must be in the range [0, %d]"
+          .formatted(newPosition, this.limit)
+      );
+    }
   }
 
-  private long channelRemaining()
+  private int readAt(
+    final long at,
+    final ByteBuffer dst)
     throws IOException
   {
-    return this.baseEnd - this.delegate.position();
+    if (this.delegate instanceof FileChannel fileChannel) {
+      return fileChannel.read(dst, this.baseStart + at);
+    }
+    synchronized (this.delegate) {
+      this.delegate.position(this.baseStart + at);
+      return this.delegate.read(dst);
+    }
   }
 
   @Override
@@ -56,16 +93,147 @@ public final class KTXSubrangeByteChannel implements SeekableByteChannel
     final var bufferRemaining =
       dst.remaining();
     final var channelRemaining =
-      this.channelRemaining();
+      this.limit - this.position;
+
+    /*
+     * The end of the range is the end of the stream, so that the usual
+     * read-until-end-of-stream loops terminate.
+     */
+
+    if (bufferRemaining > 0 && channelRemaining <= 0L) {
+      return -1;
+    }
     final var remaining =
-      Math.min(bufferRemaining, channelRemaining);
-    final var bufferDifference =
-      bufferRemaining - remaining;
-    final var newLimit =
-      (int) (dst.limit() - bufferDifference);
-
-    dst.limit(newLimit);
-    return this.delegate.read(dst);
+      (int) Math.min(bufferRemaining, channelRemaining);
+
+    /*
+     * The position is held here rather than in the delegate, so that
+     * several subranges (and other readers) can share one delegate. File
+     * channels are read positionally without locking; other channels have
+     * no positional reads and so are locked for the seek and read.
+     */
+
+    final var savedLimit = dst.limit();
+    dst.limit(dst.position() + remaining);
+
+    final int r;
+    try {
+      r = this.readAt(this.position, dst);
+    } finally {
+      dst.limit(savedLimit);
+    }
+
+    if (r > 0) {
+      this.position += r;
+    }
+    return r;
+  }
+
+  @Override
+  public long read(
+    final ByteBuffer[] dsts,
+    final int offset,
+    final int length)
+    throws IOException
+  {
+    Objects.checkFromIndexSize(offset, length, dsts.length);
+
+    /*
+     * File channels have no positional scattering read, so the targets
+     * are filled in order with positional reads. As with a scattering
+     * read, a short read into one target ends the operation.
+     */
+
+    var total = 0L;
+    for (int index = offset; index < offset + length; ++index) {
+      final var dst = dsts[index];
+      if (!dst.hasRemaining()) {
+        continue;
+      }
+
+      final var r = this.read(dst);
+      if (r <= 0) {
+        if (r == -1 && total == 0L) {
+          return -1L;
+        }
+        break;
+      }
+
+      total += r;
+      if (dst.hasRemaining()) {
+        break;
+      }
+    }
+    return total;
+  }
+
+  @Override
+  public long read(
+    final ByteBuffer[] dsts)
+    throws IOException
+  {
+    return this.read(dsts, 0, dsts.length);
+  }
+
+  public long transferTo(
+    final long at,
+    final long count,
+    final WritableByteChannel target)
+    throws IOException
+  {
+    Objects.requireNonNull(target, "target");
+
+    if (count < 0L) {
+      throw new IllegalArgumentException(
+        "Count %d must be non-negative".formatted(count)
+      );
+    }
+    this.checkPosition(at);
+
+    /*
+     * A transfer may be short, so it is repeated until the range has been
+     * sent. A transfer or write of nothing means that a non-blocking target
+     * is full (or the file ended), and the count sent so far is returned
+     * rather than spinning.
+     */
+
+    final var clamped = Math.min(count, this.limit - at);
+    if (this.delegate instanceof FileChannel fileChannel) {
+      var transferred = 0L;
+      while (transferred < clamped) {
+        final var r =
+          fileChannel.transferTo(
+            this.baseStart + at + transferred,
+            clamped - transferred,
+            target
+          );
+        if (r <= 0L) {
+          break;
+        }
+        transferred += r;
+      }
+      return transferred;
+    }
+
+    final var buffer =
+      ByteBuffer.allocate((int) Math.min(clamped, TRANSFER_BUFFER_SIZE));
+
+    var transferred = 0L;
+    while (transferred < clamped) {
+      buffer.clear();
+      buffer.limit((int) Math.min(buffer.capacity(), clamped - transferred));
+      final var r = this.readAt(at + transferred, buffer);
+      if (r <= 0) {
+        break;
+      }
+      buffer.flip();
+      final var written = KTXDataSourceType.writeSome(target, buffer);
+      transferred += written;
+      if (written < r) {
+        break;
+      }
+    }
+    return transferred;
   }
 
   @Override
@@ -77,17 +245,17 @@ public final class KTXSubrangeByteChannel implements SeekableByteChannel
 
   @Override
   public long position()
-    throws IOException
   {
-    return this.delegate.position() - this.baseStart;
+    return this.position;
   }
 
   @Override
   public SeekableByteChannel position(
     final long newPosition)
-    throws IOException
   {
-    return this.delegate.position(this.baseStart + newPosition);
+    this.checkPosition(newPosition);
+    this.position = newPosition;
+    return this;
   }
 
   @Override
@@ -28,6 +28,8 @@ module com.io7m.jaion.vanilla
 
   requires com.io7m.jbssio.vanilla;
   requires com.io7m.jbssio.api;
+  requires com.github.luben.zstd_jni;
+  requires jdk.jfr;
 
   exports com.io7m.jaion.vanilla;
 }